@@ -6,15 +6,33 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.InputMismatchException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Scanner;
 import messif.algorithms.Algorithm;
 import messif.algorithms.AlgorithmMethodException;
-import messif.algorithms.impl.SequentialScan;
 import messif.buckets.CapacityFullException;
+import messif.objects.LocalAbstractObject;
 import messif.objects.util.StreamGenericAbstractObjectIterator;
+import messif.operations.data.BulkInsertOperation;
 import messif.operations.data.InsertOperation;
 import csvparser.CSVParser;
+import food.algorithms.FoodCategoryPartitionedAlgorithm;
+import food.algorithms.FoodClusterPrunedAlgorithm;
+import food.algorithms.FoodDietKNNGraphAlgorithm;
+import food.algorithms.FoodHNSWAlgorithm;
+import food.algorithms.FoodL1LSHAlgorithm;
+import food.algorithms.FoodMTreeAlgorithm;
+import food.algorithms.FoodPivotTableAlgorithm;
+import food.algorithms.FoodPivotTableAlgorithm.PivotSelection;
+import food.algorithms.FoodSequentialScan;
+import food.algorithms.FoodThresholdAlgorithm;
+import food.algorithms.OffHeapFoodAlgorithm;
+import food.algorithms.ParallelFoodScanAlgorithm;
+import food.data.FoodBinaryFile;
+import food.data.FoodSnapshot;
 import food.objects.*;
 
 /**
@@ -50,27 +68,71 @@ public class AlgorithmManager {
 
         Path dataFilePath = inputDataFilePath();
 
-        Class objectClass = inputObjectClass();
+        Class<? extends FoodMetaObjectMap> objectClass = inputObjectClass();
 
         Algorithm algorithm;
 
-        if (algorithmType.equals(SequentialScan.class)) {
-            algorithm = new SequentialScan();
+        if (algorithmType.equals(FoodSequentialScan.class)) {
+            algorithm = new FoodSequentialScan();
+        } else if (algorithmType.equals(OffHeapFoodAlgorithm.class)) {
+            algorithm = new OffHeapFoodAlgorithm();
+        } else if (algorithmType.equals(FoodMTreeAlgorithm.class)) {
+            algorithm = new FoodMTreeAlgorithm();
+        } else if (algorithmType.equals(FoodPivotTableAlgorithm.class)) {
+            algorithm = new FoodPivotTableAlgorithm(inputNumber("pivots", FoodPivotTableAlgorithm.DEFAULT_PIVOT_COUNT), inputPivotSelection());
+        } else if (algorithmType.equals(ParallelFoodScanAlgorithm.class)) {
+            algorithm = new ParallelFoodScanAlgorithm(inputNumber("threads", Runtime.getRuntime().availableProcessors()));
+        } else if (algorithmType.equals(FoodCategoryPartitionedAlgorithm.class)) {
+            algorithm = new FoodCategoryPartitionedAlgorithm();
+        } else if (algorithmType.equals(FoodThresholdAlgorithm.class)) {
+            algorithm = new FoodThresholdAlgorithm();
+        } else if (algorithmType.equals(FoodHNSWAlgorithm.class)) {
+            //a food needs at least 2 links to keep the graph navigable
+            algorithm = new FoodHNSWAlgorithm(Math.max(2, inputNumber("links of a food (M)", FoodHNSWAlgorithm.DEFAULT_MAX_LINKS)), inputNumber("foods searched for by an insertion (efConstruction)", FoodHNSWAlgorithm.DEFAULT_EF_CONSTRUCTION));
+        } else if (algorithmType.equals(FoodL1LSHAlgorithm.class)) {
+            algorithm = new FoodL1LSHAlgorithm(inputNumber("hash tables", FoodL1LSHAlgorithm.DEFAULT_TABLE_COUNT), inputNumber("distance units of the hash width", (int) FoodL1LSHAlgorithm.DEFAULT_HASH_WIDTH));
+        } else if (algorithmType.equals(FoodClusterPrunedAlgorithm.class)) {
+            algorithm = new FoodClusterPrunedAlgorithm(inputNumber("clusters", FoodClusterPrunedAlgorithm.DEFAULT_CLUSTER_COUNT), inputNumber("clusters visited by an approximate search (nprobe)", FoodClusterPrunedAlgorithm.DEFAULT_PROBES));
         } else {
             throw new IllegalStateException("Algorithm not yet supported.");
         }
 
-        BufferedReader reader = new BufferedReader(Files.newBufferedReader(dataFilePath));
+        if (inputDietGraph()) {
+            algorithm = new FoodDietKNNGraphAlgorithm(algorithm, inputNumber("nearest foods stored for every food and diet", FoodDietKNNGraphAlgorithm.DEFAULT_NEIGHBOR_COUNT));
+        }
 
-        StreamGenericAbstractObjectIterator iter
-                = new StreamGenericAbstractObjectIterator<>(objectClass, reader);
+        Iterator<? extends LocalAbstractObject> iter;
+        if (FoodBinaryFile.isBinaryFile(dataFilePath)) {
+            //reads the mapped columns without any text parsing
+            iter = FoodBinaryFile.open(dataFilePath).iterator(objectClass);
+        } else if (FoodSnapshot.isSnapshot(dataFilePath)) {
+            //the segments of the snapshot are decoded in parallel
+            List<? extends FoodMetaObjectMap> snapshotObjects = FoodSnapshot.open(dataFilePath).getObjects(objectClass);
+            iter = snapshotObjects.iterator();
+        } else {
+            BufferedReader reader = new BufferedReader(Files.newBufferedReader(dataFilePath));
+            iter = new StreamGenericAbstractObjectIterator<>(objectClass, reader);
+        }
 
-        while (iter.hasNext()) {
-            InsertOperation insert = new InsertOperation(iter.next());
-            algorithm.executeOperation(insert);
+        if (algorithm.getSupportedOperations(BulkInsertOperation.class).isEmpty()) {
+            while (iter.hasNext()) {
+                InsertOperation insert = new InsertOperation(iter.next());
+                algorithm.executeOperation(insert);
+            }
+        } else {
+            //the indexes are built from all the objects at once
+            List<LocalAbstractObject> objects = new ArrayList<>();
+            while (iter.hasNext()) {
+                objects.add(iter.next());
+            }
+            if (!objects.isEmpty()) {
+                algorithm.executeOperation(new BulkInsertOperation(objects));
+            }
         }
 
         algorithm.storeToFile(ALGORITHM_FOLDER_PATH + "\\" + name);
+        //the results cached for a previous algorithm of the same name are stale
+        SearchManager.getResultCache().invalidate(name);
     }
 
     /**
@@ -89,8 +151,9 @@ public class AlgorithmManager {
             System.out.println("Input a type of an input file to use to create the algorithm");
             System.out.println("-------------------------------------------");
             System.out.println("\t1. Default data file");
-            System.out.println("\t2. Custom data file");
-            System.out.println("\t3. Go back");
+            System.out.println("\t2. Default binary data file");
+            System.out.println("\t3. Custom data file (text, binary or snapshot)");
+            System.out.println("\t4. Go back");
             System.out.println("-------------------------------------------");
 
             try {
@@ -102,12 +165,15 @@ public class AlgorithmManager {
                         dataFilePath = CSVParser.DEFAULT_DATA_FILE_PATH;
                         break;
                     case 2:
+                        dataFilePath = FoodBinaryFile.DEFAULT_BINARY_FILE_PATH;
+                        break;
+                    case 3:
                         dataFilePath = inputCustomDataFilePath();
                         if (dataFilePath == null) {
                             return null;
                         }
                         break;
-                    case 3:
+                    case 4:
                         throw new GoBackException();
                     default:
                         throw new InputMismatchException();
@@ -159,7 +225,174 @@ public class AlgorithmManager {
      * @throws GoBackException returns to the main menu
      */
     private static Class<? extends Algorithm> inputAlgorithmType() throws GoBackException {
-        return SequentialScan.class;
+        while (true) {
+            System.out.println();
+            System.out.println("-------------------------------------------");
+            System.out.println("Type in the number of the type of the algorithm you want to create:");
+            System.out.println("-------------------------------------------");
+            System.out.println("\t1. Sequential scan");
+            System.out.println("\t2. Off-heap food vector store");
+            System.out.println("\t3. M-tree");
+            System.out.println("\t4. Pivot table");
+            System.out.println("\t5. Parallel sequential scan");
+            System.out.println("\t6. Food category partitions");
+            System.out.println("\t7. Threshold algorithm over nutrient vector M-trees");
+            System.out.println("\t8. Hierarchical navigable small world graph (approximate search)");
+            System.out.println("\t9. L1 locality-sensitive hashing (approximate search)");
+            System.out.println("\t10. Clusters by k-medoids (exact or approximate search)");
+            System.out.println("\t11. Go back");
+            System.out.println("-------------------------------------------");
+
+            try {
+                Scanner scan = new Scanner(System.in);
+                int input = scan.nextInt();
+
+                switch (input) {
+                    case 1:
+                        return FoodSequentialScan.class;
+                    case 2:
+                        return OffHeapFoodAlgorithm.class;
+                    case 3:
+                        return FoodMTreeAlgorithm.class;
+                    case 4:
+                        return FoodPivotTableAlgorithm.class;
+                    case 5:
+                        return ParallelFoodScanAlgorithm.class;
+                    case 6:
+                        return FoodCategoryPartitionedAlgorithm.class;
+                    case 7:
+                        return FoodThresholdAlgorithm.class;
+                    case 8:
+                        return FoodHNSWAlgorithm.class;
+                    case 9:
+                        return FoodL1LSHAlgorithm.class;
+                    case 10:
+                        return FoodClusterPrunedAlgorithm.class;
+                    case 11:
+                        throw new GoBackException();
+                    default:
+                        throw new InputMismatchException();
+                }
+            } catch (InputMismatchException | NumberFormatException ex) {
+                System.out.println("Invalid input, try again.");
+            }
+        }
+    }
+
+    /**
+     * Prompts the user to input a positive parameter of an algorithm, such as
+     * the number of pivots of a pivot table.
+     *
+     * @param name name of the counted things
+     * @param defaultValue value recommended to the user
+     * @return the number
+     * @throws GoBackException returns to the main menu
+     */
+    private static int inputNumber(String name, int defaultValue) throws GoBackException {
+        while (true) {
+            System.out.println();
+            System.out.println("-------------------------------------------");
+            System.out.println("Type in the number of " + name + " (" + defaultValue + " recommended) or 0 to go back.");
+            System.out.println("-------------------------------------------");
+
+            try {
+                Scanner scan = new Scanner(System.in);
+                int input = scan.nextInt();
+
+                if (input == 0) {
+                    throw new GoBackException();
+                }
+
+                if (input < 0) {
+                    throw new InputMismatchException("The number can't be negative, please try again.");
+                }
+
+                return input;
+
+            } catch (InputMismatchException | NumberFormatException ex) {
+                System.out.println(ex.getMessage() == null ? "Invalid input, try again." : ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Prompts the user to choose the strategy of the selection of the pivots
+     * of a pivot table.
+     *
+     * @return pivot selection strategy
+     * @throws GoBackException returns to the main menu
+     */
+    private static PivotSelection inputPivotSelection() throws GoBackException {
+        while (true) {
+            System.out.println();
+            System.out.println("-------------------------------------------");
+            System.out.println("Type in the number of the way to select the pivots:");
+            System.out.println("-------------------------------------------");
+            System.out.println("\t1. Farthest first");
+            System.out.println("\t2. Random");
+            System.out.println("\t3. Incremental");
+            System.out.println("\t4. Go back");
+            System.out.println("-------------------------------------------");
+
+            try {
+                Scanner scan = new Scanner(System.in);
+                int input = scan.nextInt();
+
+                switch (input) {
+                    case 1:
+                        return PivotSelection.FARTHEST_FIRST;
+                    case 2:
+                        return PivotSelection.RANDOM;
+                    case 3:
+                        return PivotSelection.INCREMENTAL;
+                    case 4:
+                        throw new GoBackException();
+                    default:
+                        throw new InputMismatchException();
+                }
+            } catch (InputMismatchException | NumberFormatException ex) {
+                System.out.println("Invalid input, try again.");
+            }
+        }
+    }
+
+    /**
+     * Prompts the user to choose whether the nearest foods of every food under
+     * every diet are precomputed, so that the searches from the stored foods
+     * are answered by a lookup.
+     *
+     * @return true, if the nearest foods are precomputed
+     * @throws GoBackException returns to the main menu
+     */
+    private static boolean inputDietGraph() throws GoBackException {
+        while (true) {
+            System.out.println();
+            System.out.println("-------------------------------------------");
+            System.out.println("Type in the number of the way to answer the searches from the stored foods:");
+            System.out.println("-------------------------------------------");
+            System.out.println("\t1. By the algorithm");
+            System.out.println("\t2. By a lookup of the nearest foods precomputed for every diet");
+            System.out.println("\t3. Go back");
+            System.out.println("-------------------------------------------");
+
+            try {
+                Scanner scan = new Scanner(System.in);
+                int input = scan.nextInt();
+
+                switch (input) {
+                    case 1:
+                        return false;
+                    case 2:
+                        return true;
+                    case 3:
+                        throw new GoBackException();
+                    default:
+                        throw new InputMismatchException();
+                }
+            } catch (InputMismatchException | NumberFormatException ex) {
+                System.out.println("Invalid input, try again.");
+            }
+        }
     }
 
     /**
@@ -169,7 +402,7 @@ public class AlgorithmManager {
      * @return class of a food object
      * @throws GoBackException returns to the main menu
      */
-    private static Class inputObjectClass() throws GoBackException {
+    private static Class<? extends FoodMetaObjectMap> inputObjectClass() throws GoBackException {
         while (true) {
             System.out.println();
             System.out.println("-------------------------------------------");
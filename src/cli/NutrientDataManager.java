@@ -1,6 +1,7 @@
 package cli;
 
 import csvparser.CSVParser;
+import food.data.FoodBinaryFile;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -36,7 +37,9 @@ public class NutrientDataManager {
             System.out.println("\t1. Parse default input folder (" + CSVParser.DEFAULT_CSV_FILES_PATH
                     + ") to the default output file (" + CSVParser.DEFAULT_DATA_FILE_PATH + ")");
             System.out.println("\t2. Parse from and into custom files");
-            System.out.println("\t3. Go back");
+            System.out.println("\t3. Convert the default data file to the default binary data file ("
+                    + FoodBinaryFile.DEFAULT_BINARY_FILE_PATH + ")");
+            System.out.println("\t4. Go back");
             System.out.println("-------------------------------------------");
 
             try {
@@ -53,12 +56,15 @@ public class NutrientDataManager {
                         parser = getCustomNutrientParser();
                         break;
                     case 3:
+                        convertToBinary(CSVParser.DEFAULT_DATA_FILE_PATH, FoodBinaryFile.DEFAULT_BINARY_FILE_PATH);
+                        continue;
+                    case 4:
                         throw new GoBackException();
                     default:
                         throw new InputMismatchException();
                 }
 
-                parser.addFile();
+                parser.addFile(CSVParser.DEFAULT_PARSER_THREADS);
 
             } catch (InputMismatchException | NumberFormatException ex) {
                 System.out.println("Invalid input, try again.");
@@ -68,6 +74,25 @@ public class NutrientDataManager {
         }
     }
 
+    /**
+     * Converts a text data file to a binary food data file, that can be
+     * memory-mapped when creating an algorithm.
+     *
+     * @param dataFile text data file
+     * @param binaryFile binary data file
+     * @throws IOException
+     */
+    private static void convertToBinary(Path dataFile, Path binaryFile) throws IOException {
+        if (!Files.exists(dataFile)) {
+            throw new FileNotFoundException(dataFile + " does not exist, parse the .csv files first.");
+        }
+        long start = System.nanoTime();
+        int count = FoodBinaryFile.convert(dataFile, binaryFile);
+        double seconds = (System.nanoTime() - start) / 1000000000.0d;
+        System.out.println(String.format("Converted %d food items to %s (%d bytes, %s has %d bytes) in %.3f s.",
+                count, binaryFile, Files.size(binaryFile), dataFile, Files.size(dataFile), seconds));
+    }
+
     /**
      * Prompts the user to enter paths to input and output files, as well as 
      * the open option by which to open the output file.
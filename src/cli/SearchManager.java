@@ -1,10 +1,21 @@
 package cli;
 
 import static cli.AlgorithmManager.ALGORITHM_FOLDER_PATH;
+import food.algorithms.FoodHNSWAlgorithm;
+import food.algorithms.FoodSequentialScan;
+import food.algorithms.OffHeapFoodAlgorithm;
+import food.algorithms.QueryResultCache;
+import food.data.FoodSnapshot;
 import food.enums.Diet;
+import food.enums.SimilarityMode;
 import food.objects.FoodMetaObjectMap;
+import food.objects.NutrientWeightsFunction;
+import food.operations.query.ApproxKNNFoodDietQueryOperation;
 import food.operations.query.GetFoodByDietQueryOperation;
 import food.operations.query.KNNFoodDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodSimilarityQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -16,10 +27,18 @@ import java.util.List;
 import java.util.Scanner;
 import messif.algorithms.Algorithm;
 import messif.algorithms.AlgorithmMethodException;
+import messif.buckets.CapacityFullException;
 import messif.objects.AbstractObject;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.RankedAbstractObject;
 import messif.operations.AnswerType;
+import messif.operations.Approximate.LocalSearchType;
+import messif.operations.RankingQueryOperation;
+import messif.operations.data.BulkInsertOperation;
 import messif.operations.query.GetAllObjectsQueryOperation;
 import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.statistics.StatisticCounter;
 
 /**
  * Part of the command-line interface, that deals with the search in a
@@ -29,6 +48,42 @@ import messif.operations.query.GetObjectByLocatorOperation;
  */
 public class SearchManager {
 
+    /**
+     * number of food items listed at once by the listing filtered by a diet
+     */
+    private static final int LIST_PAGE_SIZE = 50;
+
+    /**
+     * number of stored food items used as queries by the recall report of the
+     * approximate search
+     */
+    private static final int RECALL_SAMPLE_SIZE = 100;
+
+    /**
+     * maximal number of search results kept by the result cache
+     */
+    public static final int RESULT_CACHE_SIZE = 256;
+
+    /**
+     * time in milliseconds the search results are kept by the result cache
+     */
+    public static final long RESULT_CACHE_TIME_TO_LIVE = 10 * 60 * 1000;
+
+    /**
+     * cache of the results of the similarity searches, the algorithms are
+     * identified by the names of their files
+     */
+    private static final QueryResultCache resultCache = new QueryResultCache(RESULT_CACHE_SIZE, RESULT_CACHE_TIME_TO_LIVE);
+
+    /**
+     * Retrieves the cache of the results of the similarity searches.
+     *
+     * @return result cache
+     */
+    public static QueryResultCache getResultCache() {
+        return resultCache;
+    }
+
     /**
      * Prompts the user to choose from a list of already created algorithms.
      *
@@ -46,7 +101,8 @@ public class SearchManager {
             System.out.println("Available algorithms:");
             for (String algName : availableAlgorithms) {
                 //algName w/o .alg suffix
-                System.out.println("\t" + i + ". " + algName.split("\\.", 2)[0]);
+                System.out.println("\t" + i + ". " + algName.split("\\.", 2)[0]
+                        + (algName.endsWith(FoodSnapshot.SUFFIX) ? " (snapshot)" : ""));
                 i++;
             }
             System.out.println("\t" + i + ". Go Back");
@@ -64,8 +120,15 @@ public class SearchManager {
 
                 if (input < i && input > 0) {
                     String chosenAlgorithmName = availableAlgorithms.get(input - 1);
-                    Algorithm alg
-                            = Algorithm.restoreFromFile(ALGORITHM_FOLDER_PATH + "\\" + chosenAlgorithmName);
+                    long restoreStart = System.nanoTime();
+                    Algorithm alg;
+                    if (chosenAlgorithmName.endsWith(FoodSnapshot.SUFFIX)) {
+                        //only the header is read, the foods are decoded when touched
+                        alg = OffHeapFoodAlgorithm.restoreFromSnapshot(ALGORITHM_FOLDER_PATH.resolve(chosenAlgorithmName));
+                    } else {
+                        alg = Algorithm.restoreFromFile(ALGORITHM_FOLDER_PATH + "\\" + chosenAlgorithmName);
+                    }
+                    System.out.println("Algorithm restored in " + (System.nanoTime() - restoreStart) / 1000000 + " ms.");
 
                     chooseAlgorithmTask(alg, chosenAlgorithmName);
                 } else {
@@ -95,7 +158,7 @@ public class SearchManager {
                 forEach((Path filePath) -> {
                     if (Files.isRegularFile(filePath)) {
                         String[] fileName = filePath.getFileName().toString().split("\\.");
-                        if (fileName[1].equals("alg")) {
+                        if (fileName[1].equals("alg") || ("." + fileName[1]).equals(FoodSnapshot.SUFFIX)) {
                             algorithmNameList.add(filePath.getFileName().toString());
                         }
                     }
@@ -127,7 +190,10 @@ public class SearchManager {
             System.out.println("\t2. Custom similarity search.");
             System.out.println("\t3. List all loaded foods.");
             System.out.println("\t4. List all loaded foods with a filter applied to them.");
-            System.out.println("\t5. Go back.");
+            System.out.println("\t5. Convert into a fast-start snapshot.");
+            System.out.println("\t6. Similarity search by all the similarity modes.");
+            System.out.println("\t7. Approximate similarity search with a recall report.");
+            System.out.println("\t8. Go back.");
             System.out.println("-------------------------------------------");
 
             try {
@@ -137,7 +203,7 @@ public class SearchManager {
                 //go to main menu, if part of switch, the GoBackException would 
                 //have been caught in the switch, which would cause staying 
                 //in the search menu
-                if (input == 5) {
+                if (input == 8) {
                     throw new GoBackException();
                 }
 
@@ -156,11 +222,16 @@ public class SearchManager {
                             }
                             break;
                         case 4:
-                            iter = listFoodsFilteredByDiet(alg);
-
-                            while (iter.hasNext()) {
-                                System.out.println(((AbstractObject) iter.next()).getLocatorURI());
-                            }
+                            listFoodsFilteredByDiet(alg);
+                            break;
+                        case 5:
+                            convertToSnapshot(alg, algorithmName);
+                            break;
+                        case 6:
+                            searchAllModes(alg, algorithmName);
+                            break;
+                        case 7:
+                            searchApproximate(alg, algorithmName);
                             break;
                         default:
                             throw new InputMismatchException();
@@ -173,6 +244,33 @@ public class SearchManager {
         }
     }
 
+    /**
+     * Writes a snapshot of the foods of the algorithm next to its file. The
+     * snapshot is opened as an off-heap food vector store, which answers the
+     * searches the same way, without deserializing the whole algorithm.
+     *
+     * @param alg serialized algorithm
+     * @param algorithmName name of the file of the algorithm
+     * @throws AlgorithmMethodException
+     * @throws NoSuchMethodException
+     */
+    private static void convertToSnapshot(Algorithm alg, String algorithmName) throws AlgorithmMethodException, NoSuchMethodException {
+        if (algorithmName.endsWith(FoodSnapshot.SUFFIX)) {
+            System.out.println("The algorithm already is a snapshot.");
+            return;
+        }
+        Path snapshotFile = ALGORITHM_FOLDER_PATH.resolve(algorithmName.split("\\.", 2)[0] + FoodSnapshot.SUFFIX);
+        try {
+            long start = System.nanoTime();
+            int count = FoodSnapshot.write(snapshotFile, alg);
+            System.out.println(count + " foods stored into " + snapshotFile + " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+        } catch (IOException | IllegalArgumentException ex) {
+            System.out.println("The snapshot cannot be written: " + ex.getMessage());
+        }
+        //the results cached for a previous snapshot of the same name are stale
+        resultCache.invalidate(snapshotFile.getFileName().toString());
+    }
+
     /**
      * Evaluates a KNN-search on the algorithm that is filtered by diet. Writes
      * its results on the standard output.
@@ -190,7 +288,23 @@ public class SearchManager {
 
         Diet filter = inputDietFilter();
 
-        Iterator iter = alg.getQueryAnswer(new KNNFoodDietQueryOperation(query, numberOfResults, filter, AnswerType.ORIGINAL_OBJECTS));
+        SimilarityMode mode = inputSimilarityMode();
+
+        if (mode == null) {
+            NutrientWeightsFunction weights = inputNutrientWeights();
+
+            resetDistanceStatistics();
+            KNNFoodWeightedQueryOperation operation = resultCache.execute(algorithmName, alg, new KNNFoodWeightedQueryOperation(query, numberOfResults, filter, weights, AnswerType.ORIGINAL_OBJECTS));
+
+            printResult(operation.getAnswer(), algorithmName);
+            int stored = alg.executeOperation(new GetObjectCountOperation()).getAnswerCount();
+            System.out.println("Candidates touched: " + operation.getTouchedCandidates() + " of " + stored + " stored foods"
+                    + (operation.getSortedAccesses() > 0 ? ", sorted accesses: " + operation.getSortedAccesses() : " (full scan)"));
+            return;
+        }
+
+        resetDistanceStatistics();
+        Iterator iter = resultCache.getQueryAnswer(algorithmName, alg, new KNNFoodSimilarityQueryOperation(query, numberOfResults, filter, mode, AnswerType.ORIGINAL_OBJECTS));
 
         printResult(iter, algorithmName);
         /*
@@ -205,10 +319,150 @@ public class SearchManager {
          */
     }
 
+    /**
+     * Evaluates a KNN-search filtered by diet by all the similarity modes at
+     * once, in a single pass over the foods of the algorithm. Writes the
+     * results of every mode on the standard output.
+     *
+     * @param alg serialized algorithm
+     * @param algorithmName name of the algorithm used for printing out
+     * @throws AlgorithmMethodException
+     * @throws NoSuchMethodException
+     * @throws GoBackException returns to the search menu
+     */
+    private static void searchAllModes(Algorithm alg, String algorithmName) throws AlgorithmMethodException, NoSuchMethodException, GoBackException {
+        FoodMetaObjectMap query = inputQueryName(alg);
+
+        int numberOfResults = inputResultNumber();
+
+        Diet filter = inputDietFilter();
+
+        resetDistanceStatistics();
+        KNNFoodMultiModeQueryOperation operation = resultCache.execute(algorithmName, alg, new KNNFoodMultiModeQueryOperation(query, numberOfResults, filter, AnswerType.ORIGINAL_OBJECTS));
+
+        for (SimilarityMode mode : SimilarityMode.values()) {
+            System.out.println();
+            System.out.println("-------------------------------------------");
+            System.out.println("Results by " + mode.name() + " (" + algorithmName + "):");
+
+            Iterator iter = operation.getAnswer(mode);
+            while (iter.hasNext()) {
+                System.out.println(iter.next());
+            }
+        }
+        printStatistics();
+    }
+
+    /**
+     * Evaluates an approximate KNN-search filtered by diet, that keeps the
+     * given number of candidates, see FoodHNSWAlgorithm. Writes its results on
+     * the standard output together with a report of their recall against a
+     * sequential scan. The algorithms without an approximate search answer it
+     * exactly.
+     *
+     * @param alg serialized algorithm
+     * @param algorithmName name of the algorithm used for printing out
+     * @throws AlgorithmMethodException
+     * @throws NoSuchMethodException
+     * @throws GoBackException returns to the search menu
+     */
+    private static void searchApproximate(Algorithm alg, String algorithmName) throws AlgorithmMethodException, NoSuchMethodException, GoBackException {
+        FoodMetaObjectMap query = inputQueryName(alg);
+
+        int numberOfResults = inputResultNumber();
+
+        Diet filter = inputDietFilter();
+
+        int candidates = inputSearchCandidates(numberOfResults);
+
+        resetDistanceStatistics();
+        ApproxKNNFoodDietQueryOperation operation = resultCache.execute(algorithmName, alg, new ApproxKNNFoodDietQueryOperation(query, numberOfResults, filter, candidates, LocalSearchType.ABS_OBJ_COUNT, AnswerType.ORIGINAL_OBJECTS));
+
+        printResult(operation.getAnswer(), algorithmName);
+        printRecall(alg, operation);
+    }
+
+    /**
+     * Prints the recall of an approximate search on the standard output, the
+     * share of the foods of the answer of a sequential scan over the foods of
+     * the algorithm, that the approximate search has found. The recall is
+     * reported for the query and as the mean of the same search from a sample
+     * of the stored foods, with the distance computations of both searches.
+     *
+     * @param alg serialized algorithm
+     * @param operation executed approximate search
+     * @throws AlgorithmMethodException
+     * @throws NoSuchMethodException
+     */
+    private static void printRecall(Algorithm alg, ApproxKNNFoodDietQueryOperation operation) throws AlgorithmMethodException, NoSuchMethodException {
+        List<LocalAbstractObject> foods = new ArrayList<>();
+        Iterator<FoodMetaObjectMap> iter = listAllFoods(alg);
+        while (iter.hasNext()) {
+            foods.add(iter.next());
+        }
+        FoodSequentialScan scan;
+        try {
+            scan = new FoodSequentialScan();
+        } catch (CapacityFullException | InstantiationException ex) {
+            System.out.println("The recall cannot be reported: " + ex.getMessage());
+            return;
+        }
+        scan.executeOperation(new BulkInsertOperation(foods));
+
+        KNNFoodDietQueryOperation exact = scan.executeOperation(new KNNFoodDietQueryOperation(operation.getQueryObject(), operation.getK(), operation.getDiet()));
+        System.out.println("Recall against a sequential scan: " + countRecalled(operation, exact) + " of " + exact.getAnswerCount());
+
+        StatisticCounter counter = StatisticCounter.getStatistics("DistanceComputations");
+        long recalled = 0;
+        long relevant = 0;
+        long approximateComputations = 0;
+        long exactComputations = 0;
+        int queries = 0;
+        for (int i = 0; i < foods.size(); i += Math.max(1, foods.size() / RECALL_SAMPLE_SIZE)) {
+            counter.reset();
+            ApproxKNNFoodDietQueryOperation approximate = alg.executeOperation(new ApproxKNNFoodDietQueryOperation(foods.get(i), operation.getK(), operation.getDiet(), operation.getLocalSearchParam(), operation.getLocalSearchType()));
+            approximateComputations += counter.get();
+
+            counter.reset();
+            exact = scan.executeOperation(new KNNFoodDietQueryOperation(foods.get(i), operation.getK(), operation.getDiet()));
+            exactComputations += counter.get();
+
+            recalled += countRecalled(approximate, exact);
+            relevant += exact.getAnswerCount();
+            queries++;
+        }
+        System.out.println(String.format("Mean recall of %d stored foods: %.1f %%, distance computations per search: %d (sequential scan %d)",
+                queries, relevant == 0 ? 100.0 : 100.0 * recalled / relevant, approximateComputations / queries, exactComputations / queries));
+    }
+
+    /**
+     * Counts the foods of an approximate answer, that are not farther from the
+     * query than the farthest food of the exact answer, so that the foods at
+     * the same distance count the same.
+     *
+     * @param approximate executed approximate search
+     * @param exact executed exact search with the same query
+     * @return number of the recalled foods
+     */
+    private static int countRecalled(RankingQueryOperation approximate, RankingQueryOperation exact) {
+        float farthest = Float.NEGATIVE_INFINITY;
+        for (Iterator<RankedAbstractObject> iter = exact.getAnswer(); iter.hasNext();) {
+            farthest = Math.max(farthest, iter.next().getDistance());
+        }
+        int recalled = 0;
+        for (Iterator<RankedAbstractObject> iter = approximate.getAnswer(); iter.hasNext();) {
+            if (iter.next().getDistance() <= farthest) {
+                recalled++;
+            }
+        }
+        return recalled;
+    }
+
     private static void searchDefault(Algorithm alg, String algorithmName) throws AlgorithmMethodException, NoSuchMethodException, GoBackException {
         FoodMetaObjectMap query = inputQueryName(alg);
 
-        Iterator iter = alg.getQueryAnswer(new KNNFoodDietQueryOperation(query, 5, Diet.OMNIVOROUS, AnswerType.ORIGINAL_OBJECTS));
+        resetDistanceStatistics();
+        Iterator iter = resultCache.getQueryAnswer(algorithmName, alg, new KNNFoodDietQueryOperation(query, 5, Diet.OMNIVOROUS, AnswerType.ORIGINAL_OBJECTS));
         printResult(iter, algorithmName);
 
     }
@@ -227,6 +481,32 @@ public class SearchManager {
         while (iter.hasNext()) {
             System.out.println(iter.next());
         }
+        printStatistics();
+    }
+
+    /**
+     * Prints the counters of the distance computations and of the result cache
+     * on the standard output.
+     */
+    private static void printStatistics() {
+        long computed = StatisticCounter.getStatistics("DistanceComputations").get();
+        long pruned = StatisticCounter.getStatistics("DistanceComputations.Pruned").get();
+        System.out.println("Distance computations: " + computed
+                + ", abandoned early: " + StatisticCounter.getStatistics("DistanceComputations.Abandoned").get()
+                + ", pruned by pivots: " + pruned
+                + (pruned > 0 ? String.format(" (%.1f %% avoided)", 100.0 * pruned / (computed + pruned)) : ""));
+        System.out.println("Result cache hits: " + resultCache.getHits() + ", misses: " + resultCache.getMisses()
+                + ", evictions: " + resultCache.getEvictions());
+    }
+
+    /**
+     * Resets the counters of the distance computations printed with the
+     * results.
+     */
+    private static void resetDistanceStatistics() {
+        StatisticCounter.getStatistics("DistanceComputations").reset();
+        StatisticCounter.getStatistics("DistanceComputations.Abandoned").reset();
+        StatisticCounter.getStatistics("DistanceComputations.Pruned").reset();
     }
 
     /**
@@ -348,6 +628,121 @@ public class SearchManager {
         }
     }
 
+    /**
+     * Prompts the user to choose a similarity mode, whose metric function
+     * compares the foods in the similarity search. All the modes are available
+     * regardless of the class of the food objects of the algorithm. The
+     * nutrient vectors may also be weighted by the user instead.
+     *
+     * @return similarity mode or null for the weighted nutrient vectors
+     * @throws GoBackException returns to the search menu
+     */
+    private static SimilarityMode inputSimilarityMode() throws GoBackException {
+        while (true) {
+            System.out.println();
+            System.out.println("-------------------------------------------");
+            System.out.println("Type in the number of a similarity mode to compare the foods by:");
+            for (SimilarityMode mode : SimilarityMode.values()) {
+                System.out.println("\t" + mode.toStringWithOrdinal());
+            }
+            System.out.println("\t" + (SimilarityMode.length() + 1) + ". WEIGHTED_NUTRIENT_VECTORS");
+            System.out.println("\t" + (SimilarityMode.length() + 2) + ". Go back.");
+            System.out.println("-------------------------------------------");
+
+            try {
+                Scanner scan = new Scanner(System.in);
+                int input = scan.nextInt();
+
+                if (input == SimilarityMode.length() + 2) {
+                    throw new GoBackException();
+                }
+                if (input == SimilarityMode.length() + 1) {
+                    return null;
+                }
+                if (input < 1 || input > SimilarityMode.length()) {
+                    throw new InputMismatchException();
+                }
+                return SimilarityMode.getByOrdinal(input);
+
+            } catch (InputMismatchException | NumberFormatException ex) {
+                System.out.println("Invalid input, try again.");
+            }
+        }
+    }
+
+    /**
+     * Prompts the user to input the weights of the macronutrients, minerals
+     * and vitamins, by which their distances are multiplied in the similarity
+     * search.
+     *
+     * @return weighting function
+     * @throws GoBackException returns to the search menu
+     */
+    private static NutrientWeightsFunction inputNutrientWeights() throws GoBackException {
+        while (true) {
+            System.out.println();
+            System.out.println("-------------------------------------------");
+            System.out.println("Type in the weights of macronutrients, minerals and vitamins separated by spaces (e.g. 1 3 1) or type back to go back.");
+            System.out.println("-------------------------------------------");
+
+            try {
+                Scanner scan = new Scanner(System.in);
+                String input = scan.nextLine().trim();
+
+                if (input.equals("back")) {
+                    throw new GoBackException();
+                }
+
+                String[] weights = input.split("\\s+");
+                if (weights.length != 3) {
+                    throw new IllegalArgumentException("Three weights are needed, please try again.");
+                }
+                return new NutrientWeightsFunction(Float.parseFloat(weights[0]), Float.parseFloat(weights[1]), Float.parseFloat(weights[2]));
+
+            } catch (NumberFormatException ex) {
+                System.out.println("Invalid input, try again.");
+            } catch (IllegalArgumentException ex) {
+                System.out.println(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Prompts the user to enter the number of candidates kept by the
+     * approximate search, efSearch. More candidates find more of the nearest
+     * food items, but take longer.
+     *
+     * @param numberOfResults number of result food items
+     * @return number of candidates
+     * @throws GoBackException returns to the search menu
+     */
+    private static int inputSearchCandidates(int numberOfResults) throws GoBackException {
+        while (true) {
+            System.out.println();
+            System.out.println("-------------------------------------------");
+            System.out.println("Type in the number of candidates of the approximate search, at least " + numberOfResults + " (" + Math.max(numberOfResults, FoodHNSWAlgorithm.DEFAULT_EF_SEARCH) + " recommended) or 0 to go back.");
+            System.out.println("-------------------------------------------");
+
+            try {
+                Scanner scan = new Scanner(System.in);
+                int input = scan.nextInt();
+
+                if (input == 0) {
+                    throw new GoBackException();
+                }
+
+                if (input < numberOfResults) {
+                    throw new InputMismatchException("There can't be fewer candidates than results, please try again.");
+                }
+
+                return input;
+
+            } catch (InputMismatchException | NumberFormatException ex) {
+                System.out.println(ex.getMessage() == null ? "Invalid input, try again." : ex.getMessage());
+            }
+        }
+    }
+
     /**
      * Lists all the food items from the indexing algorithm.
      *
@@ -361,17 +756,38 @@ public class SearchManager {
     }
 
     /**
-     * Lists all the food items, that are edible by the filter diet.
+     * Lists all the food items, that are edible by the filter diet, on the
+     * standard output. The food items are retrieved and written by pages of
+     * LIST_PAGE_SIZE items, the user is prompted before every next page.
      *
      * @param alg serialized algorithm
-     * @return a list of filtered food items
      * @throws AlgorithmMethodException
      * @throws NoSuchMethodException
      * @throws GoBackException returns to the search menu
      */
-    private static Iterator<FoodMetaObjectMap> listFoodsFilteredByDiet(Algorithm alg) throws AlgorithmMethodException, NoSuchMethodException, GoBackException {
+    private static void listFoodsFilteredByDiet(Algorithm alg) throws AlgorithmMethodException, NoSuchMethodException, GoBackException {
         Diet filter = inputDietFilter();
 
-        return (Iterator<FoodMetaObjectMap>) alg.getQueryAnswer(new GetFoodByDietQueryOperation(filter));
+        for (int offset = 0;; offset += LIST_PAGE_SIZE) {
+            Iterator iter = alg.getQueryAnswer(new GetFoodByDietQueryOperation(filter, offset, LIST_PAGE_SIZE));
+            int count = 0;
+            while (iter.hasNext()) {
+                System.out.println(((AbstractObject) iter.next()).getLocatorURI());
+                count++;
+            }
+            if (count < LIST_PAGE_SIZE) {
+                return;
+            }
+
+            System.out.println();
+            System.out.println("-------------------------------------------");
+            System.out.println("Press enter to list more foods or type back to go back.");
+            System.out.println("-------------------------------------------");
+
+            Scanner scan = new Scanner(System.in);
+            if (scan.nextLine().equals("back")) {
+                throw new GoBackException();
+            }
+        }
     }
 }
@@ -1,25 +1,35 @@
 package csvparser;
 
+import food.data.FoodDataIndex;
 import food.enums.FoodCategory;
-import food.enums.Nutrient;
-import static food.enums.Nutrient.*;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.EnumMap;
-import java.util.HashSet;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.InputMismatchException;
-import java.util.Map;
+import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -34,12 +44,12 @@ import messif.objects.impl.ObjectFloatVectorL1;
  */
 public class CSVParser {
 
-    private final static Logger logger = Logger.getLogger(CSVParser.class.getName());
-
     //CONSTANTS    
     public static final Path DEFAULT_CSV_FILES_PATH = Paths.get("csv");
     public static final Path DEFAULT_DATA_FILE_PATH = Paths.get("FoodDataFile.data");
     public static final OpenOption DEFAULT_INPUT_OPTION = StandardOpenOption.APPEND;
+    public static final int DEFAULT_PARSER_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
 
     /**
      * csv folder/file that is to be added to the data file
@@ -55,9 +65,29 @@ public class CSVParser {
     private final OpenOption openOption;
     /**
      * National Nutrient Database for Standard Reference id's of food items
-     * already present in the data file
+     * added to the data file by the running parser threads
+     */
+    private final Set<String> presentIds = ConcurrentHashMap.newKeySet();
+    /**
+     * index of the food items already present in the data file, open while
+     * adding files
+     */
+    private FoodDataIndex index;
+    /**
+     * manifest of the .csv files already ingested into the data file, open
+     * while adding files
+     */
+    private IngestManifest manifest;
+    /**
+     * numbers of new, changed and skipped .csv files in the running parse
+     */
+    private final AtomicInteger newFiles = new AtomicInteger();
+    private final AtomicInteger changedFiles = new AtomicInteger();
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+    /**
+     * nutrient tokenizers reused by each parser thread
      */
-    private final Set<String> presentIds;
+    private final ThreadLocal<NutrientTokenizer> tokenizers = ThreadLocal.withInitial(NutrientTokenizer::new);
 
     /**
      * Sets all fields to their default values.
@@ -76,8 +106,6 @@ public class CSVParser {
             Files.createFile(output);
         }
         this.openOption = DEFAULT_INPUT_OPTION;
-
-        this.presentIds = getAlreadyPresentIds(output);
     }
 
     /**
@@ -101,8 +129,6 @@ public class CSVParser {
         this.output = output;
 
         this.openOption = openOption;
-
-        this.presentIds = getAlreadyPresentIds(output);
     }
 
     /**
@@ -113,32 +139,207 @@ public class CSVParser {
      * @throws IOException
      */
     public void addFile() throws IOException {
+        addFile(1);
+    }
+
+    /**
+     * Walks the input path and adds all .csv files it encounters using a
+     * pipeline of parser threads, that feed a bounded queue of parsed food
+     * records, which is drained by a single writer holding the data file open
+     * for the whole run. Files recorded in the ingest manifest of the data file
+     * with the same size and last modification time are skipped without being
+     * opened, files with the same content hash are skipped without being
+     * parsed, as long as their food is still in the data file. The throughput
+     * of the run and the numbers of new, changed and skipped files are printed
+     * at the end.
+     *
+     * @param parserThreads number of threads that parse the .csv files
+     * @throws IOException if the data file could not be written
+     */
+    public void addFile(int parserThreads) throws IOException {
+        if (parserThreads < 1) {
+            throw new IllegalArgumentException("At least one parser thread is required.");
+        }
+
+        List<Path> csvFiles = new ArrayList<>();
         try {
             Files.walk(input).forEach((Path filePath) -> {
                 if (Files.isRegularFile(filePath)) {
-                    try {
-                        addCSV(filePath);
-                    } catch (IOException ex) {
-                        Logger.getLogger(CSVParser.class.getName()).log(Level.SEVERE, null, ex);
-                    }
+                    csvFiles.add(filePath);
                 }
             });
-
         } catch (IOException ex) {
             Logger.getLogger(CSVParser.class.getName()).log(Level.SEVERE, null, ex);
         }
+
+        long start = System.nanoTime();
+        try (FoodDataIndex dataIndex = FoodDataIndex.open(output)) {
+            manifest = IngestManifest.load(output);
+            //the previous food items are removed when truncating the data file
+            if (openOption == StandardOpenOption.TRUNCATE_EXISTING) {
+                dataIndex.clear();
+                manifest.clear();
+            }
+            index = dataIndex;
+            addFiles(csvFiles, parserThreads, start);
+            manifest.save();
+        } finally {
+            index = null;
+            manifest = null;
+            presentIds.clear();
+            newFiles.set(0);
+            changedFiles.set(0);
+            skippedFiles.set(0);
+        }
+    }
+
+    /**
+     * Runs the parser threads and the writer over the .csv files.
+     *
+     * @param csvFiles files to add
+     * @param parserThreads number of threads that parse the .csv files
+     * @param start start of the run in nanoseconds
+     * @throws IOException if the data file could not be written
+     */
+    private void addFiles(List<Path> csvFiles, int parserThreads, long start) throws IOException {
+        BlockingQueue<ParsedFood> parsedFoods = new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+        FoodWriter writer = new FoodWriter(parsedFoods);
+        writer.start();
+
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads);
+        try {
+            for (Path filePath : csvFiles) {
+                parsers.execute(() -> {
+                    try {
+                        ParsedFood parsedFood = ingestCSV(filePath);
+                        if (parsedFood != null && parsedFood.record != null) {
+                            parsedFoods.put(parsedFood);
+                        }
+                    } catch (IOException | RuntimeException ex) {
+                        Logger.getLogger(CSVParser.class.getName()).log(Level.SEVERE, filePath.toString(), ex);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            parsers.shutdown();
+            parsers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            parsedFoods.put(ParsedFood.END_OF_INPUT);
+            writer.join();
+        } catch (InterruptedException ex) {
+            parsers.shutdownNow();
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parsing of the .csv files was interrupted.");
+        }
+
+        if (writer.failure != null) {
+            throw writer.failure;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1000000000.0d;
+        System.out.println(String.format("Processed %d files (%d added) in %.3f s using %d parser threads, %.1f files/s.",
+                csvFiles.size(), writer.written, seconds, parserThreads, csvFiles.size() / seconds));
+        System.out.println(String.format("New files: %d, changed files: %d, skipped files: %d.",
+                newFiles.get(), changedFiles.get(), skippedFiles.get()));
+    }
+
+    /**
+     * Checks a single .csv file against the ingest manifest and parses it, if
+     * it is new or its content has changed. The file is read once, its content
+     * is hashed and parsed from memory. A file is skipped only while the food
+     * recorded for it in the manifest is still in the data file. Parsed files
+     * are recorded in the manifest, so that they are skipped by the next run. A
+     * file whose food is already in the data file is skipped and its manifest
+     * entry is neither added nor updated, as the record in the data file is not
+     * replaced.
+     *
+     * @param filePath path of the .csv file
+     * @return the parsed food or null, if the file is not to be added
+     * @throws IOException
+     */
+    private ParsedFood ingestCSV(Path filePath) throws IOException {
+        String[] fileName = filePath.getFileName().toString().split("\\.");
+
+        if (!fileName[1].equals("csv")) {
+            System.out.println(filePath.getFileName() + " is not a .csv file.");
+            return null;
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        IngestManifest.Entry previous = manifest.get(filePath);
+        boolean ingested = previous != null && isInDataFile(previous.getId());
+        if (ingested && manifest.isUnchanged(filePath, attributes)) {
+            skippedFiles.incrementAndGet();
+            return null;
+        }
+
+        byte[] content = Files.readAllBytes(filePath);
+        String hash = IngestManifest.hash(content);
+        if (ingested && previous.getHash().equals(hash)) {
+            //only touched, the new modification time is recorded
+            manifest.put(filePath, attributes, hash, previous.getId());
+            skippedFiles.incrementAndGet();
+            return null;
+        }
+
+        ParsedFood parsedFood;
+        //decoded with the default charset, the same way a FileReader would
+        try (BufferedReader inputReader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content)))) {
+            parsedFood = parseCSV(filePath, inputReader);
+        }
+
+        if (parsedFood.record == null) {
+            //the food in the data file is not replaced, the file is checked again by the next run
+            if (previous != null) {
+                System.out.println("The changes of " + filePath.getFileName() + " are not applied, food " + parsedFood.foodIdString + " is already in the data file.");
+            }
+            skippedFiles.incrementAndGet();
+            return null;
+        }
+        //a file, whose food has been removed from the data file, is added again
+        if (previous == null || previous.getHash().equals(hash)) {
+            newFiles.incrementAndGet();
+        } else {
+            changedFiles.incrementAndGet();
+        }
+
+        if (!parsedFood.file.equals(filePath)) {
+            manifest.remove(filePath);
+        }
+        manifest.put(parsedFood.file, attributes, hash, parsedFood.foodIdString);
+        return parsedFood;
+    }
+
+    /**
+     * Finds out whether the food recorded for a .csv file in the manifest is
+     * still in the data file.
+     *
+     * @param foodId National Nutrient Database for Standard Reference id
+     * @return true if the data file contains the food
+     */
+    private boolean isInDataFile(String foodId) {
+        try {
+            return index.containsId(Integer.parseInt(foodId));
+        } catch (NumberFormatException ex) {
+            return false;
+        }
     }
 
     /**
-     * Adds a single .csv file to the data file. Furthermore, renames the .csv
-     * file to a foodName_foodCategoryOrdinal.csv, if not done already. The file
-     * is renamed for convenience, so that the user is not always prompted to
-     * input the food's human-friendly name and food category in the future.
+     * Parses a single .csv file into a food record of the data file.
+     * Furthermore, renames the .csv file to a foodName_foodCategoryOrdinal.csv,
+     * if not done already. The file is renamed for convenience, so that the
+     * user is not always prompted to input the food's human-friendly name and
+     * food category in the future.
      *
-     * @param inputPath path of the .csv file
+     * @param filePath path of the .csv file
+     * @param inputReader content of the .csv file
+     * @return the parsed food, without a record, if the food is already in the
+     * data file
      * @throws IOException
      */
-    private void addCSV(Path filePath) throws IOException, FileNotFoundException {
+    private ParsedFood parseCSV(Path filePath, BufferedReader inputReader) throws IOException, FileNotFoundException {
 
         StringBuilder outputStringBuilder = new StringBuilder();
         String foodName = "";
@@ -146,41 +347,50 @@ public class CSVParser {
         String foodId = "";
         String nutrients = "";
 
+        Path parsedFile = filePath;
         String[] fileName = filePath.getFileName().toString().split("\\.");
 
-        if (!fileName[1].equals("csv")) {
-            System.out.println(filePath.getFileName() + " is not a .csv file.");
-            return;
+        //reads the header of the .csv file
+        String line = inputReader.readLine();
+        int linesRead = 1;
+        if (!line.equals("Source: USDA National Nutrient Database for Standard Reference 28 Software v.2.3.2")) {
+            throw new IOException("Illegal input file format. Use USDA National nutrient database .csv file.");
         }
 
-        //reads .csv file
-        try (BufferedReader inputReader = new BufferedReader(new FileReader(filePath.toFile()))) {
-            String line = inputReader.readLine();
-            if (!line.equals("Source: USDA National Nutrient Database for Standard Reference 28 Software v.2.3.2")) {
-                throw new IOException("Illegal input file format. Use USDA National nutrient database .csv file.");
-            }
+        //reads lines until it gets \"Nutrient data for: key, name\"
+        while (!line.startsWith("\"")) {
+            line = inputReader.readLine();
+            linesRead++;
+        }
 
-            //reads lines until it gets \"Nutrient data for: key, name\"
-            while (!line.startsWith("\"")) {
-                line = inputReader.readLine();
-            }
+        //line:\"Nutrient data for: key, name\"
+        String[] splitValues = line.split("\"");
+        //splitValues:"", "Nutrient data for: key, name(may contain ,)", ""
+        splitValues = splitValues[1].split(":");
+        //splitValues:"Nutrient data for", " key, name(may contain ,)"
+        splitValues = splitValues[1].split(",", 2);
+        //splitValues:" key", " name"
 
-            //line:\"Nutrient data for: key, name\"
-            String[] splitValues = line.split("\"");
-            //splitValues:"", "Nutrient data for: key, name(may contain ,)", ""
-            splitValues = splitValues[1].split(":");
-            //splitValues:"Nutrient data for", " key, name(may contain ,)"
-            splitValues = splitValues[1].split(",", 2);
-            //splitValues:" key", " name"
+        foodId = splitValues[0].trim();
+        foodName = splitValues[1].trim();
 
-            foodId = splitValues[0].trim();
-            foodName = splitValues[1].trim();
+        int numericFoodId;
+        try {
+            numericFoodId = Integer.parseInt(foodId);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Illegal food id \"" + foodId + "\" of " + foodName + ", the National Nutrient Database for Standard Reference id has to be a number.");
+        }
 
-            if (presentIds.contains(foodId)) {
-                System.out.print("The data file already contains food " + foodId + ":" + foodName + ".\n");
-                return;
-            }
-            nutrients = parseNutrients(inputReader);
+        //reserves the id, so that no other parser thread adds the same food
+        if (index.containsId(numericFoodId) || !presentIds.add(foodId)) {
+            System.out.print("The data file already contains food " + foodId + ":" + foodName + ".\n");
+            return new ParsedFood(filePath, foodId, numericFoodId, foodName, null);
+        }
+        try {
+            nutrients = parseNutrients(filePath, inputReader, linesRead);
+        } catch (IOException | RuntimeException ex) {
+            presentIds.remove(foodId);
+            throw ex;
         }
 
         //if the csv file name is in format foodName_foodCategoryNumber(1-17)
@@ -189,11 +399,14 @@ public class CSVParser {
             foodName = nameAndCategoryOrdinal[0];
             foodCategory = FoodCategory.getByOrdinal(Integer.parseInt(nameAndCategoryOrdinal[1]));
         } else {
-            //get name and category from the user
-            foodName = inputName(foodName);
-            foodCategory = inputCategory(foodName);
-            //rename the file to format foodName_foodCategoryNumber(1-17) for future reference
-            renameCSVFile(filePath, foodName, foodCategory);
+            //the user is asked by one parser thread at a time
+            synchronized (System.in) {
+                //get name and category from the user
+                foodName = inputName(foodName);
+                foodCategory = inputCategory(foodName);
+                //rename the file to format foodName_foodCategoryNumber(1-17) for future reference
+                parsedFile = renameCSVFile(filePath, foodName, foodCategory);
+            }
         }
 
         //prebuilds the string to be written to the .data file
@@ -203,12 +416,7 @@ public class CSVParser {
         outputStringBuilder.append("#id ").append(foodId).append("\n");
         outputStringBuilder.append("#category ").append(foodCategory).append("\n");
 
-        //writes into the .data file
-        try (BufferedWriter outputFile = Files.newBufferedWriter(output, openOption)) {
-            outputFile.write(outputStringBuilder.toString());
-            presentIds.add(foodId);
-            System.out.println(foodName + " added to " + output.getFileName() + ".");
-        }
+        return new ParsedFood(parsedFile, foodId, numericFoodId, foodName, outputStringBuilder.toString());
     }
 
     /**
@@ -264,162 +472,16 @@ public class CSVParser {
      * enum file.
      *
      *
+     * @param filePath path of the .csv file
      * @param inputReader .csv file
+     * @param linesRead number of the lines of the file already read
      * @return string of vectors separated by newline
-     * @throws IOException
+     * @throws IOException if a nutrient line is malformed
      */
-    private String parseNutrients(BufferedReader inputReader) throws IOException {
-
-        Map<Nutrient, Double> nutrients = new EnumMap<>(Nutrient.class);
-
-        String line = inputReader.readLine();
-
-        while (line != null) {
-            if (line.startsWith("\"")) {
-                //line:"Nutrient name",[unit],[in 100g],[in volume2],[in volume3]...
-                String[] splitLine = line.split("\"");
-
-                //splitLine[2]:,[unit],[in 100g],[in volume2],[in volume3]...
-                String[] nutrientInDifferentVolumes = splitLine[2].split(",");
-
-                Nutrient foundNutrient = null;
-
-                //splitLine[1]:Nutrient name
-                switch (splitLine[1]) {
-                    case "Water":
-                        foundNutrient = WATER;
-                        break;
-                    case "Energy":
-                        //not a measured value
-                        break;
-                    case "Protein":
-                        foundNutrient = PROTEIN;
-                        break;
-                    case "Total lipid (fat)":
-                        foundNutrient = LIPIDS;
-                        break;
-                    case "Carbohydrate, by difference":
-                        foundNutrient = CARBOHYDRATE;
-                        break;
-                    case "Fiber, total dietary":
-                        foundNutrient = FIBER;
-                        break;
-                    case "Sugars, total":
-                        //not a measured value
-                        break;
-                    case "Calcium, Ca":
-                        foundNutrient = CALCIUM;
-                        break;
-                    case "Iron, Fe":
-                        foundNutrient = IRON;
-                        break;
-                    case "Magnesium, Mg":
-                        foundNutrient = MAGNESIUM;
-                        break;
-                    case "Phosphorus, P":
-                        foundNutrient = PHOSPHORUS;
-                        break;
-                    case "Potassium, K":
-                        foundNutrient = POTASSIUM;
-                        break;
-                    case "Sodium, Na":
-                        foundNutrient = SODIUM;
-                        break;
-                    case "Zinc, Zn":
-                        foundNutrient = ZINC;
-                        break;
-                    case "Vitamin C, total ascorbic acid":
-                        foundNutrient = VITAMIN_C;
-                        break;
-                    case "Thiamin":
-                        foundNutrient = VITAMIN_B1;
-                        break;
-                    case "Riboflavin":
-                        foundNutrient = VITAMIN_B2;
-                        break;
-                    case "Niacin":
-                        foundNutrient = VITAMIN_B3;
-                        break;
-                    case "Vitamin B-6":
-                        foundNutrient = VITAMIN_B6;
-                        break;
-                    case "Folate, DFE":
-                        foundNutrient = VITAMIN_B9;
-                        break;
-                    case "Vitamin B-12":
-                        foundNutrient = VITAMIN_B12;
-                        break;
-                    case "Vitamin A, RAE":
-                        //using only IU value of vitamin A
-                        break;
-                    case "Vitamin A, IU":
-                        foundNutrient = VITAMIN_A;
-                        break;
-                    case "Vitamin E (alpha-tocopherol)":
-                        foundNutrient = VITAMIN_E;
-                        break;
-                    case "Vitamin D (D2 + D3)":
-                        //using only IU value of vitamin D
-                        break;
-                    case "Vitamin D":
-                        foundNutrient = VITAMIN_D;
-                        break;
-                    case "Vitamin K (phylloquinone)":
-                        foundNutrient = VITAMIN_K;
-                        break;
-                    case "Fatty acids, total saturated":
-                        //not a measured value
-                        break;
-                    case "Fatty acids, total monounsaturated":
-                        //not a measured value
-                        break;
-                    case "Fatty acids, total polyunsaturated":
-                        //not a measured value
-                        break;
-                    case "Fatty acids, total trans":
-                        //not a measured value
-                        break;
-                    case "Cholesterol":
-                        //not a measured value
-                        break;
-                    case "Caffeine":
-                        //not a measured value
-                        break;
-                    default:
-                        logger.log(Level.WARNING, "The line is of a different format.", line);
-                        throw new IOException(line + " not a known string in this format.");
-                }
-                if (foundNutrient != null) {
-                    double value = Double.parseDouble(nutrientInDifferentVolumes[2]) / foundNutrient.getRDI();
-                    value *= 100;
-                    value = Math.round(value * 1000.0d) / 1000.0d;
-
-                    nutrients.put(foundNutrient, value);
-                }
-            }
-            line = inputReader.readLine();
-        }
-
-        StringBuilder nutrientVectors = new StringBuilder();
-
-        //create a string categorized by the NUTRIENT enum into lines of nutrient vector values
-        for (Nutrient nutrientType : NUTRIENT.getChildren()) {
-            if (nutrientType.hasChildren()) {
-                for (Nutrient nutrient : nutrientType.getChildren()) {
-                    nutrientVectors.append(nutrients.getOrDefault(nutrient, 0.0));
-                    nutrientVectors.append(',');
-                }
-                //changes the last ',' character from the nutrient vector line
-                //into a \n character to create 
-                nutrientVectors.setCharAt(nutrientVectors.length() - 1, '\n');
-            } else {
-                //if the NUTRIENT enum is not further categorized
-                nutrientVectors.append(nutrients.getOrDefault(nutrientType, 0.0));
-                nutrientVectors.append("\n");
-            }
-        }
-
-        return nutrientVectors.toString();
+    private String parseNutrients(Path filePath, BufferedReader inputReader, int linesRead) throws IOException {
+        NutrientTokenizer tokenizer = tokenizers.get();
+        tokenizer.parse(inputReader, filePath.getFileName().toString(), linesRead);
+        return tokenizer.appendVectors(new StringBuilder()).toString();
     }
 
     /**
@@ -429,46 +491,21 @@ public class CSVParser {
      * @param inputPath
      * @param name
      * @param categoryName
-     * @return
+     * @return path of the renamed file or the input path, if it could not be
+     * renamed
      */
-    private void renameCSVFile(Path inputPath, String name, FoodCategory category) {
+    private Path renameCSVFile(Path inputPath, String name, FoodCategory category) {
         String newName = name + "_" + category.getOrdinal() + ".csv";
         String newNameWithPath = inputPath.getParent() + "/" + newName;
         if (inputPath.toFile().renameTo(new File(newNameWithPath))) {
             System.out.println("Renamed the .csv file to " + newName + ".");
+            return Paths.get(newNameWithPath);
         } else {
             System.out.println("There was a problem renaming the file.");
+            return inputPath;
         }
     }
 
-    /**
-     * Reads the input file and retrieves a map of food keys already contained
-     * in the food file in order to prevent the creation of duplicates.
-     *
-     * @return map of locator keys and names of foods already in the data file
-     */
-    private Set<String> getAlreadyPresentIds(Path output) {
-
-        Set<String> result = new HashSet<>();
-
-        try (BufferedReader inputReader = Files.newBufferedReader(output)) {
-
-            String line = inputReader.readLine();
-            while (line != null) {
-                //e.g. #id 123
-                if (line.startsWith("#id")) {
-                    String key = line.split(" ")[1];
-                    result.add(key);
-                }
-                line = inputReader.readLine();
-            }
-
-        } catch (IOException ex) {
-            Logger.getLogger(CSVParser.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        return result;
-    }
-
     /**
      * Retrieves a string, that represents nutrient vector names and classes
      * separated by a ';'.
@@ -485,4 +522,92 @@ public class CSVParser {
                 + clazz.getName()
                 + ";\n";
     }
+
+    /**
+     * A food record parsed from a .csv file, that is waiting to be written to
+     * the data file.
+     */
+    private static class ParsedFood {
+
+        /**
+         * marks the end of the parsed foods for the writer
+         */
+        private static final ParsedFood END_OF_INPUT = new ParsedFood(null, "0", 0, null, null);
+
+        /**
+         * the .csv file, after it has been renamed
+         */
+        private final Path file;
+        private final String foodIdString;
+        private final int foodId;
+        private final String foodName;
+        /**
+         * record of the data file or null, if the food is already present
+         */
+        private final String record;
+
+        private ParsedFood(Path file, String foodIdString, int foodId, String foodName, String record) {
+            this.file = file;
+            this.foodIdString = foodIdString;
+            this.foodId = foodId;
+            this.foodName = foodName;
+            this.record = record;
+        }
+    }
+
+    /**
+     * The single writer of the data file, that appends the parsed foods to the
+     * data file, which is kept open until all the parser threads are done, and
+     * adds their byte offsets to the data file index. The foods are added to
+     * the index only after the data file has been flushed, so that a failed
+     * write leaves no foods in the index, that are not in the data file.
+     */
+    private class FoodWriter extends Thread {
+
+        private final BlockingQueue<ParsedFood> parsedFoods;
+        private int written;
+        private IOException failure;
+
+        private FoodWriter(BlockingQueue<ParsedFood> parsedFoods) {
+            super("CSVParser writer");
+            this.parsedFoods = parsedFoods;
+        }
+
+        @Override
+        public void run() {
+            try {
+                //writes into the .data file
+                try (OutputStream outputFile = new BufferedOutputStream(Files.newOutputStream(output, openOption))) {
+                    long offset = openOption == StandardOpenOption.TRUNCATE_EXISTING ? 0 : Files.size(output);
+                    List<ParsedFood> writtenFoods = new ArrayList<>();
+                    List<Long> writtenOffsets = new ArrayList<>();
+                    ParsedFood parsedFood = parsedFoods.take();
+                    while (parsedFood != ParsedFood.END_OF_INPUT) {
+                        byte[] record = parsedFood.record.getBytes(StandardCharsets.UTF_8);
+                        outputFile.write(record);
+                        writtenFoods.add(parsedFood);
+                        writtenOffsets.add(offset);
+                        offset += record.length;
+                        parsedFood = parsedFoods.take();
+                    }
+                    outputFile.flush();
+
+                    for (int i = 0; i < writtenFoods.size(); i++) {
+                        index.add(writtenFoods.get(i).foodId, writtenFoods.get(i).foodName, writtenOffsets.get(i));
+                        written++;
+                        System.out.println(writtenFoods.get(i).foodName + " added to " + output.getFileName() + ".");
+                    }
+                    index.setIndexedLength(offset);
+                } catch (IOException | RuntimeException ex) {
+                    failure = ex instanceof IOException ? (IOException) ex
+                            : new IOException("The food records could not be written to " + output.getFileName() + ".", ex);
+                    //keeps draining the queue, so that the parser threads do not block
+                    while (parsedFoods.take() != ParsedFood.END_OF_INPUT) {
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
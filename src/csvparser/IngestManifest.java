@@ -0,0 +1,243 @@
+package csvparser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A manifest of the .csv files already ingested into a data file. For every
+ * file it holds the size, the last modification time, the hash of the content
+ * and the National Nutrient Database for Standard Reference id of the food, so
+ * that an unchanged file does not have to be opened again, when the csv folder
+ * is parsed into the same data file.
+ *
+ * The manifest is a text file kept next to the data file, one file per line:
+ * size, last modification time in milliseconds, SHA-256 of the content, food
+ * id and the absolute path of the file separated by a tab.
+ *
+ * @author tomco
+ */
+public class IngestManifest {
+
+    private static final String HEADER = "#ingest manifest 1";
+
+    /**
+     * data file the .csv files are ingested into
+     */
+    private final Path dataFile;
+    /**
+     * entries by the absolute paths of the .csv files
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private IngestManifest(Path dataFile) {
+        this.dataFile = dataFile;
+    }
+
+    /**
+     * Loads the manifest of a data file or creates an empty one, if the data
+     * file has none yet.
+     *
+     * @param dataFile data file the .csv files are ingested into
+     * @return the manifest
+     * @throws IOException
+     */
+    public static IngestManifest load(Path dataFile) throws IOException {
+        IngestManifest manifest = new IngestManifest(dataFile);
+        Path manifestPath = getManifestPath(dataFile);
+        if (!Files.exists(manifestPath)) {
+            return manifest;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                //an unknown manifest is ignored, the files are just parsed again
+                return manifest;
+            }
+            line = reader.readLine();
+            while (line != null) {
+                //size, last modified, hash, id, path
+                String[] values = line.split("\t", 5);
+                if (values.length == 5) {
+                    manifest.entries.put(values[4], new Entry(Long.parseLong(values[0]), Long.parseLong(values[1]), values[2], values[3]));
+                }
+                line = reader.readLine();
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Retrieves the path of the manifest of a data file.
+     *
+     * @param dataFile data file the .csv files are ingested into
+     * @return path to the manifest
+     */
+    public static Path getManifestPath(Path dataFile) {
+        return Paths.get(dataFile.toString() + ".manifest");
+    }
+
+    /**
+     * Retrieves the manifest entry of a .csv file.
+     *
+     * @param file .csv file
+     * @return the entry or null, if the file has not been ingested yet
+     */
+    public Entry get(Path file) {
+        return entries.get(getKey(file));
+    }
+
+    /**
+     * Finds out whether a file has been ingested with the same size and last
+     * modification time, without opening the file. Whether its food is still
+     * in the data file is left to the caller.
+     *
+     * @param file .csv file
+     * @param attributes current attributes of the file
+     * @return true if the file has not been modified since it was ingested
+     */
+    public boolean isUnchanged(Path file, BasicFileAttributes attributes) {
+        Entry entry = get(file);
+        return entry != null
+                && entry.getSize() == attributes.size()
+                && entry.getLastModified() == attributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * Stores the manifest entry of an ingested file.
+     *
+     * @param file .csv file
+     * @param attributes attributes of the file when it was read
+     * @param hash hash of the content of the file
+     * @param id National Nutrient Database for Standard Reference id of the
+     * food
+     */
+    public void put(Path file, BasicFileAttributes attributes, String hash, String id) {
+        entries.put(getKey(file), new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), hash, id));
+    }
+
+    /**
+     * Removes the manifest entry of a file, used when the file is renamed.
+     *
+     * @param file .csv file
+     */
+    public void remove(Path file) {
+        entries.remove(getKey(file));
+    }
+
+    /**
+     * Removes all entries, used when the data file is truncated.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Writes the manifest next to the data file.
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        Path manifestPath = getManifestPath(dataFile);
+        Path temporaryPath = Paths.get(manifestPath.toString() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(value.getSize() + "\t" + value.getLastModified() + "\t" + value.getHash() + "\t" + value.getId() + "\t" + entry.getKey());
+                writer.write('\n');
+            }
+        }
+        Files.move(temporaryPath, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Retrieves the SHA-256 hash of the content of a file.
+     *
+     * @param content content of the file
+     * @return hexadecimal hash
+     */
+    public static String hash(byte[] content) {
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                hash.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hash.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String getKey(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * The state of an ingested .csv file.
+     */
+    public static class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+        private final String id;
+
+        private Entry(long size, long lastModified, String hash, String id) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.id = id;
+        }
+
+        /**
+         * Retrieves the size of the file in bytes.
+         *
+         * @return size
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Retrieves the last modification time of the file in milliseconds.
+         *
+         * @return last modification time
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Retrieves the SHA-256 hash of the content of the file.
+         *
+         * @return hexadecimal hash
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Retrieves the National Nutrient Database for Standard Reference id
+         * of the food in the file.
+         *
+         * @return food id
+         */
+        public String getId() {
+            return id;
+        }
+    }
+}
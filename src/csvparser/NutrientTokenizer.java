@@ -0,0 +1,387 @@
+package csvparser;
+
+import food.enums.Nutrient;
+import static food.enums.Nutrient.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A streaming tokenizer of the nutrient lines of a USDA National Nutrient
+ * Database .csv file. The tokenizer works on characters read into reusable
+ * buffers, looks the nutrient names up in a table precomputed from the known
+ * names and accumulates the values in a primitive array indexed by the ordinal
+ * of the nutrient, so that parsing a file creates no garbage per line.
+ *
+ * A tokenizer is not thread-safe, each parser thread needs its own instance.
+ *
+ * @author tomco
+ */
+public class NutrientTokenizer {
+
+    private final static Logger logger = Logger.getLogger(NutrientTokenizer.class.getName());
+
+    /**
+     * marks a known nutrient name whose value is not measured
+     */
+    private static final int NOT_MEASURED = -1;
+
+    /**
+     * size of the open addressing nutrient name table, a power of two
+     */
+    private static final int TABLE_SIZE = 128;
+
+    private static final char[][] tableNames = new char[TABLE_SIZE][];
+    private static final int[] tableOrdinals = new int[TABLE_SIZE];
+
+    /**
+     * recommended daily intakes indexed by the nutrient ordinals
+     */
+    private static final double[] rdis = new double[Nutrient.values().length];
+
+    /**
+     * nutrient ordinals of the lines of nutrient vectors in the order of the
+     * NUTRIENT enum hierarchy
+     */
+    private static final int[][] vectorOrdinals;
+
+    /**
+     * exactly representable powers of ten
+     */
+    private static final double[] powersOfTen = new double[23];
+
+    static {
+        register("Water", WATER);
+        register("Energy", null);
+        register("Protein", PROTEIN);
+        register("Total lipid (fat)", LIPIDS);
+        register("Carbohydrate, by difference", CARBOHYDRATE);
+        register("Fiber, total dietary", FIBER);
+        register("Sugars, total", null);
+        register("Calcium, Ca", CALCIUM);
+        register("Iron, Fe", IRON);
+        register("Magnesium, Mg", MAGNESIUM);
+        register("Phosphorus, P", PHOSPHORUS);
+        register("Potassium, K", POTASSIUM);
+        register("Sodium, Na", SODIUM);
+        register("Zinc, Zn", ZINC);
+        register("Vitamin C, total ascorbic acid", VITAMIN_C);
+        register("Thiamin", VITAMIN_B1);
+        register("Riboflavin", VITAMIN_B2);
+        register("Niacin", VITAMIN_B3);
+        register("Vitamin B-6", VITAMIN_B6);
+        register("Folate, DFE", VITAMIN_B9);
+        register("Vitamin B-12", VITAMIN_B12);
+        //using only IU value of vitamin A
+        register("Vitamin A, RAE", null);
+        register("Vitamin A, IU", VITAMIN_A);
+        register("Vitamin E (alpha-tocopherol)", VITAMIN_E);
+        //using only IU value of vitamin D
+        register("Vitamin D (D2 + D3)", null);
+        register("Vitamin D", VITAMIN_D);
+        register("Vitamin K (phylloquinone)", VITAMIN_K);
+        register("Fatty acids, total saturated", null);
+        register("Fatty acids, total monounsaturated", null);
+        register("Fatty acids, total polyunsaturated", null);
+        register("Fatty acids, total trans", null);
+        register("Cholesterol", null);
+        register("Caffeine", null);
+
+        for (Nutrient nutrient : Nutrient.values()) {
+            rdis[nutrient.ordinal()] = nutrient.getRDI();
+        }
+
+        vectorOrdinals = new int[NUTRIENT.getChildren().size()][];
+        int line = 0;
+        for (Nutrient nutrientType : NUTRIENT.getChildren()) {
+            if (nutrientType.hasChildren()) {
+                vectorOrdinals[line] = nutrientType.getChildren().stream().mapToInt(Nutrient::ordinal).toArray();
+            } else {
+                //if the NUTRIENT enum is not further categorized
+                vectorOrdinals[line] = new int[]{nutrientType.ordinal()};
+            }
+            line++;
+        }
+
+        powersOfTen[0] = 1.0d;
+        for (int i = 1; i < powersOfTen.length; i++) {
+            powersOfTen[i] = powersOfTen[i - 1] * 10.0d;
+        }
+    }
+
+    /**
+     * Adds a nutrient name to the nutrient name table.
+     *
+     * @param name nutrient name used in the .csv file
+     * @param nutrient nutrient or null, if the value is not measured
+     */
+    private static void register(String name, Nutrient nutrient) {
+        char[] chars = name.toCharArray();
+        int slot = hash(chars, 0, chars.length) & (TABLE_SIZE - 1);
+        while (tableNames[slot] != null) {
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        tableNames[slot] = chars;
+        tableOrdinals[slot] = nutrient == null ? NOT_MEASURED : nutrient.ordinal();
+    }
+
+    private static int hash(char[] chars, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * characters read from the input, but not yet tokenized
+     */
+    private final char[] buffer = new char[8192];
+    private int bufferPosition;
+    private int bufferLimit;
+
+    /**
+     * the line that is being tokenized, grows for longer lines
+     */
+    private char[] line = new char[256];
+    private int lineLength;
+    /**
+     * name of the parsed file and the number of the line in the line buffer,
+     * used in the error messages
+     */
+    private String fileName;
+    private int lineNumber;
+
+    /**
+     * values in 100 grams of the food divided by the rdi indexed by the
+     * nutrient ordinals
+     */
+    private final double[] values = new double[Nutrient.values().length];
+
+    /**
+     * Reads nutrients line by line from the rest of the csv and stores the
+     * percentage of the recommended daily intake contained in 100 grams of the
+     * food item, rounded to three decimal places.
+     *
+     * @param reader the .csv file positioned after the "Nutrient data for:"
+     * line
+     * @param fileName name of the .csv file, used in the error messages
+     * @param linesRead number of the lines of the file read before the
+     * position of the reader
+     * @throws IOException if the file contains an unknown nutrient or a
+     * nutrient line without the value in 100 grams
+     */
+    public void parse(Reader reader, String fileName, int linesRead) throws IOException {
+        Arrays.fill(values, 0.0d);
+        bufferPosition = 0;
+        bufferLimit = 0;
+        this.fileName = fileName;
+        this.lineNumber = linesRead;
+
+        while (readLine(reader)) {
+            lineNumber++;
+            if (lineLength > 0 && line[0] == '"') {
+                parseNutrientLine();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the value of a nutrient parsed by the last call of parse.
+     *
+     * @param nutrient nutrient
+     * @return percentage of the rdi in 100 grams or 0 if not in the file
+     */
+    public double getValue(Nutrient nutrient) {
+        return values[nutrient.ordinal()];
+    }
+
+    /**
+     * Appends the nutrient vectors parsed by the last call of parse,
+     * categorized by the Nutrient.java enum file into lines of values separated
+     * by a ','.
+     *
+     * @param nutrientVectors builder of the food record
+     * @return the builder
+     */
+    public StringBuilder appendVectors(StringBuilder nutrientVectors) {
+        for (int[] ordinals : vectorOrdinals) {
+            for (int i = 0; i < ordinals.length; i++) {
+                if (i > 0) {
+                    nutrientVectors.append(',');
+                }
+                nutrientVectors.append(values[ordinals[i]]);
+            }
+            nutrientVectors.append('\n');
+        }
+        return nutrientVectors;
+    }
+
+    /**
+     * Reads the next line into the line buffer without the line terminator.
+     *
+     * @param reader input
+     * @return false if there are no more lines
+     * @throws IOException
+     */
+    private boolean readLine(Reader reader) throws IOException {
+        lineLength = 0;
+        while (true) {
+            if (bufferPosition == bufferLimit) {
+                bufferLimit = reader.read(buffer, 0, buffer.length);
+                bufferPosition = 0;
+                if (bufferLimit <= 0) {
+                    bufferLimit = 0;
+                    return lineLength > 0;
+                }
+            }
+            char c = buffer[bufferPosition++];
+            if (c == '\n') {
+                return true;
+            }
+            if (c == '\r') {
+                //\r\n is a single line terminator
+                if (bufferPosition == bufferLimit) {
+                    bufferLimit = reader.read(buffer, 0, buffer.length);
+                    bufferPosition = 0;
+                    if (bufferLimit <= 0) {
+                        bufferLimit = 0;
+                        return true;
+                    }
+                }
+                if (buffer[bufferPosition] == '\n') {
+                    bufferPosition++;
+                }
+                return true;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = c;
+        }
+    }
+
+    /**
+     * Tokenizes a line in the format "Nutrient name",[unit],[in
+     * 100g],[in volume2],[in volume3]...
+     *
+     * @throws IOException if the nutrient name is not known or the line has
+     * no value in 100 grams
+     */
+    private void parseNutrientLine() throws IOException {
+        int nameEnd = 1;
+        while (nameEnd < lineLength && line[nameEnd] != '"') {
+            nameEnd++;
+        }
+
+        int ordinal = lookup(1, nameEnd);
+        if (ordinal == NOT_MEASURED) {
+            return;
+        }
+
+        //the value in 100g is the third field after the name, the first is empty
+        int position = nameEnd + 1;
+        for (int field = 0; field < 2; field++) {
+            while (position < lineLength && line[position] != ',' && line[position] != '"') {
+                position++;
+            }
+            if (position >= lineLength || line[position] == '"') {
+                throw new IOException(fileName + ", line " + lineNumber + ": no value in 100 g in " + new String(line, 0, lineLength));
+            }
+            position++;
+        }
+        int valueEnd = position;
+        while (valueEnd < lineLength && line[valueEnd] != ',' && line[valueEnd] != '"') {
+            valueEnd++;
+        }
+
+        double value = parseDouble(position, valueEnd) / rdis[ordinal];
+        value *= 100;
+        value = Math.round(value * 1000.0d) / 1000.0d;
+
+        values[ordinal] = value;
+    }
+
+    /**
+     * Finds the ordinal of the nutrient whose name is in the line buffer.
+     *
+     * @param from index of the first character of the name
+     * @param to index after the last character of the name
+     * @return nutrient ordinal or NOT_MEASURED
+     * @throws IOException if the name is not a known nutrient name
+     */
+    private int lookup(int from, int to) throws IOException {
+        int length = to - from;
+        int slot = hash(line, from, to) & (TABLE_SIZE - 1);
+        while (tableNames[slot] != null) {
+            char[] name = tableNames[slot];
+            if (name.length == length && regionMatches(name, from)) {
+                return tableOrdinals[slot];
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        String unknownLine = new String(line, 0, lineLength);
+        logger.log(Level.WARNING, "The line is of a different format.", unknownLine);
+        throw new IOException(fileName + ", line " + lineNumber + ": " + unknownLine + " not a known string in this format.");
+    }
+
+    private boolean regionMatches(char[] name, int from) {
+        for (int i = 0; i < name.length; i++) {
+            if (name[i] != line[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a decimal number from the line buffer. Plain decimals with up to
+     * 15 significant digits are parsed exactly as a quotient of two doubles
+     * that are exactly representable, which gives the same correctly rounded
+     * value as Double.parseDouble. Anything else is left to
+     * Double.parseDouble.
+     *
+     * @param from index of the first character of the number
+     * @param to index after the last character of the number
+     * @return the parsed number
+     */
+    private double parseDouble(int from, int to) {
+        int position = from;
+        boolean negative = false;
+        if (position < to && (line[position] == '-' || line[position] == '+')) {
+            negative = line[position] == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        boolean hasDigits = false;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; position < to; position++) {
+            char c = line[position];
+            if (c >= '0' && c <= '9') {
+                hasDigits = true;
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+
+        if (position != to || !hasDigits || digits > 15 || fractionDigits >= powersOfTen.length) {
+            return Double.parseDouble(new String(line, from, to - from));
+        }
+
+        double value = fractionDigits > 0 ? mantissa / powersOfTen[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+}
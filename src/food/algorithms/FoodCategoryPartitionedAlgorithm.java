@@ -0,0 +1,381 @@
+package food.algorithms;
+
+import food.enums.Diet;
+import food.enums.FoodCategory;
+import food.objects.FoodMetaObjectMap;
+import food.operations.query.GetFoodByDietQueryOperation;
+import food.operations.query.KNNFoodDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import messif.algorithms.Algorithm;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectIterator;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.GetAllObjectsQueryOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+import messif.operations.query.KNNQueryOperation;
+
+/**
+ * An algorithm, that stores the food objects in a partition for every food
+ * category. A diet is a set of food categories, so the operations filtered by
+ * a diet visit only the partitions of the categories consumable by it, the
+ * foods of the other categories are not even iterated.
+ *
+ * Every food remembers the position of its insertion, the visited partitions
+ * are merged by these positions, so that the foods are evaluated in the same
+ * order as by a sequential scan and the answers are the same, ties included.
+ * The only exception are the kNN searches, whose query object adds a distance
+ * for the food categories. They visit the partitions of the nearest categories
+ * first, so the foods of different categories at the same distance may
+ * replace each other.
+ *
+ * @author tomco
+ */
+public class FoodCategoryPartitionedAlgorithm extends Algorithm {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * food categories by their ordinals, the indexes of the partitions
+     */
+    private static final FoodCategory[] CATEGORIES = FoodCategory.values();
+
+    private final Partition[] partitions = new Partition[CATEGORIES.length];
+    /**
+     * number of stored foods, the position of the next inserted food
+     */
+    private int size;
+    /**
+     * stored foods by their locators
+     */
+    private final LocatorIndex<FoodMetaObjectMap> locatorIndex = new LocatorIndex<>();
+
+    /**
+     * Creates an empty partitioned storage.
+     */
+    @Algorithm.AlgorithmConstructor(description = "Food category partitions", arguments = {})
+    public FoodCategoryPartitionedAlgorithm() {
+        super("Food category partitions");
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition();
+        }
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @return number of foods
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the number of stored foods of a food category.
+     *
+     * @param category food category
+     * @return number of foods in the partition of the category
+     */
+    public int size(FoodCategory category) {
+        return partitions[category.ordinal()].foods.size();
+    }
+
+    /**
+     * Inserts a food object into the partition of its category.
+     *
+     * @param operation insert operation
+     */
+    public void insert(InsertOperation operation) {
+        insert(toFood(operation.getInsertedObject()));
+        operation.endOperation();
+    }
+
+    /**
+     * Inserts food objects into the partitions of their categories.
+     *
+     * @param operation bulk insert operation
+     */
+    public void bulkInsert(BulkInsertOperation operation) {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        for (LocalAbstractObject object : operation.getInsertedObjects()) {
+            inserted.add(toFood(object));
+        }
+        synchronized (this) {
+            for (FoodMetaObjectMap food : inserted) {
+                insert(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    private static FoodMetaObjectMap toFood(LocalAbstractObject object) throws IllegalArgumentException {
+        if (!(object instanceof FoodMetaObjectMap)) {
+            throw new IllegalArgumentException("Only food objects can be stored, got " + object.getClass().getName() + ".");
+        }
+        return (FoodMetaObjectMap) object;
+    }
+
+    private synchronized void insert(FoodMetaObjectMap food) {
+        partitions[food.getCategory().ordinal()].add(food, size);
+        locatorIndex.add(food.getLocatorURI(), food);
+        size++;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @param operation object count operation
+     */
+    public void objectCount(GetObjectCountOperation operation) {
+        operation.addToAnswer(size());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search. If the operation is a
+     * KNNFoodDietQueryOperation, only the partitions of the categories
+     * consumable by its diet are evaluated.
+     *
+     * The category distance of a food query, see
+     * FoodMetaObjectMap.getCategoryDistance, is the lower bound of the
+     * distances of the foods of a category, so the partitions are evaluated
+     * in phases from the least category distance, and the phases, whose
+     * category distance exceeds the distance of the k-th nearest food found,
+     * are skipped. The query with the category penalty thus evaluates the
+     * other categories only if its own one has less than k foods or the k-th
+     * distance exceeds the penalty.
+     *
+     * @param operation kNN operation
+     */
+    public void knnSearch(KNNQueryOperation operation) {
+        Collection<FoodCategory> categories = operation instanceof KNNFoodDietQueryOperation
+                ? ((KNNFoodDietQueryOperation) operation).getDiet().getConsumables()
+                : EnumSet.allOf(FoodCategory.class);
+        LocalAbstractObject query = operation.getQueryObject();
+        if (!(query instanceof FoodMetaObjectMap)) {
+            operation.evaluate(iterator(categories));
+            operation.endOperation();
+            return;
+        }
+
+        TreeMap<Float, List<FoodCategory>> phases = new TreeMap<>();
+        for (FoodCategory category : categories) {
+            phases.computeIfAbsent(((FoodMetaObjectMap) query).getCategoryDistance(category), distance -> new ArrayList<>()).add(category);
+        }
+        for (Map.Entry<Float, List<FoodCategory>> phase : phases.entrySet()) {
+            if (phase.getKey() > operation.getAnswerThreshold()) {
+                break;
+            }
+            operation.evaluate(iterator(phase.getValue()));
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by all the similarity modes in a
+     * single pass over the partitions of the categories consumable by the
+     * diet of the operation.
+     *
+     * @param operation multi-mode kNN operation
+     */
+    public void knnMultiModeSearch(KNNFoodMultiModeQueryOperation operation) {
+        operation.evaluate(iterator(operation.getDiet().getConsumables()));
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a search by the nutrient vectors weighted for the query by a
+     * scan over the partitions of the categories consumable by the diet of
+     * the operation.
+     *
+     * @param operation weighted kNN operation
+     */
+    public void weightedSearch(KNNFoodWeightedQueryOperation operation) {
+        operation.evaluate(iterator(operation.getDiet().getConsumables()));
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the first stored food with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public synchronized void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        FoodMetaObjectMap food = locatorIndex.getFirst(operation.getLocator());
+        if (food != null) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods with any of the locators of the
+     * operation.
+     *
+     * @param operation get objects by locators operation
+     */
+    public synchronized void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        for (String locator : operation.getLocators()) {
+            for (FoodMetaObjectMap food : locatorIndex.get(locator)) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods in the order of insertion.
+     *
+     * @param operation get all objects operation
+     */
+    public void getAllObjects(GetAllObjectsQueryOperation operation) {
+        AbstractObjectIterator<FoodMetaObjectMap> iter = iterator(EnumSet.allOf(FoodCategory.class));
+        while (iter.hasNext()) {
+            operation.addToAnswer(iter.next());
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods of the partitions of the categories
+     * consumable by the diet of the operation, in the order of insertion.
+     *
+     * @param operation get food by diet operation
+     */
+    public void getFoodByDiet(GetFoodByDietQueryOperation operation) {
+        AbstractObjectIterator<FoodMetaObjectMap> iter = iterator(operation.getDiet().getConsumables());
+        while (!operation.isAnswerComplete() && iter.hasNext()) {
+            operation.addToAnswer(iter.next());
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Creates an iterator over the foods of some categories in the order of
+     * insertion.
+     *
+     * @param categories food categories of the visited partitions
+     * @return iterator over the foods of the partitions
+     */
+    public AbstractObjectIterator<FoodMetaObjectMap> iterator(Collection<FoodCategory> categories) {
+        List<Partition> visited = new ArrayList<>(categories.size());
+        for (FoodCategory category : categories) {
+            if (!partitions[category.ordinal()].foods.isEmpty()) {
+                visited.add(partitions[category.ordinal()]);
+            }
+        }
+        return new PartitionIterator(visited.toArray(new Partition[visited.size()]));
+    }
+
+    @Override
+    public String toString() {
+        int used = 0;
+        for (Partition partition : partitions) {
+            if (!partition.foods.isEmpty()) {
+                used++;
+            }
+        }
+        return getName() + " holding " + size() + " foods in " + used + " partitions";
+    }
+
+    /**
+     * The foods of a single food category.
+     */
+    private static class Partition implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<FoodMetaObjectMap> foods = new ArrayList<>();
+        /**
+         * positions of the insertion of the foods, in ascending order
+         */
+        private int[] positions = new int[16];
+
+        private void add(FoodMetaObjectMap food, int position) {
+            if (foods.size() == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[foods.size()] = position;
+            foods.add(food);
+        }
+    }
+
+    /**
+     * An iterator merging the foods of partitions by the positions of their
+     * insertion.
+     */
+    private static class PartitionIterator extends AbstractObjectIterator<FoodMetaObjectMap> {
+
+        private final Partition[] partitions;
+        /**
+         * index of the next food of every partition
+         */
+        private final int[] next;
+        /**
+         * number of foods of every partition when the iterator was created
+         */
+        private final int[] counts;
+        private FoodMetaObjectMap current;
+
+        private PartitionIterator(Partition[] partitions) {
+            this.partitions = partitions;
+            this.next = new int[partitions.length];
+            this.counts = new int[partitions.length];
+            for (int i = 0; i < partitions.length; i++) {
+                counts[i] = partitions[i].foods.size();
+            }
+        }
+
+        @Override
+        public FoodMetaObjectMap getCurrentObject() throws NoSuchElementException {
+            if (current == null) {
+                throw new NoSuchElementException("There is no current object.");
+            }
+            return current;
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (int i = 0; i < partitions.length; i++) {
+                if (next[i] < counts[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public FoodMetaObjectMap next() throws NoSuchElementException {
+            int earliest = -1;
+            int earliestPosition = Integer.MAX_VALUE;
+            for (int i = 0; i < partitions.length; i++) {
+                if (next[i] < counts[i] && partitions[i].positions[next[i]] < earliestPosition) {
+                    earliest = i;
+                    earliestPosition = partitions[i].positions[next[i]];
+                }
+            }
+            if (earliest < 0) {
+                throw new NoSuchElementException("There are no more foods.");
+            }
+            current = partitions[earliest].foods.get(next[earliest]++);
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("The foods cannot be removed.");
+        }
+    }
+}
@@ -0,0 +1,733 @@
+package food.algorithms;
+
+import food.enums.Diet;
+import food.objects.FoodMetaObjectMap;
+import food.operations.query.ApproxKNNFoodDietQueryOperation;
+import food.operations.query.GetFoodByDietQueryOperation;
+import food.operations.query.KNNFoodDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import messif.algorithms.Algorithm;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectList;
+import messif.operations.Approximate;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.ApproxKNNQueryOperation;
+import messif.operations.query.GetAllObjectsQueryOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+import messif.operations.query.KNNQueryOperation;
+
+/**
+ * An index of the food objects partitioned into clusters by the k-medoids
+ * algorithm over their distances, with an inverted list of the foods of every
+ * cluster. The clusters are a grouping of the foods by their nutrient values,
+ * that does not depend on the food categories.
+ *
+ * The clusters are created when the foods are bulk inserted into an empty
+ * index. The medoids are seeded by the k-means++ sampling, each food is then
+ * assigned to its nearest medoid and each cluster selects its new medoid from
+ * a sample of its foods, the one with the least sum of the distances from the
+ * foods of the cluster, until the medoids do not change. The assignment and
+ * the selection run in parallel. The foods inserted later are assigned to
+ * their nearest medoid.
+ *
+ * Every cluster keeps the distances of its foods from the medoid and its
+ * radius, the largest of them. The k-nearest-neighbors search visits the
+ * clusters from the nearest medoid and skips any cluster, whose medoid is
+ * farther from the query than the radius plus the answer threshold, and any
+ * food, whose distance from the medoid differs from the distance of the query
+ * by more than the threshold. The search is exact, unless the operation is
+ * approximate and limits the number of the visited clusters, nprobe.
+ *
+ * @author tomco
+ */
+public class FoodClusterPrunedAlgorithm extends Algorithm {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * default number of clusters
+     */
+    public static final int DEFAULT_CLUSTER_COUNT = 64;
+    /**
+     * default number of the clusters visited by an approximate search, that
+     * leaves the local search parameter to the structure
+     */
+    public static final int DEFAULT_PROBES = 8;
+    /**
+     * maximal number of the iterations of the k-medoids algorithm
+     */
+    private static final int MAX_ITERATIONS = 20;
+    /**
+     * number of the foods of a cluster tried as its new medoid in an
+     * iteration
+     */
+    private static final int MEDOID_CANDIDATES = 32;
+    /**
+     * maximal number of the foods of a cluster, whose distances from a
+     * candidate medoid are summed up
+     */
+    private static final int MEDOID_SAMPLE_SIZE = 512;
+
+    /**
+     * A medoid with the inverted list of the foods nearer to it than to any
+     * other medoid.
+     */
+    private static final class Cluster implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FoodMetaObjectMap medoid;
+        /**
+         * foods of the cluster sorted by their distances from the medoid
+         */
+        private final List<FoodMetaObjectMap> foods = new ArrayList<>();
+        private float[] distances = new float[2];
+        /**
+         * mask of the food categories of the foods, see FoodCategory.getMask
+         */
+        private int categoryMask;
+
+        private Cluster(FoodMetaObjectMap medoid) {
+            this.medoid = medoid;
+        }
+
+        private float getRadius() {
+            return foods.isEmpty() ? 0 : distances[foods.size() - 1];
+        }
+
+        /**
+         * Adds a food at its place by the distance from the medoid.
+         *
+         * @param food food object
+         * @param distance distance of the food from the medoid
+         */
+        private void add(FoodMetaObjectMap food, float distance) {
+            int size = foods.size();
+            if (size == distances.length) {
+                distances = Arrays.copyOf(distances, 2 * size);
+            }
+            int index = findFirst(distance, size);
+            while (index < size && distances[index] <= distance) {
+                index++;
+            }
+            System.arraycopy(distances, index, distances, index + 1, size - index);
+            distances[index] = distance;
+            foods.add(index, food);
+            categoryMask |= food.getCategory().getMask();
+        }
+
+        /**
+         * Finds the first food not nearer to the medoid than a distance.
+         *
+         * @param distance distance from the medoid
+         * @param size number of the foods
+         * @return index of the food or the number of the foods
+         */
+        private int findFirst(float distance, int size) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (distances[middle] < distance) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * A cluster to visit with the distance of its medoid from the query.
+     */
+    private static final class ClusterCandidate implements Comparable<ClusterCandidate> {
+
+        private final Cluster cluster;
+        private final float distance;
+
+        private ClusterCandidate(Cluster cluster, float distance) {
+            this.cluster = cluster;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(ClusterCandidate o) {
+            return Float.compare(distance, o.distance);
+        }
+    }
+
+    private final int clusterCount;
+    private final int probes;
+    private final List<Cluster> clusters = new ArrayList<>();
+    /**
+     * stored foods in the order of insertion
+     */
+    private final List<FoodMetaObjectMap> objects = new ArrayList<>();
+    /**
+     * stored foods by their locators
+     */
+    private final LocatorIndex<FoodMetaObjectMap> locatorIndex = new LocatorIndex<>();
+
+    /**
+     * Creates an empty index with the default number of clusters.
+     */
+    @Algorithm.AlgorithmConstructor(description = "Cluster-pruned index", arguments = {})
+    public FoodClusterPrunedAlgorithm() {
+        this(DEFAULT_CLUSTER_COUNT);
+    }
+
+    /**
+     * Creates an empty index with the default number of the clusters visited
+     * by an approximate search.
+     *
+     * @param clusterCount maximal number of clusters
+     * @throws IllegalArgumentException if the number of clusters is less than
+     * 1
+     */
+    @Algorithm.AlgorithmConstructor(description = "Cluster-pruned index", arguments = {"number of clusters"})
+    public FoodClusterPrunedAlgorithm(int clusterCount) throws IllegalArgumentException {
+        this(clusterCount, DEFAULT_PROBES);
+    }
+
+    /**
+     * Creates an empty index.
+     *
+     * @param clusterCount maximal number of clusters
+     * @param probes number of the clusters visited by an approximate search,
+     * that leaves the local search parameter to the structure
+     * @throws IllegalArgumentException if the number of clusters or probes is
+     * less than 1
+     */
+    @Algorithm.AlgorithmConstructor(description = "Cluster-pruned index", arguments = {"number of clusters", "number of clusters visited by a search"})
+    public FoodClusterPrunedAlgorithm(int clusterCount, int probes) throws IllegalArgumentException {
+        super("Cluster-pruned index");
+        if (clusterCount < 1 || probes < 1) {
+            throw new IllegalArgumentException("The index needs at least 1 cluster and the searches have to visit at least 1 cluster.");
+        }
+        this.clusterCount = clusterCount;
+        this.probes = probes;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @return number of foods
+     */
+    public int size() {
+        return objects.size();
+    }
+
+    /**
+     * Retrieves the number of the clusters, which is less than the maximal
+     * number of clusters only if there are not enough distinct foods stored.
+     *
+     * @return number of clusters
+     */
+    public int getClusterCount() {
+        return clusters.size();
+    }
+
+    /**
+     * Retrieves the medoid of a cluster.
+     *
+     * @param cluster index of the cluster
+     * @return medoid food
+     */
+    public FoodMetaObjectMap getMedoid(int cluster) {
+        return clusters.get(cluster).medoid;
+    }
+
+    /**
+     * Retrieves the foods of a cluster.
+     *
+     * @param cluster index of the cluster
+     * @return foods sorted by their distances from the medoid
+     */
+    public List<FoodMetaObjectMap> getClusterFoods(int cluster) {
+        return Collections.unmodifiableList(clusters.get(cluster).foods);
+    }
+
+    /**
+     * Retrieves the radius of a cluster.
+     *
+     * @param cluster index of the cluster
+     * @return largest distance of a food of the cluster from its medoid
+     */
+    public float getClusterRadius(int cluster) {
+        return clusters.get(cluster).getRadius();
+    }
+
+    /**
+     * Inserts a food object into the cluster of its nearest medoid, the first
+     * food becomes a medoid.
+     *
+     * @param operation insert operation
+     */
+    public void insert(InsertOperation operation) {
+        insert(toFood(operation.getInsertedObject()));
+        operation.endOperation();
+    }
+
+    /**
+     * Inserts food objects into the index. The foods of an empty index are
+     * clustered by the k-medoids algorithm, the foods are assigned to their
+     * nearest medoids otherwise.
+     *
+     * @param operation bulk insert operation
+     */
+    public void bulkInsert(BulkInsertOperation operation) {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        for (LocalAbstractObject object : operation.getInsertedObjects()) {
+            inserted.add(toFood(object));
+        }
+        synchronized (this) {
+            if (objects.isEmpty() && !inserted.isEmpty()) {
+                createClusters(inserted);
+                for (FoodMetaObjectMap food : inserted) {
+                    objects.add(food);
+                    locatorIndex.add(food.getLocatorURI(), food);
+                }
+            } else {
+                for (FoodMetaObjectMap food : inserted) {
+                    insert(food);
+                }
+            }
+        }
+        operation.endOperation();
+    }
+
+    private static FoodMetaObjectMap toFood(LocalAbstractObject object) throws IllegalArgumentException {
+        if (!(object instanceof FoodMetaObjectMap)) {
+            throw new IllegalArgumentException("Only food objects can be stored, got " + object.getClass().getName() + ".");
+        }
+        return (FoodMetaObjectMap) object;
+    }
+
+    private synchronized void insert(FoodMetaObjectMap food) {
+        if (clusters.isEmpty()) {
+            clusters.add(new Cluster(food));
+        }
+        Cluster nearest = null;
+        float nearestDistance = Float.POSITIVE_INFINITY;
+        for (Cluster cluster : clusters) {
+            float distance = food.getDistance(cluster.medoid, nearestDistance);
+            if (distance < nearestDistance) {
+                nearest = cluster;
+                nearestDistance = distance;
+            }
+        }
+        nearest.add(food, nearestDistance);
+        objects.add(food);
+        locatorIndex.add(food.getLocatorURI(), food);
+    }
+
+    /**
+     * Clusters foods by the k-medoids algorithm.
+     *
+     * @param foods foods to cluster
+     */
+    private void createClusters(List<FoodMetaObjectMap> foods) {
+        Random random = new Random(foods.size());
+        List<FoodMetaObjectMap> medoids = seedMedoids(foods, random);
+
+        int[] assignment = new int[foods.size()];
+        float[] distances = new float[foods.size()];
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            assign(foods, medoids, assignment, distances);
+
+            List<List<FoodMetaObjectMap>> members = new ArrayList<>();
+            for (int i = 0; i < medoids.size(); i++) {
+                members.add(new ArrayList<>());
+            }
+            for (int i = 0; i < foods.size(); i++) {
+                members.get(assignment[i]).add(foods.get(i));
+            }
+
+            long seed = random.nextLong();
+            List<FoodMetaObjectMap> current = medoids;
+            List<FoodMetaObjectMap> selected = IntStream.range(0, medoids.size()).parallel()
+                    .mapToObj(cluster -> selectMedoid(current.get(cluster), members.get(cluster), new Random(seed + cluster)))
+                    .collect(Collectors.toList());
+            if (selected.equals(medoids)) {
+                break;
+            }
+            medoids = selected;
+        }
+        assign(foods, medoids, assignment, distances);
+
+        clusters.clear();
+        for (FoodMetaObjectMap medoid : medoids) {
+            clusters.add(new Cluster(medoid));
+        }
+        for (int i = 0; i < foods.size(); i++) {
+            clusters.get(assignment[i]).add(foods.get(i), distances[i]);
+        }
+        //a medoid, that lost all its foods to an identical one
+        clusters.removeIf(cluster -> cluster.foods.isEmpty());
+    }
+
+    /**
+     * Selects the initial medoids by the k-means++ sampling, each next medoid
+     * is a food chosen with the probability proportional to its distance from
+     * the nearest medoid chosen so far.
+     *
+     * @param foods foods to select from
+     * @param random random generator
+     * @return at most clusterCount distinct foods
+     */
+    private List<FoodMetaObjectMap> seedMedoids(List<FoodMetaObjectMap> foods, Random random) {
+        List<FoodMetaObjectMap> medoids = new ArrayList<>();
+        float[] minDistances = new float[foods.size()];
+        Arrays.fill(minDistances, Float.POSITIVE_INFINITY);
+        FoodMetaObjectMap medoid = foods.get(random.nextInt(foods.size()));
+        while (medoid != null) {
+            medoids.add(medoid);
+            FoodMetaObjectMap added = medoid;
+            IntStream.range(0, foods.size()).parallel().forEach(i -> minDistances[i] = Math.min(minDistances[i], foods.get(i).getDistance(added)));
+
+            double sum = 0;
+            for (float distance : minDistances) {
+                sum += distance;
+            }
+            medoid = null;
+            //the remaining foods are all duplicates of the medoids
+            if (medoids.size() < clusterCount && sum > 0) {
+                double target = random.nextDouble() * sum;
+                for (int i = 0; i < foods.size() && medoid == null; i++) {
+                    target -= minDistances[i];
+                    if (target < 0 && minDistances[i] > 0) {
+                        medoid = foods.get(i);
+                    }
+                }
+                if (medoid == null) {
+                    //the rounding errors of the sum
+                    for (int i = foods.size() - 1; medoid == null; i--) {
+                        if (minDistances[i] > 0) {
+                            medoid = foods.get(i);
+                        }
+                    }
+                }
+            }
+        }
+        return medoids;
+    }
+
+    /**
+     * Assigns the foods to their nearest medoids in parallel, a food
+     * equidistant from several medoids is assigned to the first one.
+     *
+     * @param foods foods to assign
+     * @param medoids medoids of the clusters
+     * @param assignment array for the indexes of the medoids of the foods
+     * @param distances array for the distances of the foods from their
+     * medoids
+     */
+    private static void assign(List<FoodMetaObjectMap> foods, List<FoodMetaObjectMap> medoids, int[] assignment, float[] distances) {
+        IntStream.range(0, foods.size()).parallel().forEach(i -> {
+            FoodMetaObjectMap food = foods.get(i);
+            int nearest = 0;
+            float nearestDistance = Float.POSITIVE_INFINITY;
+            for (int cluster = 0; cluster < medoids.size(); cluster++) {
+                float distance = food.getDistance(medoids.get(cluster), nearestDistance);
+                if (distance < nearestDistance) {
+                    nearest = cluster;
+                    nearestDistance = distance;
+                }
+            }
+            assignment[i] = nearest;
+            distances[i] = nearestDistance;
+        });
+    }
+
+    /**
+     * Selects the new medoid of a cluster from the current one and a sample of
+     * the foods of the cluster, the one with the least sum of the distances
+     * from a sample of the foods.
+     *
+     * @param medoid current medoid
+     * @param members foods of the cluster
+     * @param random random generator
+     * @return new medoid, the current one unless another one is better
+     */
+    private static FoodMetaObjectMap selectMedoid(FoodMetaObjectMap medoid, List<FoodMetaObjectMap> members, Random random) {
+        List<FoodMetaObjectMap> sample = members;
+        if (members.size() > MEDOID_SAMPLE_SIZE) {
+            sample = new ArrayList<>(members);
+            Collections.shuffle(sample, random);
+            sample = sample.subList(0, MEDOID_SAMPLE_SIZE);
+        }
+        List<FoodMetaObjectMap> candidates = members;
+        if (members.size() > MEDOID_CANDIDATES) {
+            candidates = new ArrayList<>(members);
+            Collections.shuffle(candidates, random);
+            candidates = candidates.subList(0, MEDOID_CANDIDATES);
+        }
+
+        FoodMetaObjectMap best = medoid;
+        float bestSum = getDistanceSum(medoid, sample, Float.POSITIVE_INFINITY);
+        for (FoodMetaObjectMap candidate : candidates) {
+            float sum = getDistanceSum(candidate, sample, bestSum);
+            if (sum < bestSum) {
+                best = candidate;
+                bestSum = sum;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sums up the distances of a food from other foods, the summing is
+     * abandoned as soon as the sum exceeds the threshold.
+     */
+    private static float getDistanceSum(FoodMetaObjectMap food, List<FoodMetaObjectMap> others, float threshold) {
+        float sum = 0;
+        for (FoodMetaObjectMap other : others) {
+            sum += food.getDistance(other);
+            if (sum > threshold) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @param operation object count operation
+     */
+    public void objectCount(GetObjectCountOperation operation) {
+        operation.addToAnswer(size());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates an exact k-nearest-neighbors search by the clusters. If the
+     * operation is a KNNFoodDietQueryOperation, only the foods edible by its
+     * diet get into the answer and the clusters without any edible food are
+     * skipped.
+     *
+     * @param operation kNN operation, whose query object is a food object
+     */
+    public void knnSearch(KNNQueryOperation operation) {
+        knnSearch(operation, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search by the clusters.
+     *
+     * @param operation approximate kNN operation, whose query object is a
+     * food object
+     */
+    public void approxKNNSearch(ApproxKNNQueryOperation operation) {
+        approxKNNSearch(operation, operation);
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search by the clusters,
+     * only the foods edible by the diet of the operation get into the answer.
+     *
+     * @param operation approximate kNN operation filtered by a diet
+     */
+    public void approxKNNDietSearch(ApproxKNNFoodDietQueryOperation operation) {
+        approxKNNSearch(operation, operation);
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search, that stops by the
+     * local search parameter of the operation:
+     * <ul>
+     * <li>USE_STRUCTURE_DEFAULT - after the default number of visited
+     * clusters</li>
+     * <li>DATA_PARTITIONS - after the given number of visited clusters</li>
+     * <li>PERCENTAGE - after the percentage of the clusters visited</li>
+     * <li>ABS_OBJ_COUNT, ABS_DC_COUNT - after the cluster, in which the given
+     * number of foods has been compared with the query</li>
+     * <li>any other type - as the exact search</li>
+     * </ul>
+     *
+     * @param operation kNN operation
+     * @param approximate local search parameters of the operation
+     */
+    private void approxKNNSearch(KNNQueryOperation operation, Approximate approximate) {
+        switch (approximate.getLocalSearchType()) {
+            case USE_STRUCTURE_DEFAULT:
+                knnSearch(operation, probes, Integer.MAX_VALUE);
+                break;
+            case DATA_PARTITIONS:
+                knnSearch(operation, approximate.getLocalSearchParam(), Integer.MAX_VALUE);
+                break;
+            case PERCENTAGE:
+                knnSearch(operation, Math.max(1, clusters.size() * approximate.getLocalSearchParam() / 100), Integer.MAX_VALUE);
+                break;
+            case ABS_OBJ_COUNT:
+            case ABS_DC_COUNT:
+                knnSearch(operation, Integer.MAX_VALUE, approximate.getLocalSearchParam());
+                break;
+            default:
+                knnSearch(operation, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by the clusters from the nearest
+     * medoid. The clusters are created by the metric function of the stored
+     * foods, a query object of another class, see SimilarityMode, is compared
+     * with all the stored foods in the order of insertion instead.
+     *
+     * @param operation kNN operation
+     * @param maxClusters maximal number of the visited clusters
+     * @param maxCompared number of the compared foods, after which no other
+     * cluster is visited
+     */
+    private void knnSearch(KNNQueryOperation operation, int maxClusters, int maxCompared) {
+        LocalAbstractObject query = operation.getQueryObject();
+        if (!objects.isEmpty() && !objects.get(0).getClass().equals(query.getClass())) {
+            operation.evaluate(new AbstractObjectList<>(objects).iterator());
+            operation.endOperation();
+            return;
+        }
+        Diet diet = operation instanceof KNNFoodDietQueryOperation ? ((KNNFoodDietQueryOperation) operation).getDiet() : null;
+        int edibleMask = diet == null ? -1 : diet.getConsumablesMask();
+
+        List<ClusterCandidate> candidates = new ArrayList<>(clusters.size());
+        for (Cluster cluster : clusters) {
+            if ((cluster.categoryMask & edibleMask) != 0) {
+                candidates.add(new ClusterCandidate(cluster, query.getDistance(cluster.medoid)));
+            }
+        }
+        Collections.sort(candidates);
+
+        int visited = 0;
+        int compared = 0;
+        for (ClusterCandidate candidate : candidates) {
+            if (visited >= maxClusters || compared >= maxCompared) {
+                break;
+            }
+            //the lower bound of the distances of the foods of the cluster
+            if (candidate.distance - candidate.cluster.getRadius() > operation.getAnswerThreshold()) {
+                continue;
+            }
+            visited++;
+
+            Cluster cluster = candidate.cluster;
+            int size = cluster.foods.size();
+            for (int i = cluster.findFirst(candidate.distance - operation.getAnswerThreshold(), size); i < size; i++) {
+                float threshold = operation.getAnswerThreshold();
+                //the triangle inequality with the medoid
+                if (cluster.distances[i] - candidate.distance > threshold) {
+                    break;
+                }
+                if (candidate.distance - cluster.distances[i] > threshold) {
+                    continue;
+                }
+                FoodMetaObjectMap food = cluster.foods.get(i);
+                if ((food.getCategory().getMask() & edibleMask) == 0) {
+                    continue;
+                }
+                compared++;
+                float distance = query.getDistance(food, threshold);
+                if (distance <= threshold) {
+                    operation.addToAnswer(food, distance, null);
+                }
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by all the similarity modes in a
+     * single pass over the stored foods.
+     *
+     * @param operation multi-mode kNN operation
+     */
+    public void knnMultiModeSearch(KNNFoodMultiModeQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a search by the nutrient vectors weighted for the query by a
+     * scan over the stored foods.
+     *
+     * @param operation weighted kNN operation
+     */
+    public void weightedSearch(KNNFoodWeightedQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the first stored food with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public synchronized void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        FoodMetaObjectMap food = locatorIndex.getFirst(operation.getLocator());
+        if (food != null) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods with any of the locators of the
+     * operation.
+     *
+     * @param operation get objects by locators operation
+     */
+    public synchronized void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        for (String locator : operation.getLocators()) {
+            for (FoodMetaObjectMap food : locatorIndex.get(locator)) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods in the order of insertion.
+     *
+     * @param operation get all objects operation
+     */
+    public void getAllObjects(GetAllObjectsQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods edible by the diet of the operation.
+     *
+     * @param operation get food by diet operation
+     */
+    public void getFoodByDiet(GetFoodByDietQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            if (operation.isAnswerComplete()) {
+                break;
+            }
+            if (operation.getDiet().isEdible(food.getCategory())) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " holding " + size() + " foods in " + getClusterCount() + " clusters";
+    }
+}
@@ -0,0 +1,487 @@
+package food.algorithms;
+
+import food.enums.Diet;
+import food.objects.FoodMetaObjectMap;
+import food.operations.query.ApproxKNNFoodDietQueryOperation;
+import food.operations.query.GetFoodByDietQueryOperation;
+import food.operations.query.KNNFoodDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import messif.algorithms.Algorithm;
+import messif.algorithms.AlgorithmMethodException;
+import messif.objects.LocalAbstractObject;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.ApproxKNNQueryOperation;
+import messif.operations.query.GetAllObjectsQueryOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+import messif.operations.query.KNNQueryOperation;
+
+/**
+ * An algorithm, that stores the nearest foods of every stored food under
+ * every diet next to another algorithm. The searches of the command-line
+ * interface are always issued from a stored food and there are only a few
+ * diets, so a KNNFoodDietQueryOperation from a stored food, whose number of
+ * nearest foods does not exceed the precomputed one, is answered by a lookup
+ * without any distance computation. The diets, that consume the same food
+ * categories, share their nearest foods.
+ *
+ * The nearest foods of the foods bulk inserted into an empty algorithm are
+ * found by comparing all the pairs of the foods in parallel. A food inserted
+ * later is compared with all the stored foods and it replaces the farthest of
+ * the nearest foods of any stored food, that it is nearer to. All the other
+ * operations, and the searches from the query objects, that are not stored
+ * foods, are evaluated by the wrapped algorithm.
+ *
+ * @author tomco
+ */
+public class FoodDietKNNGraphAlgorithm extends Algorithm {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * default number of the nearest foods stored for every food and diet
+     */
+    public static final int DEFAULT_NEIGHBOR_COUNT = 20;
+
+    /**
+     * The nearest foods of a food edible by a diet.
+     */
+    private static final class Neighbors implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * positions of the foods sorted by their distances
+         */
+        private final int[] positions;
+        private final float[] distances;
+        private int count;
+
+        private Neighbors(int capacity) {
+            this.positions = new int[capacity];
+            this.distances = new float[capacity];
+        }
+
+        /**
+         * Adds a food, if it is nearer than the farthest of the nearest foods
+         * or there are less foods than the capacity. A food at the same
+         * distance as an added one is placed after it.
+         *
+         * @param position position of the food
+         * @param distance distance of the food
+         */
+        private void offer(int position, float distance) {
+            if (count == positions.length) {
+                if (distance >= distances[count - 1]) {
+                    return;
+                }
+                count--;
+            }
+            int index = count;
+            while (index > 0 && distances[index - 1] > distance) {
+                positions[index] = positions[index - 1];
+                distances[index] = distances[index - 1];
+                index--;
+            }
+            positions[index] = position;
+            distances[index] = distance;
+            count++;
+        }
+    }
+
+    private final Algorithm algorithm;
+    private final int neighborCount;
+    /**
+     * distinct masks of the food categories consumed by the diets, see
+     * Diet.getConsumablesMask
+     */
+    private final int[] dietMasks;
+    /**
+     * index of the mask of every diet by its ordinal
+     */
+    private final int[] dietMaskIndexes;
+    /**
+     * stored foods in the order of insertion
+     */
+    private final List<FoodMetaObjectMap> objects = new ArrayList<>();
+    /**
+     * positions of the stored foods by their locators
+     */
+    private final LocatorIndex<Integer> positions = new LocatorIndex<>();
+    /**
+     * nearest foods of every stored food by the index of the diet mask
+     */
+    private final List<Neighbors[]> neighbors = new ArrayList<>();
+
+    /**
+     * Creates an algorithm with the default number of the nearest foods
+     * stored for every food and diet.
+     *
+     * @param algorithm empty algorithm, that stores the foods
+     */
+    @Algorithm.AlgorithmConstructor(description = "Diet kNN graph", arguments = {"wrapped algorithm"})
+    public FoodDietKNNGraphAlgorithm(Algorithm algorithm) {
+        this(algorithm, DEFAULT_NEIGHBOR_COUNT);
+    }
+
+    /**
+     * Creates an algorithm.
+     *
+     * @param algorithm empty algorithm, that stores the foods
+     * @param neighborCount number of the nearest foods stored for every food
+     * and diet
+     * @throws IllegalArgumentException if the number of the nearest foods is
+     * less than 1
+     */
+    @Algorithm.AlgorithmConstructor(description = "Diet kNN graph", arguments = {"wrapped algorithm", "number of nearest foods"})
+    public FoodDietKNNGraphAlgorithm(Algorithm algorithm, int neighborCount) throws IllegalArgumentException {
+        super("Diet kNN graph over " + algorithm.getName());
+        if (neighborCount < 1) {
+            throw new IllegalArgumentException("At least 1 nearest food has to be stored.");
+        }
+        this.algorithm = algorithm;
+        this.neighborCount = neighborCount;
+
+        Diet[] diets = Diet.values();
+        int[] masks = new int[diets.length];
+        int maskCount = 0;
+        dietMaskIndexes = new int[diets.length];
+        for (Diet diet : diets) {
+            int mask = diet.getConsumablesMask();
+            int index = 0;
+            while (index < maskCount && masks[index] != mask) {
+                index++;
+            }
+            if (index == maskCount) {
+                masks[maskCount++] = mask;
+            }
+            dietMaskIndexes[diet.ordinal()] = index;
+        }
+        dietMasks = Arrays.copyOf(masks, maskCount);
+    }
+
+    /**
+     * Retrieves the algorithm, that stores the foods.
+     *
+     * @return wrapped algorithm
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Retrieves the number of the nearest foods stored for every food and
+     * diet, the largest k answered by a lookup.
+     *
+     * @return number of the nearest foods
+     */
+    public int getNeighborCount() {
+        return neighborCount;
+    }
+
+    /**
+     * Inserts a food object into the wrapped algorithm and among the nearest
+     * foods of the stored foods.
+     *
+     * @param operation insert operation
+     * @throws AlgorithmMethodException if the wrapped algorithm fails
+     * @throws NoSuchMethodException if the wrapped algorithm does not support
+     * the insertion
+     */
+    public synchronized void insert(InsertOperation operation) throws AlgorithmMethodException, NoSuchMethodException {
+        FoodMetaObjectMap food = toFood(operation.getInsertedObject());
+        algorithm.executeOperation(operation);
+        if (operation.wasSuccessful()) {
+            insert(food);
+        }
+    }
+
+    /**
+     * Inserts food objects into the wrapped algorithm, one by one, if it does
+     * not support the bulk insertion. The nearest foods of the foods inserted
+     * into an empty algorithm are found by comparing all the pairs of the
+     * foods in parallel.
+     *
+     * @param operation bulk insert operation
+     * @throws AlgorithmMethodException if the wrapped algorithm fails
+     * @throws NoSuchMethodException if the wrapped algorithm does not support
+     * the insertion
+     */
+    public synchronized void bulkInsert(BulkInsertOperation operation) throws AlgorithmMethodException, NoSuchMethodException {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        for (LocalAbstractObject object : operation.getInsertedObjects()) {
+            inserted.add(toFood(object));
+        }
+        if (algorithm.getSupportedOperations(BulkInsertOperation.class).isEmpty()) {
+            for (FoodMetaObjectMap food : inserted) {
+                algorithm.executeOperation(new InsertOperation(food));
+            }
+            operation.endOperation();
+        } else {
+            algorithm.executeOperation(operation);
+            if (!operation.wasSuccessful()) {
+                return;
+            }
+        }
+
+        if (!objects.isEmpty()) {
+            for (FoodMetaObjectMap food : inserted) {
+                insert(food);
+            }
+            return;
+        }
+        for (FoodMetaObjectMap food : inserted) {
+            positions.add(food.getLocatorURI(), objects.size());
+            objects.add(food);
+            neighbors.add(null);
+        }
+        IntStream.range(0, objects.size()).parallel().forEach(i -> {
+            FoodMetaObjectMap food = objects.get(i);
+            Neighbors[] nearest = createNeighbors();
+            for (int j = 0; j < objects.size(); j++) {
+                offer(nearest, j, food.getDistance(objects.get(j)));
+            }
+            neighbors.set(i, nearest);
+        });
+    }
+
+    private static FoodMetaObjectMap toFood(LocalAbstractObject object) throws IllegalArgumentException {
+        if (!(object instanceof FoodMetaObjectMap)) {
+            throw new IllegalArgumentException("Only food objects can be stored, got " + object.getClass().getName() + ".");
+        }
+        return (FoodMetaObjectMap) object;
+    }
+
+    /**
+     * Adds a food among the nearest foods of the stored foods and finds its
+     * own nearest foods.
+     *
+     * @param food inserted food
+     */
+    private void insert(FoodMetaObjectMap food) {
+        int position = objects.size();
+        positions.add(food.getLocatorURI(), position);
+        objects.add(food);
+
+        float[] distances = new float[position + 1];
+        IntStream.range(0, position).parallel().forEach(i -> {
+            distances[i] = food.getDistance(objects.get(i));
+            offer(neighbors.get(i), position, distances[i]);
+        });
+
+        Neighbors[] nearest = createNeighbors();
+        for (int i = 0; i <= position; i++) {
+            offer(nearest, i, distances[i]);
+        }
+        neighbors.add(nearest);
+    }
+
+    private Neighbors[] createNeighbors() {
+        Neighbors[] nearest = new Neighbors[dietMasks.length];
+        for (int i = 0; i < nearest.length; i++) {
+            nearest[i] = new Neighbors(neighborCount);
+        }
+        return nearest;
+    }
+
+    /**
+     * Offers a food to the nearest foods of all the diets, that can eat it.
+     */
+    private void offer(Neighbors[] nearest, int position, float distance) {
+        int mask = objects.get(position).getCategory().getMask();
+        for (int i = 0; i < dietMasks.length; i++) {
+            if ((dietMasks[i] & mask) != 0) {
+                nearest[i].offer(position, distance);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @param operation object count operation
+     */
+    public void objectCount(GetObjectCountOperation operation) {
+        operation.addToAnswer(objects.size());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search filtered by a diet. A search from
+     * a stored food with k not exceeding the number of the stored nearest
+     * foods is answered by a lookup, the wrapped algorithm evaluates it
+     * otherwise.
+     *
+     * @param operation kNN operation filtered by a diet
+     * @throws AlgorithmMethodException if the wrapped algorithm fails
+     * @throws NoSuchMethodException if the wrapped algorithm does not support
+     * the operation
+     */
+    public void knnDietSearch(KNNFoodDietQueryOperation operation) throws AlgorithmMethodException, NoSuchMethodException {
+        if (!lookup(operation)) {
+            algorithm.executeOperation(operation);
+        }
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search filtered by a diet.
+     * The lookup answers it exactly, if it can, the wrapped algorithm
+     * evaluates it otherwise.
+     *
+     * @param operation approximate kNN operation filtered by a diet
+     * @throws AlgorithmMethodException if the wrapped algorithm fails
+     * @throws NoSuchMethodException if the wrapped algorithm does not support
+     * the operation
+     */
+    public void approxKNNDietSearch(ApproxKNNFoodDietQueryOperation operation) throws AlgorithmMethodException, NoSuchMethodException {
+        knnDietSearch(operation);
+    }
+
+    /**
+     * Answers a kNN operation filtered by a diet from the stored nearest foods
+     * of its query object.
+     *
+     * @param operation kNN operation filtered by a diet
+     * @return true, if the operation has been answered, false if its query
+     * object is not a stored food or its k is too large
+     */
+    private synchronized boolean lookup(KNNFoodDietQueryOperation operation) {
+        LocalAbstractObject query = operation.getQueryObject();
+        if (operation.getK() > neighborCount || objects.isEmpty() || !objects.get(0).getClass().equals(query.getClass())) {
+            return false;
+        }
+        for (int position : positions.get(query.getLocatorURI())) {
+            if (objects.get(position).dataEquals(query)) {
+                //fewer stored foods than the capacity are all the edible ones
+                Neighbors nearest = neighbors.get(position)[dietMaskIndexes[operation.getDiet().ordinal()]];
+                for (int i = 0; i < nearest.count; i++) {
+                    operation.addToAnswer(objects.get(nearest.positions[i]), nearest.distances[i], null);
+                }
+                operation.endOperation();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by the wrapped algorithm.
+     *
+     * @param operation kNN operation
+     * @throws AlgorithmMethodException if the wrapped algorithm fails
+     * @throws NoSuchMethodException if the wrapped algorithm does not support
+     * the operation
+     */
+    public void knnSearch(KNNQueryOperation operation) throws AlgorithmMethodException, NoSuchMethodException {
+        algorithm.executeOperation(operation);
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search by the wrapped
+     * algorithm.
+     *
+     * @param operation approximate kNN operation
+     * @throws AlgorithmMethodException if the wrapped algorithm fails
+     * @throws NoSuchMethodException if the wrapped algorithm does not support
+     * the operation
+     */
+    public void approxKNNSearch(ApproxKNNQueryOperation operation) throws AlgorithmMethodException, NoSuchMethodException {
+        algorithm.executeOperation(operation);
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by all the similarity modes by
+     * the wrapped algorithm.
+     *
+     * @param operation multi-mode kNN operation
+     * @throws AlgorithmMethodException if the wrapped algorithm fails
+     * @throws NoSuchMethodException if the wrapped algorithm does not support
+     * the operation
+     */
+    public void knnMultiModeSearch(KNNFoodMultiModeQueryOperation operation) throws AlgorithmMethodException, NoSuchMethodException {
+        algorithm.executeOperation(operation);
+    }
+
+    /**
+     * Evaluates a search by the weighted nutrient vectors by the wrapped
+     * algorithm.
+     *
+     * @param operation weighted kNN operation
+     * @throws AlgorithmMethodException if the wrapped algorithm fails
+     * @throws NoSuchMethodException if the wrapped algorithm does not support
+     * the operation
+     */
+    public void weightedSearch(KNNFoodWeightedQueryOperation operation) throws AlgorithmMethodException, NoSuchMethodException {
+        algorithm.executeOperation(operation);
+    }
+
+    /**
+     * Retrieves the first stored food with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public synchronized void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        Integer position = positions.getFirst(operation.getLocator());
+        if (position != null) {
+            operation.addToAnswer(objects.get(position));
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods with any of the locators of the
+     * operation.
+     *
+     * @param operation get objects by locators operation
+     */
+    public synchronized void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        for (String locator : operation.getLocators()) {
+            for (int position : positions.get(locator)) {
+                operation.addToAnswer(objects.get(position));
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods in the order of insertion.
+     *
+     * @param operation get all objects operation
+     */
+    public void getAllObjects(GetAllObjectsQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods edible by the diet of the operation.
+     *
+     * @param operation get food by diet operation
+     */
+    public void getFoodByDiet(GetFoodByDietQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            if (operation.isAnswerComplete()) {
+                break;
+            }
+            if (operation.getDiet().isEdible(food.getCategory())) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " holding " + objects.size() + " foods with " + neighborCount + " nearest foods per diet";
+    }
+}
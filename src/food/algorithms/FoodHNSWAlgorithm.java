@@ -0,0 +1,651 @@
+package food.algorithms;
+
+import food.enums.Diet;
+import food.objects.FoodMetaObjectMap;
+import food.operations.query.ApproxKNNFoodDietQueryOperation;
+import food.operations.query.GetFoodByDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import messif.algorithms.Algorithm;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectList;
+import messif.operations.Approximate;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.ApproxKNNQueryOperation;
+import messif.operations.query.GetAllObjectsQueryOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+import messif.operations.query.KNNQueryOperation;
+
+/**
+ * A hierarchical navigable small world graph (HNSW) of Malkov and Yashunin
+ * over the distances of the food objects, that answers the approximate
+ * k-nearest-neighbors searches. Every stored food is a node of the bottom
+ * layer of the graph, a random, exponentially decreasing part of them is also
+ * a node of the layers above, the top layers thus hold just a few foods far
+ * from each other.
+ *
+ * A food is inserted by a greedy search for its nearest foods down from the
+ * top layer, on its own layers it is linked with up to M of the
+ * efConstruction nearest foods found, chosen by the heuristic, that prefers
+ * the foods in different directions from it. The bottom layer keeps up to 2M
+ * links per food. The foods with the same nutrient values share a single
+ * node, otherwise a large group of them would link just each other and
+ * become unreachable.
+ *
+ * The approximate search descends greedily to the bottom layer, where it
+ * keeps the efSearch nearest foods found, the local search parameter of the
+ * operation, and follows their links until no link leads nearer than the
+ * farthest of them. The foods not edible by the diet of the operation are
+ * followed, but they do not get into the answer. The exact searches are
+ * evaluated by a scan over the stored foods.
+ *
+ * @author tomco
+ */
+public class FoodHNSWAlgorithm extends Algorithm {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * default maximal number of links of a food on the layers above the
+     * bottom one, M
+     */
+    public static final int DEFAULT_MAX_LINKS = 16;
+    /**
+     * default number of the nearest foods searched for by an insertion,
+     * efConstruction
+     */
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    /**
+     * default number of the nearest foods kept by an approximate search,
+     * efSearch
+     */
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    /**
+     * Stored foods at the distance 0 from each other with their links to the
+     * other nodes on each of their layers.
+     */
+    private static final class Node implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * positions of the foods of the node in the stored foods, the first
+         * one is compared with the queries
+         */
+        private int[] foods;
+        private int foodCount;
+        /**
+         * positions of the linked nodes by the layers of the node, the bottom
+         * layer first
+         */
+        private final int[][] links;
+        /**
+         * numbers of the links used by the layers of the node
+         */
+        private final int[] linkCounts;
+
+        private Node(int food, int level, int maxLinks) {
+            this.foods = new int[]{food};
+            this.foodCount = 1;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            links[0] = new int[2 * maxLinks];
+            for (int i = 1; i <= level; i++) {
+                links[i] = new int[maxLinks];
+            }
+        }
+
+        private void addFood(int food) {
+            if (foodCount == foods.length) {
+                foods = Arrays.copyOf(foods, 2 * foodCount);
+            }
+            foods[foodCount++] = food;
+        }
+
+        private int getLevel() {
+            return links.length - 1;
+        }
+    }
+
+    /**
+     * A node found by a search of a layer with its distance from the query.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+
+        private final int position;
+        private final float distance;
+
+        private Candidate(int position, float distance) {
+            this.position = position;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Float.compare(distance, o.distance);
+        }
+    }
+
+    /**
+     * maximal number of links of a food on the layers above the bottom one
+     */
+    private final int maxLinks;
+    private final int efConstruction;
+    private final int efSearch;
+    /**
+     * normalization of the random level of an inserted food, 1/ln(M)
+     */
+    private final double levelMultiplier;
+    private final Random random = new Random(1);
+    /**
+     * stored foods in the order of insertion
+     */
+    private final List<FoodMetaObjectMap> objects = new ArrayList<>();
+    /**
+     * nodes of the graph in the order of insertion
+     */
+    private final List<Node> nodes = new ArrayList<>();
+    /**
+     * stored foods by their locators
+     */
+    private final LocatorIndex<FoodMetaObjectMap> locatorIndex = new LocatorIndex<>();
+    /**
+     * position of the node, where all the searches start, on the top layer
+     */
+    private int entryPoint = -1;
+
+    /**
+     * Creates an empty graph with the default parameters.
+     */
+    @Algorithm.AlgorithmConstructor(description = "Hierarchical navigable small world graph", arguments = {})
+    public FoodHNSWAlgorithm() {
+        this(DEFAULT_MAX_LINKS, DEFAULT_EF_CONSTRUCTION);
+    }
+
+    /**
+     * Creates an empty graph with the default efSearch.
+     *
+     * @param maxLinks maximal number of links of a food, M
+     * @param efConstruction number of the nearest foods searched for by an
+     * insertion
+     * @throws IllegalArgumentException if M is less than 2 or efConstruction
+     * is less than 1
+     */
+    @Algorithm.AlgorithmConstructor(description = "Hierarchical navigable small world graph", arguments = {"maximal number of links of a food", "number of foods searched for by an insertion"})
+    public FoodHNSWAlgorithm(int maxLinks, int efConstruction) throws IllegalArgumentException {
+        this(maxLinks, efConstruction, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * Creates an empty graph.
+     *
+     * @param maxLinks maximal number of links of a food, M
+     * @param efConstruction number of the nearest foods searched for by an
+     * insertion
+     * @param efSearch number of the nearest foods kept by an approximate
+     * search, that leaves the local search parameter to the structure
+     * @throws IllegalArgumentException if M is less than 2 or efConstruction
+     * or efSearch is less than 1
+     */
+    @Algorithm.AlgorithmConstructor(description = "Hierarchical navigable small world graph", arguments = {"maximal number of links of a food", "number of foods searched for by an insertion", "default number of foods kept by a search"})
+    public FoodHNSWAlgorithm(int maxLinks, int efConstruction, int efSearch) throws IllegalArgumentException {
+        super("Hierarchical navigable small world graph");
+        if (maxLinks < 2) {
+            throw new IllegalArgumentException("The foods of the graph need at least 2 links.");
+        }
+        if (efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("The searches of the graph have to keep at least 1 food.");
+        }
+        this.maxLinks = maxLinks;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(maxLinks);
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @return number of foods
+     */
+    public int size() {
+        return objects.size();
+    }
+
+    /**
+     * Retrieves the number of layers of the graph.
+     *
+     * @return number of layers, 0 for an empty graph
+     */
+    public int getLayerCount() {
+        return entryPoint < 0 ? 0 : nodes.get(entryPoint).getLevel() + 1;
+    }
+
+    /**
+     * Inserts a food object into the graph.
+     *
+     * @param operation insert operation
+     */
+    public void insert(InsertOperation operation) {
+        insert(toFood(operation.getInsertedObject()));
+        operation.endOperation();
+    }
+
+    /**
+     * Inserts food objects into the graph one by one.
+     *
+     * @param operation bulk insert operation
+     */
+    public void bulkInsert(BulkInsertOperation operation) {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        for (LocalAbstractObject object : operation.getInsertedObjects()) {
+            inserted.add(toFood(object));
+        }
+        synchronized (this) {
+            for (FoodMetaObjectMap food : inserted) {
+                insert(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    private static FoodMetaObjectMap toFood(LocalAbstractObject object) throws IllegalArgumentException {
+        if (!(object instanceof FoodMetaObjectMap)) {
+            throw new IllegalArgumentException("Only food objects can be stored, got " + object.getClass().getName() + ".");
+        }
+        return (FoodMetaObjectMap) object;
+    }
+
+    /**
+     * Inserts a food into the graph. The nearest nodes are searched for on
+     * the layers up to a random level, a food at the distance 0 from the
+     * nearest node is added to it, a new node linked with the nearest nodes
+     * on each of the layers is created otherwise. The identical foods thus do
+     * not fill up the links of each other.
+     *
+     * @param food food object
+     */
+    private synchronized void insert(FoodMetaObjectMap food) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        int position = objects.size();
+        objects.add(food);
+        locatorIndex.add(food.getLocatorURI(), food);
+        if (entryPoint < 0) {
+            nodes.add(new Node(position, level, maxLinks));
+            entryPoint = 0;
+            return;
+        }
+
+        int topLevel = nodes.get(entryPoint).getLevel();
+        List<Candidate> nearest = Collections.singletonList(new Candidate(entryPoint, food.getDistance(getFood(entryPoint))));
+        for (int layer = topLevel; layer > level; layer--) {
+            nearest = searchLayer(food, nearest, 1, layer, null);
+        }
+        List<List<Candidate>> layerNearest = new ArrayList<>();
+        for (int layer = Math.min(level, topLevel); layer >= 0; layer--) {
+            nearest = searchLayer(food, nearest, efConstruction, layer, null);
+            layerNearest.add(0, nearest);
+        }
+        if (nearest.get(0).distance == 0) {
+            nodes.get(nearest.get(0).position).addFood(position);
+            return;
+        }
+
+        int index = nodes.size();
+        Node node = new Node(position, level, maxLinks);
+        nodes.add(node);
+        for (int layer = 0; layer < layerNearest.size(); layer++) {
+            for (Candidate neighbor : selectNeighbors(layerNearest.get(layer), maxLinks)) {
+                node.links[layer][node.linkCounts[layer]++] = neighbor.position;
+                link(neighbor.position, layer, new Candidate(index, neighbor.distance));
+            }
+        }
+        if (level > topLevel) {
+            entryPoint = index;
+        }
+    }
+
+    /**
+     * Retrieves the food of a node, that is compared with the queries.
+     *
+     * @param index position of the node
+     * @return food object
+     */
+    private FoodMetaObjectMap getFood(int index) {
+        return objects.get(nodes.get(index).foods[0]);
+    }
+
+    /**
+     * Links a node on a layer with another one. If the node has no link left,
+     * its links are chosen again by the heuristic from its linked nodes and
+     * the new one.
+     *
+     * @param index position of the node
+     * @param layer layer of the link
+     * @param neighbor the linked node with its distance from the node
+     */
+    private void link(int index, int layer, Candidate neighbor) {
+        Node node = nodes.get(index);
+        int[] links = node.links[layer];
+        if (node.linkCounts[layer] < links.length) {
+            links[node.linkCounts[layer]++] = neighbor.position;
+            return;
+        }
+
+        FoodMetaObjectMap food = getFood(index);
+        List<Candidate> candidates = new ArrayList<>(links.length + 1);
+        candidates.add(neighbor);
+        for (int link : links) {
+            candidates.add(new Candidate(link, food.getDistance(getFood(link))));
+        }
+        Collections.sort(candidates);
+
+        List<Candidate> selected = selectNeighbors(candidates, links.length);
+        for (int i = 0; i < selected.size(); i++) {
+            links[i] = selected.get(i).position;
+        }
+        node.linkCounts[layer] = selected.size();
+    }
+
+    /**
+     * Selects the nodes to link with by the heuristic of HNSW. A candidate is
+     * selected, if it is nearer to the node than to any candidate selected
+     * before, so that the links lead in different directions.
+     *
+     * @param candidates candidates sorted by their distances from the node
+     * @param count maximal number of selected candidates
+     * @return selected candidates
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> candidates, int count) {
+        List<Candidate> selected = new ArrayList<>(count);
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= count) {
+                break;
+            }
+            FoodMetaObjectMap food = getFood(candidate.position);
+            boolean diverse = true;
+            for (Candidate other : selected) {
+                if (food.getDistance(getFood(other.position), candidate.distance) < candidate.distance) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Searches a layer for the nearest nodes to the query. The search starts
+     * from the entry nodes and follows the links of the nearest node not
+     * followed yet, until it is farther than the farthest of the ef nearest
+     * nodes found.
+     *
+     * @param query query object
+     * @param entries nodes to start from with their distances from the query
+     * @param ef number of the nearest nodes to keep
+     * @param layer searched layer
+     * @param diet diet, a food of a kept node has to be edible by, or null to
+     * keep all the nodes
+     * @return at most ef nearest nodes found, sorted by their distances
+     */
+    private List<Candidate> searchLayer(LocalAbstractObject query, List<Candidate> entries, int ef, int layer, Diet diet) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        //the farthest node kept first
+        PriorityQueue<Candidate> nearest = new PriorityQueue<>(ef + 1, Collections.reverseOrder());
+        for (Candidate entry : entries) {
+            visited.set(entry.position);
+            candidates.add(entry);
+            keep(nearest, entry, ef, diet);
+        }
+
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (nearest.size() >= ef && candidate.distance > nearest.peek().distance) {
+                break;
+            }
+
+            Node node = nodes.get(candidate.position);
+            for (int i = 0; i < node.linkCounts[layer]; i++) {
+                int link = node.links[layer][i];
+                if (visited.get(link)) {
+                    continue;
+                }
+                visited.set(link);
+
+                float threshold = nearest.size() < ef ? LocalAbstractObject.MAX_DISTANCE : nearest.peek().distance;
+                float distance = query.getDistance(getFood(link), threshold);
+                if (distance < threshold) {
+                    Candidate found = new Candidate(link, distance);
+                    candidates.add(found);
+                    keep(nearest, found, ef, diet);
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(nearest);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Keeps a found node among the ef nearest ones, if any of its foods is
+     * edible by the diet.
+     */
+    private void keep(PriorityQueue<Candidate> nearest, Candidate found, int ef, Diet diet) {
+        if (diet != null && !isEdible(nodes.get(found.position), diet)) {
+            return;
+        }
+        nearest.add(found);
+        if (nearest.size() > ef) {
+            nearest.poll();
+        }
+    }
+
+    private boolean isEdible(Node node, Diet diet) {
+        for (int i = 0; i < node.foodCount; i++) {
+            if (diet.isEdible(objects.get(node.foods[i]).getCategory())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @param operation object count operation
+     */
+    public void objectCount(GetObjectCountOperation operation) {
+        operation.addToAnswer(size());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search by the graph.
+     *
+     * @param operation approximate kNN operation, whose query object is a
+     * food object
+     */
+    public void approxKNNSearch(ApproxKNNQueryOperation operation) {
+        approxKNNSearch(operation, operation, null);
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search by the graph, only
+     * the foods edible by the diet of the operation get into the answer.
+     *
+     * @param operation approximate kNN operation filtered by a diet
+     */
+    public void approxKNNDietSearch(ApproxKNNFoodDietQueryOperation operation) {
+        approxKNNSearch(operation, operation, operation.getDiet());
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search. The bottom layer
+     * keeps the efSearch nearest foods given by the local search parameter of
+     * the operation, but at least k:
+     * <ul>
+     * <li>USE_STRUCTURE_DEFAULT - the efSearch of the graph</li>
+     * <li>PERCENTAGE - the percentage of the stored foods</li>
+     * <li>any other type - the parameter itself</li>
+     * </ul>
+     *
+     * The graph is built by the metric function of the stored foods, a query
+     * object of another class, see SimilarityMode, is compared with all the
+     * stored foods instead.
+     *
+     * @param operation kNN operation
+     * @param approximate local search parameters of the operation
+     * @param diet diet of the operation or null
+     */
+    private void approxKNNSearch(KNNQueryOperation operation, Approximate approximate, Diet diet) {
+        LocalAbstractObject query = operation.getQueryObject();
+        if (entryPoint < 0 || !objects.get(0).getClass().equals(query.getClass())) {
+            operation.evaluate(new AbstractObjectList<>(objects).iterator());
+            operation.endOperation();
+            return;
+        }
+
+        int ef;
+        switch (approximate.getLocalSearchType()) {
+            case USE_STRUCTURE_DEFAULT:
+                ef = efSearch;
+                break;
+            case PERCENTAGE:
+                ef = (int) ((long) size() * approximate.getLocalSearchParam() / 100);
+                break;
+            default:
+                ef = approximate.getLocalSearchParam();
+        }
+        ef = Math.max(ef, operation.getK());
+
+        List<Candidate> nearest = Collections.singletonList(new Candidate(entryPoint, query.getDistance(getFood(entryPoint))));
+        for (int layer = nodes.get(entryPoint).getLevel(); layer > 0; layer--) {
+            nearest = searchLayer(query, nearest, 1, layer, null);
+        }
+        for (Candidate candidate : searchLayer(query, nearest, ef, 0, diet)) {
+            if (candidate.distance > operation.getAnswerThreshold()) {
+                break;
+            }
+            Node node = nodes.get(candidate.position);
+            for (int i = 0; i < node.foodCount; i++) {
+                FoodMetaObjectMap food = objects.get(node.foods[i]);
+                if (diet == null || diet.isEdible(food.getCategory())) {
+                    operation.addToAnswer(food, candidate.distance, null);
+                }
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates an exact k-nearest-neighbors search by a scan over the stored
+     * foods. If the operation is a KNNFoodDietQueryOperation, only the foods
+     * edible by its diet get into the answer.
+     *
+     * @param operation kNN operation
+     */
+    public void knnSearch(KNNQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by all the similarity modes in a
+     * single pass over the stored foods.
+     *
+     * @param operation multi-mode kNN operation
+     */
+    public void knnMultiModeSearch(KNNFoodMultiModeQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a search by the nutrient vectors weighted for the query by a
+     * scan over the stored foods.
+     *
+     * @param operation weighted kNN operation
+     */
+    public void weightedSearch(KNNFoodWeightedQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the first stored food with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public synchronized void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        FoodMetaObjectMap food = locatorIndex.getFirst(operation.getLocator());
+        if (food != null) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods with any of the locators of the
+     * operation.
+     *
+     * @param operation get objects by locators operation
+     */
+    public synchronized void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        for (String locator : operation.getLocators()) {
+            for (FoodMetaObjectMap food : locatorIndex.get(locator)) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods in the order of insertion.
+     *
+     * @param operation get all objects operation
+     */
+    public void getAllObjects(GetAllObjectsQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods edible by the diet of the operation.
+     *
+     * @param operation get food by diet operation
+     */
+    public void getFoodByDiet(GetFoodByDietQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            if (operation.isAnswerComplete()) {
+                break;
+            }
+            if (operation.getDiet().isEdible(food.getCategory())) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " holding " + size() + " foods in " + getLayerCount() + " layers (M " + maxLinks + ", efConstruction " + efConstruction + ", efSearch " + efSearch + ")";
+    }
+}
@@ -0,0 +1,476 @@
+package food.algorithms;
+
+import food.objects.FoodMetaObjectMap;
+import food.objects.FoodVectors;
+import food.operations.query.ApproxKNNFoodDietQueryOperation;
+import food.operations.query.GetFoodByDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import messif.algorithms.Algorithm;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectList;
+import messif.operations.Approximate;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.ApproxKNNQueryOperation;
+import messif.operations.query.GetAllObjectsQueryOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+import messif.operations.query.KNNQueryOperation;
+
+/**
+ * A locality-sensitive hashing index of the food objects for the Manhattan
+ * distance of their nutrient vectors, that answers the approximate
+ * k-nearest-neighbors searches. The hash functions project the flattened
+ * nutrient values compared by the metric function of the stored foods onto
+ * random directions of the 1-stable Cauchy distribution, the projections of
+ * two foods then differ by their Manhattan distance times a Cauchy variable,
+ * and cut the line into buckets of the hash width at a random offset. Every
+ * table hashes the foods by a few such functions at once, the near foods thus
+ * share a bucket of a table with a high probability, the far ones with a low
+ * probability.
+ *
+ * The tables are independent, they are built in parallel when the foods are
+ * bulk inserted. Each table holds the positions of all the stored foods once,
+ * so the memory grows linearly with the number of tables.
+ *
+ * The approximate search collects the foods from the buckets of the query in
+ * the tables as the candidates and evaluates them by the query operation, so
+ * they are ranked by the regular distance of the foods, the category penalty
+ * and the diet included. The exact searches are evaluated by a scan over the
+ * stored foods.
+ *
+ * @author tomco
+ */
+public class FoodL1LSHAlgorithm extends Algorithm {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * default number of hash tables
+     */
+    public static final int DEFAULT_TABLE_COUNT = 16;
+    /**
+     * default number of hash functions of a table
+     */
+    public static final int DEFAULT_FUNCTION_COUNT = 4;
+    /**
+     * default width of the buckets of a hash function, it suits the distances
+     * of all the nutrients, the width should be about the distance of the
+     * foods, that are to share a bucket
+     */
+    public static final float DEFAULT_HASH_WIDTH = 200;
+
+    /**
+     * Positions of the stored foods, that share a bucket of a table.
+     */
+    private static final class Bucket implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private int[] positions = new int[2];
+        private int count;
+
+        private void add(int position) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, 2 * count);
+            }
+            positions[count++] = position;
+        }
+    }
+
+    private final int tableCount;
+    private final int functionCount;
+    private final float hashWidth;
+    /**
+     * random directions of the hash functions by the tables, each over the
+     * hashed flattened values
+     */
+    private float[][][] projections;
+    /**
+     * random offsets of the hash functions by the tables
+     */
+    private float[][] offsets;
+    /**
+     * flattened positions of the nutrient values compared by the metric
+     * function of the stored foods, see FoodVectors
+     */
+    private int[] dimensions;
+    /**
+     * buckets of the stored foods by the keys of their hashes, by the tables
+     */
+    private final List<Map<Long, Bucket>> tables = new ArrayList<>();
+    /**
+     * stored foods in the order of insertion
+     */
+    private final List<FoodMetaObjectMap> objects = new ArrayList<>();
+    /**
+     * stored foods by their locators
+     */
+    private final LocatorIndex<FoodMetaObjectMap> locatorIndex = new LocatorIndex<>();
+
+    /**
+     * Creates an empty index with the default parameters.
+     */
+    @Algorithm.AlgorithmConstructor(description = "L1 locality-sensitive hashing", arguments = {})
+    public FoodL1LSHAlgorithm() {
+        this(DEFAULT_TABLE_COUNT, DEFAULT_HASH_WIDTH);
+    }
+
+    /**
+     * Creates an empty index with the default number of hash functions of a
+     * table.
+     *
+     * @param tableCount number of hash tables
+     * @param hashWidth width of the buckets of a hash function
+     * @throws IllegalArgumentException if the number of tables is less than 1
+     * or the width is not positive
+     */
+    @Algorithm.AlgorithmConstructor(description = "L1 locality-sensitive hashing", arguments = {"number of hash tables", "hash width"})
+    public FoodL1LSHAlgorithm(int tableCount, float hashWidth) throws IllegalArgumentException {
+        this(tableCount, DEFAULT_FUNCTION_COUNT, hashWidth);
+    }
+
+    /**
+     * Creates an empty index.
+     *
+     * @param tableCount number of hash tables
+     * @param functionCount number of hash functions of a table
+     * @param hashWidth width of the buckets of a hash function
+     * @throws IllegalArgumentException if the number of tables or functions
+     * is less than 1 or the width is not positive
+     */
+    @Algorithm.AlgorithmConstructor(description = "L1 locality-sensitive hashing", arguments = {"number of hash tables", "number of hash functions of a table", "hash width"})
+    public FoodL1LSHAlgorithm(int tableCount, int functionCount, float hashWidth) throws IllegalArgumentException {
+        super("L1 locality-sensitive hashing");
+        if (tableCount < 1 || functionCount < 1) {
+            throw new IllegalArgumentException("The index needs at least 1 table of at least 1 hash function.");
+        }
+        if (!(hashWidth > 0) || Float.isInfinite(hashWidth)) {
+            throw new IllegalArgumentException("The hash width has to be a positive number.");
+        }
+        this.tableCount = tableCount;
+        this.functionCount = functionCount;
+        this.hashWidth = hashWidth;
+        for (int i = 0; i < tableCount; i++) {
+            tables.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @return number of foods
+     */
+    public int size() {
+        return objects.size();
+    }
+
+    /**
+     * Inserts a food object into all the tables.
+     *
+     * @param operation insert operation
+     */
+    public void insert(InsertOperation operation) {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        inserted.add(toFood(operation.getInsertedObject()));
+        insert(inserted);
+        operation.endOperation();
+    }
+
+    /**
+     * Inserts food objects into the tables, the tables are filled in
+     * parallel.
+     *
+     * @param operation bulk insert operation
+     */
+    public void bulkInsert(BulkInsertOperation operation) {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        for (LocalAbstractObject object : operation.getInsertedObjects()) {
+            inserted.add(toFood(object));
+        }
+        insert(inserted);
+        operation.endOperation();
+    }
+
+    private static FoodMetaObjectMap toFood(LocalAbstractObject object) throws IllegalArgumentException {
+        if (!(object instanceof FoodMetaObjectMap)) {
+            throw new IllegalArgumentException("Only food objects can be stored, got " + object.getClass().getName() + ".");
+        }
+        if (((FoodMetaObjectMap) object).getFlatVector() == null) {
+            throw new IllegalArgumentException("The food " + object.getLocatorURI() + " does not have the nutrient vectors of FoodVectors.");
+        }
+        return (FoodMetaObjectMap) object;
+    }
+
+    private synchronized void insert(List<FoodMetaObjectMap> inserted) {
+        if (inserted.isEmpty()) {
+            return;
+        }
+        if (dimensions == null) {
+            createHashFunctions(inserted.get(0));
+        }
+        int first = objects.size();
+        for (FoodMetaObjectMap food : inserted) {
+            objects.add(food);
+            locatorIndex.add(food.getLocatorURI(), food);
+        }
+        IntStream.range(0, tableCount).parallel().forEach(table -> {
+            Map<Long, Bucket> buckets = tables.get(table);
+            for (int i = 0; i < inserted.size(); i++) {
+                buckets.computeIfAbsent(getKey(table, inserted.get(i).getFlatVector()), key -> new Bucket()).add(first + i);
+            }
+        });
+    }
+
+    /**
+     * Draws the hash functions over the nutrient values compared by the
+     * metric function of a food.
+     *
+     * @param food the first stored food
+     */
+    private void createHashFunctions(FoodMetaObjectMap food) {
+        List<Integer> hashed = new ArrayList<>();
+        for (int vector : FoodVectors.getVectorIndexes(food.getDistanceVectorNames())) {
+            if (vector >= 0) {
+                for (int i = 0; i < FoodVectors.getVectorLength(vector); i++) {
+                    hashed.add(FoodVectors.getVectorOffset(vector) + i);
+                }
+            }
+        }
+        dimensions = hashed.stream().mapToInt(Integer::intValue).toArray();
+
+        Random random = new Random(tableCount * 31 + functionCount);
+        projections = new float[tableCount][functionCount][dimensions.length];
+        offsets = new float[tableCount][functionCount];
+        for (int table = 0; table < tableCount; table++) {
+            for (int function = 0; function < functionCount; function++) {
+                for (int i = 0; i < dimensions.length; i++) {
+                    //the standard Cauchy distribution by the inverse of its CDF
+                    projections[table][function][i] = (float) Math.tan(Math.PI * (random.nextDouble() - 0.5));
+                }
+                offsets[table][function] = random.nextFloat() * hashWidth;
+            }
+        }
+    }
+
+    /**
+     * Computes the key of the bucket of a food in a table, that combines the
+     * hashes of all the functions of the table.
+     *
+     * @param table index of the table
+     * @param values flattened nutrient values of the food
+     * @return key of the bucket
+     */
+    private long getKey(int table, float[] values) {
+        long key = 0;
+        for (int function = 0; function < functionCount; function++) {
+            float[] projection = projections[table][function];
+            double product = offsets[table][function];
+            for (int i = 0; i < dimensions.length; i++) {
+                product += projection[i] * values[dimensions[i]];
+            }
+            key = key * 0x9E3779B97F4A7C15L + (long) Math.floor(product / hashWidth);
+        }
+        return key;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @param operation object count operation
+     */
+    public void objectCount(GetObjectCountOperation operation) {
+        operation.addToAnswer(size());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search by the hash tables.
+     *
+     * @param operation approximate kNN operation, whose query object is a
+     * food object
+     */
+    public void approxKNNSearch(ApproxKNNQueryOperation operation) {
+        approxKNNSearch(operation, operation);
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search by the hash tables,
+     * only the foods edible by the diet of the operation get into the answer.
+     *
+     * @param operation approximate kNN operation filtered by a diet
+     */
+    public void approxKNNDietSearch(ApproxKNNFoodDietQueryOperation operation) {
+        approxKNNSearch(operation, operation);
+    }
+
+    /**
+     * Evaluates an approximate k-nearest-neighbors search. The candidates are
+     * collected from the buckets of the query by the tables in turn, by the
+     * local search parameter of the operation:
+     * <ul>
+     * <li>DATA_PARTITIONS - from the given number of tables</li>
+     * <li>ABS_OBJ_COUNT - until there are at least the given number of
+     * candidates</li>
+     * <li>PERCENTAGE - until there are at least the percentage of the stored
+     * foods</li>
+     * <li>any other type - from all the tables</li>
+     * </ul>
+     *
+     * The tables are built by the nutrient vectors of the metric function of
+     * the stored foods, a query object of another class, see SimilarityMode,
+     * is compared with all the stored foods instead.
+     *
+     * @param operation kNN operation
+     * @param approximate local search parameters of the operation
+     */
+    private void approxKNNSearch(KNNQueryOperation operation, Approximate approximate) {
+        LocalAbstractObject query = operation.getQueryObject();
+        if (dimensions == null || !objects.get(0).getClass().equals(query.getClass()) || ((FoodMetaObjectMap) query).getFlatVector() == null) {
+            operation.evaluate(new AbstractObjectList<>(objects).iterator());
+            operation.endOperation();
+            return;
+        }
+
+        int probedTables = tableCount;
+        int minCandidates = Integer.MAX_VALUE;
+        switch (approximate.getLocalSearchType()) {
+            case DATA_PARTITIONS:
+                probedTables = Math.min(tableCount, approximate.getLocalSearchParam());
+                break;
+            case ABS_OBJ_COUNT:
+                minCandidates = approximate.getLocalSearchParam();
+                break;
+            case PERCENTAGE:
+                minCandidates = (int) ((long) size() * approximate.getLocalSearchParam() / 100);
+                break;
+            default:
+        }
+
+        float[] values = ((FoodMetaObjectMap) query).getFlatVector();
+        BitSet seen = new BitSet(objects.size());
+        AbstractObjectList<FoodMetaObjectMap> candidates = new AbstractObjectList<>();
+        for (int table = 0; table < probedTables && candidates.size() < minCandidates; table++) {
+            Bucket bucket = tables.get(table).get(getKey(table, values));
+            if (bucket == null) {
+                continue;
+            }
+            for (int i = 0; i < bucket.count; i++) {
+                if (!seen.get(bucket.positions[i])) {
+                    seen.set(bucket.positions[i]);
+                    candidates.add(objects.get(bucket.positions[i]));
+                }
+            }
+        }
+
+        operation.evaluate(candidates.iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates an exact k-nearest-neighbors search by a scan over the stored
+     * foods. If the operation is a KNNFoodDietQueryOperation, only the foods
+     * edible by its diet get into the answer.
+     *
+     * @param operation kNN operation
+     */
+    public void knnSearch(KNNQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by all the similarity modes in a
+     * single pass over the stored foods.
+     *
+     * @param operation multi-mode kNN operation
+     */
+    public void knnMultiModeSearch(KNNFoodMultiModeQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a search by the nutrient vectors weighted for the query by a
+     * scan over the stored foods.
+     *
+     * @param operation weighted kNN operation
+     */
+    public void weightedSearch(KNNFoodWeightedQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the first stored food with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public synchronized void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        FoodMetaObjectMap food = locatorIndex.getFirst(operation.getLocator());
+        if (food != null) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods with any of the locators of the
+     * operation.
+     *
+     * @param operation get objects by locators operation
+     */
+    public synchronized void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        for (String locator : operation.getLocators()) {
+            for (FoodMetaObjectMap food : locatorIndex.get(locator)) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods in the order of insertion.
+     *
+     * @param operation get all objects operation
+     */
+    public void getAllObjects(GetAllObjectsQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods edible by the diet of the operation.
+     *
+     * @param operation get food by diet operation
+     */
+    public void getFoodByDiet(GetFoodByDietQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            if (operation.isAnswerComplete()) {
+                break;
+            }
+            if (operation.getDiet().isEdible(food.getCategory())) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " holding " + size() + " foods in " + tableCount + " tables of " + functionCount + " hash functions (hash width " + hashWidth + ")";
+    }
+}
@@ -0,0 +1,796 @@
+package food.algorithms;
+
+import food.enums.Diet;
+import food.objects.FoodMetaObjectMap;
+import food.operations.query.GetFoodByDietQueryOperation;
+import food.operations.query.KNNFoodDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+import messif.algorithms.Algorithm;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectList;
+import messif.objects.util.RankedAbstractObject;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.GetAllObjectsQueryOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+import messif.operations.query.KNNQueryOperation;
+
+/**
+ * A dynamic metric tree (M-tree) over the distances of the food objects. Every
+ * node of the tree holds at most nodeCapacity entries. The entries of a leaf
+ * are the stored foods, the entries of an inner node are routing objects,
+ * each with a covering radius, that bounds the distances of all the foods of
+ * its subtree from it. Every entry also keeps its distance from the routing
+ * object of its node, so that many entries can be pruned by the triangle
+ * inequality without computing any distance.
+ *
+ * Every entry keeps a mask of the food categories of its subtree as well, so
+ * that the subtrees without any food edible by the diet of a
+ * KNNFoodDietQueryOperation are not visited at all.
+ *
+ * The tree is bulk loaded by a recursive clustering around sampled routing
+ * objects, when it is empty, and grows by inserts with node splits
+ * afterwards. The k-nearest-neighbors search visits the nodes best first by
+ * the lower bounds of the distances of their foods.
+ *
+ * @author tomco
+ */
+public class FoodMTreeAlgorithm extends Algorithm {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * default maximal number of entries of a node
+     */
+    public static final int DEFAULT_NODE_CAPACITY = 32;
+
+    /**
+     * maximal number of entries of a node
+     */
+    private final int nodeCapacity;
+    private Node root;
+    /**
+     * stored foods in the order of insertion, used by the listing operations
+     */
+    private final List<FoodMetaObjectMap> objects = new ArrayList<>();
+    /**
+     * stored foods by their locators
+     */
+    private final LocatorIndex<FoodMetaObjectMap> locatorIndex = new LocatorIndex<>();
+
+    /**
+     * Creates an empty M-tree with the default node capacity.
+     */
+    @Algorithm.AlgorithmConstructor(description = "M-tree", arguments = {})
+    public FoodMTreeAlgorithm() {
+        this(DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * Creates an empty M-tree.
+     *
+     * @param nodeCapacity maximal number of entries of a node
+     * @throws IllegalArgumentException if the capacity is less than 2
+     */
+    @Algorithm.AlgorithmConstructor(description = "M-tree", arguments = {"maximal number of entries of a node"})
+    public FoodMTreeAlgorithm(int nodeCapacity) throws IllegalArgumentException {
+        super("M-tree");
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("A node has to hold at least 2 entries.");
+        }
+        this.nodeCapacity = nodeCapacity;
+        this.root = new Node(true);
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @return number of foods
+     */
+    public int size() {
+        return objects.size();
+    }
+
+    /**
+     * Retrieves the maximal number of entries of a node.
+     *
+     * @return node capacity
+     */
+    public int getNodeCapacity() {
+        return nodeCapacity;
+    }
+
+    /**
+     * Inserts a food object into the tree.
+     *
+     * @param operation insert operation
+     */
+    public void insert(InsertOperation operation) {
+        insert(toFood(operation.getInsertedObject()));
+        operation.endOperation();
+    }
+
+    /**
+     * Inserts food objects into the tree. An empty tree is bulk loaded, the
+     * objects are inserted one by one otherwise.
+     *
+     * @param operation bulk insert operation
+     */
+    public void bulkInsert(BulkInsertOperation operation) {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        for (LocalAbstractObject object : operation.getInsertedObjects()) {
+            inserted.add(toFood(object));
+        }
+        synchronized (this) {
+            if (objects.isEmpty()) {
+                List<Entry> entries = new ArrayList<>(inserted.size());
+                for (FoodMetaObjectMap food : inserted) {
+                    entries.add(new Entry(food, 0, 0, null));
+                }
+                root = bulkLoad(entries, new Random(inserted.size()));
+                objects.addAll(inserted);
+                for (FoodMetaObjectMap food : inserted) {
+                    locatorIndex.add(food.getLocatorURI(), food);
+                }
+            } else {
+                for (FoodMetaObjectMap food : inserted) {
+                    insert(food);
+                }
+            }
+        }
+        operation.endOperation();
+    }
+
+    private static FoodMetaObjectMap toFood(LocalAbstractObject object) throws IllegalArgumentException {
+        if (!(object instanceof FoodMetaObjectMap)) {
+            throw new IllegalArgumentException("Only food objects can be stored, got " + object.getClass().getName() + ".");
+        }
+        return (FoodMetaObjectMap) object;
+    }
+
+    /**
+     * Inserts a food into the tree, splitting the overflowing nodes.
+     *
+     * @param food food object
+     */
+    private synchronized void insert(FoodMetaObjectMap food) {
+        Entry[] split = insert(root, null, food, 0);
+        if (split != null) {
+            //the root was split, the tree grows by a new root
+            Node newRoot = new Node(false);
+            newRoot.add(split[0]);
+            newRoot.add(split[1]);
+            root = newRoot;
+        }
+        objects.add(food);
+        locatorIndex.add(food.getLocatorURI(), food);
+    }
+
+    /**
+     * Inserts a food into a subtree.
+     *
+     * @param node root of the subtree
+     * @param routing routing object of the node, null for the root
+     * @param food food object
+     * @param distance distance of the food from the routing object of the node
+     * @return the two entries replacing the node, if it has been split, null
+     * otherwise
+     */
+    private Entry[] insert(Node node, FoodMetaObjectMap routing, FoodMetaObjectMap food, float distance) {
+        if (node.leaf) {
+            node.add(new Entry(food, distance, 0, null));
+        } else {
+            //the nearest routing object that does not need to enlarge its radius,
+            //or the one with the smallest enlargement
+            Entry chosen = null;
+            float chosenDistance = 0;
+            float chosenEnlargement = Float.POSITIVE_INFINITY;
+            for (Entry entry : node.entries) {
+                float entryDistance = food.getDistance(entry.object);
+                float enlargement = Math.max(entryDistance - entry.radius, 0);
+                if (enlargement < chosenEnlargement || (enlargement == chosenEnlargement && entryDistance < chosenDistance)) {
+                    chosen = entry;
+                    chosenDistance = entryDistance;
+                    chosenEnlargement = enlargement;
+                }
+            }
+            chosen.radius = Math.max(chosen.radius, chosenDistance);
+            chosen.categoryMask |= food.getCategory().getMask();
+            node.categoryMask |= food.getCategory().getMask();
+
+            Entry[] split = insert(chosen.child, chosen.object, food, chosenDistance);
+            if (split != null) {
+                node.entries.remove(chosen);
+                for (Entry entry : split) {
+                    if (routing != null) {
+                        entry.parentDistance = entry.object.getDistance(routing);
+                    }
+                    node.add(entry);
+                }
+            }
+        }
+
+        if (node.entries.size() > nodeCapacity) {
+            return split(node);
+        }
+        return null;
+    }
+
+    /**
+     * Splits an overflowing node into two nodes. The pair of promoted routing
+     * objects minimizing the larger of the two covering radii is chosen, the
+     * entries are distributed to the nearer one of them.
+     *
+     * @param node overflowing node
+     * @return the entries of the two new nodes, whose distances from the
+     * routing object of the parent node still have to be set
+     */
+    private Entry[] split(Node node) {
+        List<Entry> entries = node.entries;
+        int count = entries.size();
+        float[][] distances = new float[count][count];
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                distances[i][j] = distances[j][i] = entries.get(i).object.getDistance(entries.get(j).object);
+            }
+        }
+
+        int bestFirst = 0;
+        int bestSecond = 1;
+        float bestRadius = Float.POSITIVE_INFINITY;
+        boolean[] assignment = new boolean[count];
+        for (int first = 0; first < count; first++) {
+            for (int second = first + 1; second < count; second++) {
+                partition(distances, first, second, assignment);
+                float firstRadius = 0;
+                float secondRadius = 0;
+                for (int i = 0; i < count; i++) {
+                    if (assignment[i]) {
+                        secondRadius = Math.max(secondRadius, distances[second][i] + entries.get(i).radius);
+                    } else {
+                        firstRadius = Math.max(firstRadius, distances[first][i] + entries.get(i).radius);
+                    }
+                }
+                float radius = Math.max(firstRadius, secondRadius);
+                if (radius < bestRadius) {
+                    bestRadius = radius;
+                    bestFirst = first;
+                    bestSecond = second;
+                }
+            }
+        }
+
+        partition(distances, bestFirst, bestSecond, assignment);
+        Node firstNode = new Node(node.leaf);
+        Node secondNode = new Node(node.leaf);
+        float firstRadius = 0;
+        float secondRadius = 0;
+        for (int i = 0; i < count; i++) {
+            Entry entry = entries.get(i);
+            if (assignment[i]) {
+                entry.parentDistance = distances[bestSecond][i];
+                secondRadius = Math.max(secondRadius, entry.parentDistance + entry.radius);
+                secondNode.add(entry);
+            } else {
+                entry.parentDistance = distances[bestFirst][i];
+                firstRadius = Math.max(firstRadius, entry.parentDistance + entry.radius);
+                firstNode.add(entry);
+            }
+        }
+        return new Entry[]{
+            new Entry(entries.get(bestFirst).object, 0, firstRadius, firstNode),
+            new Entry(entries.get(bestSecond).object, 0, secondRadius, secondNode)
+        };
+    }
+
+    /**
+     * Distributes entries to the nearer of two promoted entries, the ties are
+     * given to the smaller group.
+     *
+     * @param distances distances of the entries
+     * @param first index of the first promoted entry
+     * @param second index of the second promoted entry
+     * @param assignment true for the entries of the second group
+     */
+    private static void partition(float[][] distances, int first, int second, boolean[] assignment) {
+        int firstCount = 0;
+        int secondCount = 0;
+        for (int i = 0; i < assignment.length; i++) {
+            if (i == first) {
+                assignment[i] = false;
+            } else if (i == second) {
+                assignment[i] = true;
+            } else if (distances[first][i] == distances[second][i]) {
+                assignment[i] = secondCount < firstCount;
+            } else {
+                assignment[i] = distances[second][i] < distances[first][i];
+            }
+            if (assignment[i]) {
+                secondCount++;
+            } else {
+                firstCount++;
+            }
+        }
+    }
+
+    /**
+     * Builds a subtree over leaf entries, whose parent distances hold their
+     * distances from the routing object of the subtree. The entries are
+     * clustered around sampled routing objects, the clusters are built
+     * recursively.
+     *
+     * @param entries leaf entries
+     * @param random random generator of the samples
+     * @return root of the subtree
+     */
+    private Node bulkLoad(List<Entry> entries, Random random) {
+        Node node;
+        if (entries.size() <= nodeCapacity) {
+            node = new Node(true);
+            for (Entry entry : entries) {
+                node.add(entry);
+            }
+            return node;
+        }
+
+        //as many clusters as needed to fill the nodes below
+        int clusterCount = Math.min(nodeCapacity, (entries.size() + nodeCapacity - 1) / nodeCapacity);
+        List<Entry> samples = new ArrayList<>(entries);
+        Collections.shuffle(samples, random);
+        samples = samples.subList(0, clusterCount);
+
+        List<List<Entry>> clusters = new ArrayList<>();
+        float[] radii = new float[clusterCount];
+        for (int i = 0; i < clusterCount; i++) {
+            clusters.add(new ArrayList<>());
+        }
+        for (Entry entry : entries) {
+            int nearest = 0;
+            float nearestDistance = Float.POSITIVE_INFINITY;
+            for (int i = 0; i < clusterCount; i++) {
+                float distance = entry.object.getDistance(samples.get(i).object);
+                if (distance < nearestDistance) {
+                    nearest = i;
+                    nearestDistance = distance;
+                }
+            }
+            clusters.get(nearest).add(new Entry(entry.object, nearestDistance, 0, null));
+            radii[nearest] = Math.max(radii[nearest], nearestDistance);
+        }
+
+        int largest = 0;
+        for (List<Entry> cluster : clusters) {
+            largest = Math.max(largest, cluster.size());
+        }
+        if (largest == entries.size()) {
+            //the foods cannot be told apart, they are split into chunks
+            clusters.clear();
+            samples = new ArrayList<>();
+            int chunkSize = (entries.size() + clusterCount - 1) / clusterCount;
+            for (int start = 0; start < entries.size(); start += chunkSize) {
+                List<Entry> chunk = new ArrayList<>();
+                Entry routing = entries.get(start);
+                for (Entry entry : entries.subList(start, Math.min(start + chunkSize, entries.size()))) {
+                    chunk.add(new Entry(entry.object, entry.object.getDistance(routing.object), 0, null));
+                }
+                samples.add(routing);
+                clusters.add(chunk);
+            }
+            radii = new float[clusters.size()];
+            for (int i = 0; i < clusters.size(); i++) {
+                for (Entry entry : clusters.get(i)) {
+                    radii[i] = Math.max(radii[i], entry.parentDistance);
+                }
+            }
+        }
+
+        node = new Node(false);
+        for (int i = 0; i < clusters.size(); i++) {
+            if (!clusters.get(i).isEmpty()) {
+                Entry sample = samples.get(i);
+                node.add(new Entry(sample.object, sample.parentDistance, radii[i], bulkLoad(clusters.get(i), random)));
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @param operation object count operation
+     */
+    public void objectCount(GetObjectCountOperation operation) {
+        operation.addToAnswer(size());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search. If the operation is a
+     * KNNFoodDietQueryOperation, only the foods edible by its diet get into
+     * the answer and the subtrees without any edible food are skipped.
+     *
+     * The nodes are visited in the order of the lower bounds of the distances
+     * of their foods, until the lower bound exceeds the answer threshold. The
+     * entries of a node are pruned by their distances from the routing object
+     * of the node first, the distance from the query is computed only for the
+     * entries that remain.
+     *
+     * The tree is built by the metric function of the stored foods, a query
+     * object of another class, see SimilarityMode, is compared with all the
+     * stored foods in the order of insertion instead.
+     *
+     * @param operation kNN operation, whose query object is a food object
+     */
+    public void knnSearch(KNNQueryOperation operation) {
+        LocalAbstractObject query = operation.getQueryObject();
+        if (!objects.isEmpty() && !objects.get(0).getClass().equals(query.getClass())) {
+            operation.evaluate(new AbstractObjectList<>(objects).iterator());
+            operation.endOperation();
+            return;
+        }
+        Diet diet = operation instanceof KNNFoodDietQueryOperation ? ((KNNFoodDietQueryOperation) operation).getDiet() : null;
+        int edibleMask = diet == null ? -1 : diet.getConsumablesMask();
+
+        PriorityQueue<NodeCandidate> queue = new PriorityQueue<>();
+        if ((root.categoryMask & edibleMask) != 0) {
+            queue.add(new NodeCandidate(root, 0, Float.NaN));
+        }
+        while (!queue.isEmpty()) {
+            NodeCandidate candidate = queue.poll();
+            if (candidate.lowerBound > operation.getAnswerThreshold()) {
+                break;
+            }
+
+            for (Entry entry : candidate.node.entries) {
+                if ((entry.categoryMask & edibleMask) == 0) {
+                    continue;
+                }
+                float threshold = operation.getAnswerThreshold();
+                //the triangle inequality with the routing object of the node
+                if (!Float.isNaN(candidate.distance) && Math.abs(candidate.distance - entry.parentDistance) - entry.radius > threshold) {
+                    continue;
+                }
+
+                if (entry.child == null) {
+                    float distance = query.getDistance(entry.object, threshold);
+                    if (distance <= threshold) {
+                        operation.addToAnswer(entry.object, distance, null);
+                    }
+                } else {
+                    //a distance abandoned past the threshold prunes the subtree as well
+                    float distance = query.getDistance(entry.object, threshold + entry.radius);
+                    float lowerBound = Math.max(distance - entry.radius, 0);
+                    if (lowerBound <= threshold) {
+                        queue.add(new NodeCandidate(entry.child, lowerBound, distance));
+                    }
+                }
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by all the similarity modes in a
+     * single pass over the stored foods. The tree is not used, its routing
+     * distances belong to the metric function of a single mode.
+     *
+     * @param operation multi-mode kNN operation
+     */
+    public void knnMultiModeSearch(KNNFoodMultiModeQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a search by the nutrient vectors weighted for the query by a
+     * scan over the stored foods. The tree is not used, its routing distances
+     * belong to the metric function of a single mode.
+     *
+     * @param operation weighted kNN operation
+     */
+    public void weightedSearch(KNNFoodWeightedQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods in the order of their distances from a query
+     * object, the sorted access of the threshold algorithm. The nodes are
+     * visited best first as by the kNN search, but without any threshold, a
+     * food is returned as soon as no food of the nodes not visited yet can be
+     * nearer. The distances are computed only as far as the iteration goes,
+     * the entries are queued by their lower bounds given by the triangle
+     * inequality first and their distances are computed when the bounds get
+     * to the head of the queue.
+     *
+     * @param query query object of the class of the stored foods
+     * @param diet diet whose edible foods are retrieved or null for all the
+     * foods
+     * @return iterator over the foods ranked by their distances
+     */
+    public Iterator<RankedAbstractObject> getNearestObjects(LocalAbstractObject query, Diet diet) {
+        return new NearestObjects(query, diet == null ? -1 : diet.getConsumablesMask());
+    }
+
+    /**
+     * Retrieves the first stored food with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public synchronized void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        FoodMetaObjectMap food = locatorIndex.getFirst(operation.getLocator());
+        if (food != null) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods with any of the locators of the
+     * operation.
+     *
+     * @param operation get objects by locators operation
+     */
+    public synchronized void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        for (String locator : operation.getLocators()) {
+            for (FoodMetaObjectMap food : locatorIndex.get(locator)) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods in the order of insertion.
+     *
+     * @param operation get all objects operation
+     */
+    public void getAllObjects(GetAllObjectsQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods edible by the diet of the operation.
+     *
+     * @param operation get food by diet operation
+     */
+    public void getFoodByDiet(GetFoodByDietQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            if (operation.isAnswerComplete()) {
+                break;
+            }
+            if (operation.getDiet().isEdible(food.getCategory())) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the height of the tree.
+     *
+     * @return number of the levels of nodes
+     */
+    public int getHeight() {
+        return getHeight(root);
+    }
+
+    private static int getHeight(Node node) {
+        int height = 0;
+        for (Entry entry : node.entries) {
+            if (entry.child != null) {
+                height = Math.max(height, getHeight(entry.child));
+            }
+        }
+        return height + 1;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " holding " + size() + " foods in a tree of height " + getHeight() + " with nodes of " + nodeCapacity + " entries";
+    }
+
+    /**
+     * A node of the tree.
+     */
+    private static class Node implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * true if the entries are the stored foods, false if they are routing
+         * objects of child nodes
+         */
+        private final boolean leaf;
+        private final List<Entry> entries = new ArrayList<>();
+        /**
+         * mask of the food categories of all the foods of the subtree
+         */
+        private int categoryMask;
+
+        private Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        private void add(Entry entry) {
+            entries.add(entry);
+            categoryMask |= entry.categoryMask;
+        }
+    }
+
+    /**
+     * An entry of a node, either a stored food or a routing object.
+     */
+    private static class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FoodMetaObjectMap object;
+        /**
+         * distance from the routing object of the node holding this entry
+         */
+        private float parentDistance;
+        /**
+         * covering radius of the subtree, 0 for a stored food
+         */
+        private float radius;
+        /**
+         * node with the foods covered by this routing object or null for a
+         * stored food
+         */
+        private final Node child;
+        /**
+         * mask of the food categories of all the foods of the subtree
+         */
+        private int categoryMask;
+
+        private Entry(FoodMetaObjectMap object, float parentDistance, float radius, Node child) {
+            this.object = object;
+            this.parentDistance = parentDistance;
+            this.radius = radius;
+            this.child = child;
+            this.categoryMask = child == null ? object.getCategory().getMask() : child.categoryMask;
+        }
+    }
+
+    /**
+     * The iteration over the stored foods ranked by their distances from a
+     * query object.
+     */
+    private class NearestObjects implements Iterator<RankedAbstractObject> {
+
+        private final LocalAbstractObject query;
+        private final int edibleMask;
+        private final PriorityQueue<RankingCandidate> queue = new PriorityQueue<>();
+        /**
+         * the food to return next or null if it has not been found yet
+         */
+        private RankedAbstractObject next;
+
+        private NearestObjects(LocalAbstractObject query, int edibleMask) {
+            this.query = query;
+            this.edibleMask = edibleMask;
+            if ((root.categoryMask & edibleMask) != 0) {
+                queue.add(new RankingCandidate(null, root, 0, Float.NaN));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !queue.isEmpty()) {
+                RankingCandidate candidate = queue.poll();
+                if (candidate.node != null) {
+                    for (Entry entry : candidate.node.entries) {
+                        if ((entry.categoryMask & edibleMask) == 0) {
+                            continue;
+                        }
+                        //the triangle inequality with the routing object of the node
+                        float lowerBound = Float.isNaN(candidate.distance) ? 0 : Math.max(Math.abs(candidate.distance - entry.parentDistance) - entry.radius, 0);
+                        queue.add(new RankingCandidate(entry, null, lowerBound, Float.NaN));
+                    }
+                } else if (Float.isNaN(candidate.distance)) {
+                    float distance = query.getDistance(candidate.entry.object);
+                    if (candidate.entry.child == null) {
+                        queue.add(new RankingCandidate(candidate.entry, null, distance, distance));
+                    } else {
+                        queue.add(new RankingCandidate(candidate.entry, candidate.entry.child, Math.max(distance - candidate.entry.radius, 0), distance));
+                    }
+                } else {
+                    next = new RankedAbstractObject(candidate.entry.object, candidate.distance);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public RankedAbstractObject next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RankedAbstractObject ranked = next;
+            next = null;
+            return ranked;
+        }
+    }
+
+    /**
+     * An entry or a node waiting in the queue of the ranking of the foods,
+     * either an entry with a lower bound of its distance, a node to visit or
+     * a food with its distance.
+     */
+    private static class RankingCandidate implements Comparable<RankingCandidate> {
+
+        /**
+         * the entry or null for the root
+         */
+        private final Entry entry;
+        /**
+         * node to visit or null if the entry is to be compared or returned
+         */
+        private final Node node;
+        /**
+         * lower bound of the distances of the foods of the entry from the
+         * query, the distance itself for a food compared already
+         */
+        private final float lowerBound;
+        /**
+         * distance of the object of the entry from the query, NaN if it has
+         * not been computed yet
+         */
+        private final float distance;
+
+        private RankingCandidate(Entry entry, Node node, float lowerBound, float distance) {
+            this.entry = entry;
+            this.node = node;
+            this.lowerBound = lowerBound;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(RankingCandidate other) {
+            return Float.compare(lowerBound, other.lowerBound);
+        }
+    }
+
+    /**
+     * A node waiting to be visited by the kNN search.
+     */
+    private static class NodeCandidate implements Comparable<NodeCandidate> {
+
+        private final Node node;
+        /**
+         * lower bound of the distances of the foods of the node from the query
+         */
+        private final float lowerBound;
+        /**
+         * distance of the routing object of the node from the query, NaN for
+         * the root
+         */
+        private final float distance;
+
+        private NodeCandidate(Node node, float lowerBound, float distance) {
+            this.node = node;
+            this.lowerBound = lowerBound;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(NodeCandidate other) {
+            return Float.compare(lowerBound, other.lowerBound);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package food.algorithms;
+
+import food.objects.FoodMetaObjectMap;
+import food.operations.query.GetFoodByDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import messif.algorithms.Algorithm;
+import messif.objects.LocalAbstractObject;
+import messif.objects.PrecomputedDistancesFixedArrayFilter;
+import messif.objects.util.AbstractObjectList;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.GetAllObjectsQueryOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+import messif.operations.query.KNNQueryOperation;
+import messif.pivotselection.IncrementalPivotChooser;
+
+/**
+ * A pivot table (LAESA) over the distances of the food objects. A few of the
+ * stored foods are selected as pivots and every stored food keeps its
+ * distances from all the pivots in a PrecomputedDistancesFixedArrayFilter.
+ *
+ * The k-nearest-neighbors search computes the distances of the query from the
+ * pivots once and attaches them to the query object, the foods are then
+ * evaluated by the query operation in the order of insertion. A food, whose
+ * distance from any pivot differs from the distance of the query by more than
+ * the answer threshold, cannot be nearer than the threshold by the triangle
+ * inequality, so the operation skips it without computing its distance.
+ *
+ * @author tomco
+ */
+public class FoodPivotTableAlgorithm extends Algorithm {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * default number of pivots
+     */
+    public static final int DEFAULT_PIVOT_COUNT = 16;
+
+    /**
+     * Strategy of the selection of the pivots from the stored foods.
+     */
+    public enum PivotSelection {
+
+        /**
+         * randomly chosen foods
+         */
+        RANDOM,
+        /**
+         * each next pivot is the food farthest from the pivots chosen so far
+         */
+        FARTHEST_FIRST,
+        /**
+         * each next pivot is the sampled food that maximizes the mean of the
+         * lower bounds of sampled pairs of foods, by IncrementalPivotChooser
+         */
+        INCREMENTAL
+    }
+
+    /**
+     * maximal number of pivots
+     */
+    private final int pivotCount;
+    private final PivotSelection pivotSelection;
+    private final List<FoodMetaObjectMap> pivots = new ArrayList<>();
+    /**
+     * stored foods in the order of insertion, each with the filter of its
+     * distances from the pivots
+     */
+    private final AbstractObjectList<FoodMetaObjectMap> objects = new AbstractObjectList<>();
+    /**
+     * stored foods by their locators
+     */
+    private final LocatorIndex<FoodMetaObjectMap> locatorIndex = new LocatorIndex<>();
+
+    /**
+     * Creates an empty pivot table with the default number of pivots selected
+     * farthest first.
+     */
+    @Algorithm.AlgorithmConstructor(description = "Pivot table", arguments = {})
+    public FoodPivotTableAlgorithm() {
+        this(DEFAULT_PIVOT_COUNT);
+    }
+
+    /**
+     * Creates an empty pivot table with the pivots selected farthest first.
+     *
+     * @param pivotCount maximal number of pivots
+     * @throws IllegalArgumentException if the number of pivots is less than 1
+     */
+    @Algorithm.AlgorithmConstructor(description = "Pivot table", arguments = {"number of pivots"})
+    public FoodPivotTableAlgorithm(int pivotCount) throws IllegalArgumentException {
+        this(pivotCount, PivotSelection.FARTHEST_FIRST);
+    }
+
+    /**
+     * Creates an empty pivot table.
+     *
+     * @param pivotCount maximal number of pivots
+     * @param pivotSelection strategy of the selection of the pivots
+     * @throws IllegalArgumentException if the number of pivots is less than 1
+     */
+    @Algorithm.AlgorithmConstructor(description = "Pivot table", arguments = {"number of pivots", "pivot selection strategy"})
+    public FoodPivotTableAlgorithm(int pivotCount, PivotSelection pivotSelection) throws IllegalArgumentException {
+        super("Pivot table");
+        if (pivotCount < 1) {
+            throw new IllegalArgumentException("The table needs at least 1 pivot.");
+        }
+        this.pivotCount = pivotCount;
+        this.pivotSelection = pivotSelection;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @return number of foods
+     */
+    public int size() {
+        return objects.size();
+    }
+
+    /**
+     * Retrieves the number of selected pivots, which is less than the maximal
+     * number of pivots only if there are not enough distinct foods stored.
+     *
+     * @return number of pivots
+     */
+    public int getPivotCount() {
+        return pivots.size();
+    }
+
+    /**
+     * Retrieves the strategy of the selection of the pivots.
+     *
+     * @return pivot selection strategy
+     */
+    public PivotSelection getPivotSelection() {
+        return pivotSelection;
+    }
+
+    /**
+     * Inserts a food object into the table. While the table has fewer pivots
+     * than it can hold, the inserted food becomes a pivot.
+     *
+     * @param operation insert operation
+     */
+    public void insert(InsertOperation operation) {
+        insert(toFood(operation.getInsertedObject()));
+        operation.endOperation();
+    }
+
+    /**
+     * Inserts food objects into the table. The pivots of an empty table are
+     * selected from the inserted foods, the foods are inserted one by one
+     * otherwise.
+     *
+     * @param operation bulk insert operation
+     */
+    public void bulkInsert(BulkInsertOperation operation) {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        for (LocalAbstractObject object : operation.getInsertedObjects()) {
+            inserted.add(toFood(object));
+        }
+        synchronized (this) {
+            if (objects.isEmpty()) {
+                pivots.addAll(selectPivots(inserted));
+                for (FoodMetaObjectMap food : inserted) {
+                    addPivotDistances(food);
+                    objects.add(food);
+                    locatorIndex.add(food.getLocatorURI(), food);
+                }
+            } else {
+                for (FoodMetaObjectMap food : inserted) {
+                    insert(food);
+                }
+            }
+        }
+        operation.endOperation();
+    }
+
+    private static FoodMetaObjectMap toFood(LocalAbstractObject object) throws IllegalArgumentException {
+        if (!(object instanceof FoodMetaObjectMap)) {
+            throw new IllegalArgumentException("Only food objects can be stored, got " + object.getClass().getName() + ".");
+        }
+        return (FoodMetaObjectMap) object;
+    }
+
+    /**
+     * Inserts a food into the table, the food becomes a pivot if there is
+     * room for it.
+     *
+     * @param food food object
+     */
+    private synchronized void insert(FoodMetaObjectMap food) {
+        if (pivots.size() < pivotCount) {
+            pivots.add(food);
+            for (FoodMetaObjectMap stored : objects) {
+                stored.getDistanceFilter(PrecomputedDistancesFixedArrayFilter.class).addPrecompDist(stored.getDistance(food));
+            }
+        }
+        addPivotDistances(food);
+        objects.add(food);
+        locatorIndex.add(food.getLocatorURI(), food);
+    }
+
+    /**
+     * Attaches the distances of a food from the pivots to it, replacing the
+     * distances from any other pivots it might have had.
+     *
+     * @param food food object
+     */
+    private void addPivotDistances(FoodMetaObjectMap food) {
+        PrecomputedDistancesFixedArrayFilter filter = new PrecomputedDistancesFixedArrayFilter(pivotCount);
+        filter.addPrecompDist(getPivotDistances(food));
+        food.chainFilter(filter, true);
+    }
+
+    /**
+     * Computes the distances of an object from all the pivots.
+     *
+     * @param object food object
+     * @return distances in the order of the pivots
+     */
+    private float[] getPivotDistances(LocalAbstractObject object) {
+        float[] distances = new float[pivots.size()];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = object.getDistance(pivots.get(i));
+        }
+        return distances;
+    }
+
+    /**
+     * Selects the pivots from foods by the pivot selection strategy of the
+     * table.
+     *
+     * @param foods foods to select from
+     * @return at most pivotCount foods
+     */
+    private List<FoodMetaObjectMap> selectPivots(List<FoodMetaObjectMap> foods) {
+        int count = Math.min(pivotCount, foods.size());
+        Random random = new Random(foods.size());
+        List<FoodMetaObjectMap> selected = new ArrayList<>(count);
+
+        switch (pivotSelection) {
+            case RANDOM:
+                List<FoodMetaObjectMap> shuffled = new ArrayList<>(foods);
+                Collections.shuffle(shuffled, random);
+                selected.addAll(shuffled.subList(0, count));
+                break;
+            case FARTHEST_FIRST:
+                float[] minDistances = new float[foods.size()];
+                Arrays.fill(minDistances, Float.POSITIVE_INFINITY);
+                FoodMetaObjectMap pivot = foods.get(random.nextInt(foods.size()));
+                while (pivot != null) {
+                    selected.add(pivot);
+                    FoodMetaObjectMap farthest = null;
+                    float farthestDistance = 0;
+                    for (int i = 0; i < foods.size(); i++) {
+                        minDistances[i] = Math.min(minDistances[i], foods.get(i).getDistance(pivot));
+                        if (minDistances[i] > farthestDistance) {
+                            farthest = foods.get(i);
+                            farthestDistance = minDistances[i];
+                        }
+                    }
+                    //the remaining foods are all duplicates of the pivots
+                    pivot = selected.size() < count ? farthest : null;
+                }
+                break;
+            case INCREMENTAL:
+                IncrementalPivotChooser chooser = new IncrementalPivotChooser();
+                chooser.registerSampleProvider(new AbstractObjectList<>(foods));
+                chooser.selectPivot(count);
+                for (int i = 0; i < chooser.size(); i++) {
+                    selected.add((FoodMetaObjectMap) chooser.getPivot(i));
+                }
+                break;
+            default:
+                throw new IllegalStateException("Pivot selection not yet supported.");
+        }
+        return selected;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @param operation object count operation
+     */
+    public void objectCount(GetObjectCountOperation operation) {
+        operation.addToAnswer(size());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search. The distances of the query
+     * object from the pivots are computed and attached to it, so that the
+     * operation skips the foods excluded by the precomputed distances. The
+     * foods are evaluated in the order of insertion, the answer is the same as
+     * the answer of a sequential scan.
+     *
+     * The distances from the pivots are those of the metric function of the
+     * stored foods, a query object of another class, see SimilarityMode, is
+     * compared with all the stored foods without the precomputed distances.
+     *
+     * @param operation kNN operation, whose query object is a food object
+     */
+    public void knnSearch(KNNQueryOperation operation) {
+        if (!objects.isEmpty() && !objects.get(0).getClass().equals(operation.getQueryObject().getClass())) {
+            PrecomputedDistancesFixedArrayFilter stale = operation.getQueryObject().getDistanceFilter(PrecomputedDistancesFixedArrayFilter.class);
+            if (stale != null) {
+                operation.getQueryObject().unchainFilter(stale);
+            }
+            operation.evaluate(objects.iterator());
+            operation.endOperation();
+            return;
+        }
+        PrecomputedDistancesFixedArrayFilter filter = new PrecomputedDistancesFixedArrayFilter(pivots.size());
+        filter.setFixedPivotsPrecompDist(getPivotDistances(operation.getQueryObject()));
+        operation.getQueryObject().chainFilter(filter, true);
+
+        operation.evaluate(objects.iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by all the similarity modes in a
+     * single pass over the stored foods. The precomputed distances are not
+     * used, they belong to the metric function of a single mode.
+     *
+     * @param operation multi-mode kNN operation
+     */
+    public void knnMultiModeSearch(KNNFoodMultiModeQueryOperation operation) {
+        operation.evaluate(objects.iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a search by the nutrient vectors weighted for the query by a
+     * scan over the stored foods. The precomputed distances are not used,
+     * they belong to the metric function of a single mode.
+     *
+     * @param operation weighted kNN operation
+     */
+    public void weightedSearch(KNNFoodWeightedQueryOperation operation) {
+        operation.evaluate(objects.iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the first stored food with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public synchronized void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        FoodMetaObjectMap food = locatorIndex.getFirst(operation.getLocator());
+        if (food != null) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods with any of the locators of the
+     * operation.
+     *
+     * @param operation get objects by locators operation
+     */
+    public synchronized void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        for (String locator : operation.getLocators()) {
+            for (FoodMetaObjectMap food : locatorIndex.get(locator)) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods in the order of insertion.
+     *
+     * @param operation get all objects operation
+     */
+    public void getAllObjects(GetAllObjectsQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods edible by the diet of the operation.
+     *
+     * @param operation get food by diet operation
+     */
+    public void getFoodByDiet(GetFoodByDietQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            if (operation.isAnswerComplete()) {
+                break;
+            }
+            if (operation.getDiet().isEdible(food.getCategory())) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " holding " + size() + " foods with " + getPivotCount() + " pivots (" + pivotSelection.name().toLowerCase().replace('_', ' ') + " selection)";
+    }
+}
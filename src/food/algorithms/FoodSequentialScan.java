@@ -0,0 +1,140 @@
+package food.algorithms;
+
+import java.util.Iterator;
+import messif.algorithms.Algorithm;
+import messif.algorithms.impl.SequentialScan;
+import messif.buckets.BucketErrorCode;
+import messif.buckets.BucketStorageException;
+import messif.buckets.CapacityFullException;
+import messif.objects.LocalAbstractObject;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.DeleteByLocatorOperation;
+import messif.operations.data.DeleteOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+
+/**
+ * A sequential scan, that keeps a hash index of the stored objects by their
+ * locators, so that the objects are retrieved by their locators without a
+ * scan. The index is maintained by the data manipulation operations and it is
+ * serialized with the algorithm.
+ *
+ * @author tomco
+ */
+public class FoodSequentialScan extends SequentialScan {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LocatorIndex<LocalAbstractObject> locatorIndex = new LocatorIndex<>();
+
+    /**
+     * Creates a sequential scan with an empty memory bucket.
+     *
+     * @throws CapacityFullException
+     * @throws InstantiationException
+     */
+    @Algorithm.AlgorithmConstructor(description = "Sequential scan with a locator index", arguments = {})
+    public FoodSequentialScan() throws CapacityFullException, InstantiationException {
+        super();
+    }
+
+    /**
+     * Inserts an object into the bucket and the locator index.
+     *
+     * @param operation insert operation
+     * @throws CapacityFullException
+     */
+    @Override
+    public void insert(InsertOperation operation) throws CapacityFullException {
+        super.insert(operation);
+        if (operation.getErrorCode().equals(BucketErrorCode.OBJECT_INSERTED) || operation.getErrorCode().equals(BucketErrorCode.SOFTCAPACITY_EXCEEDED)) {
+            synchronized (locatorIndex) {
+                locatorIndex.add(operation.getInsertedObject().getLocatorURI(), operation.getInsertedObject());
+            }
+        }
+    }
+
+    /**
+     * Inserts objects into the bucket and the locator index.
+     *
+     * @param operation bulk insert operation
+     * @throws BucketStorageException
+     */
+    @Override
+    public void bulkInsert(BulkInsertOperation operation) throws BucketStorageException {
+        super.bulkInsert(operation);
+        rebuildLocatorIndex();
+    }
+
+    /**
+     * Deletes objects from the bucket and the locator index.
+     *
+     * @param operation delete operation
+     * @throws BucketStorageException
+     */
+    @Override
+    public void delete(DeleteOperation operation) throws BucketStorageException {
+        super.delete(operation);
+        rebuildLocatorIndex();
+    }
+
+    /**
+     * Deletes objects from the bucket and the locator index.
+     *
+     * @param operation delete by locator operation
+     * @throws BucketStorageException
+     */
+    @Override
+    public void delete(DeleteByLocatorOperation operation) throws BucketStorageException {
+        super.delete(operation);
+        rebuildLocatorIndex();
+    }
+
+    /**
+     * Indexes all the objects of the bucket again.
+     */
+    private void rebuildLocatorIndex() {
+        synchronized (locatorIndex) {
+            locatorIndex.clear();
+            Iterator<LocalAbstractObject> iter = bucket.getAllObjects();
+            while (iter.hasNext()) {
+                LocalAbstractObject object = iter.next();
+                locatorIndex.add(object.getLocatorURI(), object);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the first stored object with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        LocalAbstractObject object;
+        synchronized (locatorIndex) {
+            object = locatorIndex.getFirst(operation.getLocator());
+        }
+        if (object != null) {
+            operation.addToAnswer(object);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored objects with any of the locators of the
+     * operation.
+     *
+     * @param operation get objects by locators operation
+     */
+    public void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        synchronized (locatorIndex) {
+            for (String locator : operation.getLocators()) {
+                for (LocalAbstractObject object : locatorIndex.get(locator)) {
+                    operation.addToAnswer(object);
+                }
+            }
+        }
+        operation.endOperation();
+    }
+}
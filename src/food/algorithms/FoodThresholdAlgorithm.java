@@ -0,0 +1,309 @@
+package food.algorithms;
+
+import food.enums.Diet;
+import food.enums.SimilarityMode;
+import food.objects.FoodMetaObjectMap;
+import food.objects.FoodVectors;
+import food.objects.NutrientWeightsFunction;
+import food.operations.query.GetFoodByDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import messif.algorithms.Algorithm;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectList;
+import messif.objects.util.RankedAbstractObject;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.GetAllObjectsQueryOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+import messif.operations.query.KNNQueryOperation;
+
+/**
+ * An algorithm answering the searches by the nutrient vectors weighted for
+ * the query, see KNNFoodWeightedQueryOperation, by the threshold algorithm of
+ * Fagin et al. The foods are indexed by an M-tree for every nutrient vector,
+ * whose incremental search gives the sorted access to the foods ranked by the
+ * distance of the vector. The trees hold food objects of the class of the
+ * vector, that share the nutrient vectors with the stored foods.
+ *
+ * The sorted accesses take turns over the vectors of non-zero weights, every
+ * food seen for the first time is compared by all its vectors at once, the
+ * random access. The weighted distances of the last foods seen by the sorted
+ * accesses bound the weighted distance of any food not seen yet, the search
+ * stops as soon as the answer is full and its k-th distance does not exceed
+ * the bound. The distances of the answer are the same as of a full scan.
+ *
+ * The other searches are evaluated by a scan over the stored foods.
+ *
+ * @author tomco
+ */
+public class FoodThresholdAlgorithm extends Algorithm {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * modes comparing the foods by a single nutrient vector, in the order of
+     * FoodVectors.VECTOR_NAMES
+     */
+    private static final SimilarityMode[] VECTOR_MODES = {SimilarityMode.MACRONUTRIENTS, SimilarityMode.MINERALS, SimilarityMode.VITAMINS};
+
+    /**
+     * stored foods in the order of insertion
+     */
+    private final List<FoodMetaObjectMap> objects = new ArrayList<>();
+    /**
+     * stored foods by their locators
+     */
+    private final LocatorIndex<FoodMetaObjectMap> locatorIndex = new LocatorIndex<>();
+    /**
+     * sorted access indexes of the nutrient vectors, in the order of
+     * FoodVectors.VECTOR_NAMES
+     */
+    private final FoodMTreeAlgorithm[] vectorTrees = new FoodMTreeAlgorithm[VECTOR_MODES.length];
+    /**
+     * positions of the stored foods by the food objects of the trees
+     */
+    private final Map<LocalAbstractObject, Integer> positions = new IdentityHashMap<>();
+
+    /**
+     * Creates an empty threshold algorithm with trees of the default node
+     * capacity.
+     */
+    @Algorithm.AlgorithmConstructor(description = "Threshold algorithm over nutrient vector M-trees", arguments = {})
+    public FoodThresholdAlgorithm() {
+        this(FoodMTreeAlgorithm.DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * Creates an empty threshold algorithm.
+     *
+     * @param nodeCapacity maximal number of entries of a node of the trees
+     * @throws IllegalArgumentException if the capacity is less than 2
+     */
+    @Algorithm.AlgorithmConstructor(description = "Threshold algorithm over nutrient vector M-trees", arguments = {"maximal number of entries of a node"})
+    public FoodThresholdAlgorithm(int nodeCapacity) throws IllegalArgumentException {
+        super("Threshold algorithm over nutrient vector M-trees");
+        for (int i = 0; i < vectorTrees.length; i++) {
+            vectorTrees[i] = new FoodMTreeAlgorithm(nodeCapacity);
+        }
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @return number of foods
+     */
+    public int size() {
+        return objects.size();
+    }
+
+    /**
+     * Inserts a food object into the trees.
+     *
+     * @param operation insert operation
+     */
+    public void insert(InsertOperation operation) {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        inserted.add(toFood(operation.getInsertedObject()));
+        insert(inserted);
+        operation.endOperation();
+    }
+
+    /**
+     * Inserts food objects into the trees, an empty tree is bulk loaded.
+     *
+     * @param operation bulk insert operation
+     */
+    public void bulkInsert(BulkInsertOperation operation) {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        for (LocalAbstractObject object : operation.getInsertedObjects()) {
+            inserted.add(toFood(object));
+        }
+        insert(inserted);
+        operation.endOperation();
+    }
+
+    private static FoodMetaObjectMap toFood(LocalAbstractObject object) throws IllegalArgumentException {
+        if (!(object instanceof FoodMetaObjectMap)) {
+            throw new IllegalArgumentException("Only food objects can be stored, got " + object.getClass().getName() + ".");
+        }
+        return (FoodMetaObjectMap) object;
+    }
+
+    private synchronized void insert(List<FoodMetaObjectMap> inserted) {
+        for (int i = 0; i < vectorTrees.length; i++) {
+            List<FoodMetaObjectMap> vectorObjects = new ArrayList<>(inserted.size());
+            for (int j = 0; j < inserted.size(); j++) {
+                FoodMetaObjectMap vectorObject = VECTOR_MODES[i].createQuery(inserted.get(j));
+                vectorObjects.add(vectorObject);
+                positions.put(vectorObject, objects.size() + j);
+            }
+            vectorTrees[i].bulkInsert(new BulkInsertOperation(vectorObjects));
+        }
+        for (FoodMetaObjectMap food : inserted) {
+            objects.add(food);
+            locatorIndex.add(food.getLocatorURI(), food);
+        }
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @param operation object count operation
+     */
+    public void objectCount(GetObjectCountOperation operation) {
+        operation.addToAnswer(size());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a search by the weighted nutrient vectors by the threshold
+     * algorithm. The foods not edible by the diet of the operation are not
+     * retrieved by the sorted accesses at all.
+     *
+     * @param operation weighted kNN operation
+     */
+    public void weightedSearch(KNNFoodWeightedQueryOperation operation) {
+        FoodMetaObjectMap query = operation.getQueryFood();
+        NutrientWeightsFunction weights = operation.getWeights();
+
+        //the vectors weighted by 0 do not change the weighted distance
+        List<Integer> vectors = new ArrayList<>();
+        List<Iterator<RankedAbstractObject>> sortedAccesses = new ArrayList<>();
+        for (int i = 0; i < vectorTrees.length; i++) {
+            if (weights.getWeight(i) != 0) {
+                vectors.add(i);
+                sortedAccesses.add(vectorTrees[i].getNearestObjects(VECTOR_MODES[i].createQuery(query), operation.getDiet()));
+            }
+        }
+        if (vectors.isEmpty()) {
+            operation.evaluate(new AbstractObjectList<>(objects).iterator());
+            operation.endOperation();
+            return;
+        }
+
+        float[] lastDistances = new float[vectorTrees.length];
+        float[] vectorDistances = new float[FoodVectors.VECTOR_NAMES.size()];
+        BitSet seen = new BitSet(objects.size());
+        boolean exhausted = false;
+        while (!exhausted) {
+            for (int i = 0; i < vectors.size(); i++) {
+                Iterator<RankedAbstractObject> sortedAccess = sortedAccesses.get(i);
+                if (!sortedAccess.hasNext()) {
+                    //all the edible foods have been seen
+                    exhausted = true;
+                    break;
+                }
+                RankedAbstractObject ranked = sortedAccess.next();
+                operation.addSortedAccess();
+                lastDistances[vectors.get(i)] = ranked.getDistance();
+
+                int position = positions.get(ranked.getObject());
+                if (!seen.get(position)) {
+                    seen.set(position);
+                    operation.addToAnswer(objects.get(position), vectorDistances);
+                }
+            }
+
+            //no food not seen yet is nearer than the weighted last distances
+            if (operation.isAnswerFull() && operation.getAnswerDistance() <= weights.compute(lastDistances)) {
+                break;
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by a scan over the stored foods.
+     * If the operation is a KNNFoodDietQueryOperation, only the foods edible
+     * by its diet get into the answer.
+     *
+     * @param operation kNN operation
+     */
+    public void knnSearch(KNNQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by all the similarity modes in a
+     * single pass over the stored foods.
+     *
+     * @param operation multi-mode kNN operation
+     */
+    public void knnMultiModeSearch(KNNFoodMultiModeQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(objects).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the first stored food with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public synchronized void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        FoodMetaObjectMap food = locatorIndex.getFirst(operation.getLocator());
+        if (food != null) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods with any of the locators of the
+     * operation.
+     *
+     * @param operation get objects by locators operation
+     */
+    public synchronized void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        for (String locator : operation.getLocators()) {
+            for (FoodMetaObjectMap food : locatorIndex.get(locator)) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods.
+     *
+     * @param operation get all objects operation
+     */
+    public void getAllObjects(GetAllObjectsQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods edible by the diet of the operation.
+     *
+     * @param operation get food by diet operation
+     */
+    public void getFoodByDiet(GetFoodByDietQueryOperation operation) {
+        Diet diet = operation.getDiet();
+        for (FoodMetaObjectMap food : objects) {
+            if (operation.isAnswerComplete()) {
+                break;
+            }
+            if (diet.isEdible(food.getCategory())) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " holding " + size() + " foods";
+    }
+}
@@ -0,0 +1,94 @@
+package food.algorithms;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hash index of the stored objects of an algorithm by their locators, so
+ * that the objects with a locator are found without scanning all the stored
+ * objects. The values with the same locator are kept in the order of their
+ * addition, the first of them is the one a scan in the order of insertion
+ * would find first.
+ *
+ * @author tomco
+ * @param <T> type of the indexed values, the objects or their positions
+ */
+public class LocatorIndex<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, List<T>> values = new HashMap<>();
+
+    /**
+     * Adds a value under a locator, the values without a locator are not
+     * indexed.
+     *
+     * @param locator locator of the object
+     * @param value the object or its position
+     */
+    public void add(String locator, T value) {
+        if (locator != null) {
+            values.computeIfAbsent(locator, key -> new ArrayList<>(1)).add(value);
+        }
+    }
+
+    /**
+     * Removes a value from under a locator.
+     *
+     * @param locator locator of the object
+     * @param value the object or its position
+     * @return true if the value has been indexed under the locator
+     */
+    public boolean remove(String locator, T value) {
+        List<T> list = values.get(locator);
+        if (list == null || !list.remove(value)) {
+            return false;
+        }
+        if (list.isEmpty()) {
+            values.remove(locator);
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the first value added under a locator.
+     *
+     * @param locator locator of the object
+     * @return the value or null if there is none
+     */
+    public T getFirst(String locator) {
+        List<T> list = values.get(locator);
+        return list == null ? null : list.get(0);
+    }
+
+    /**
+     * Retrieves all the values added under a locator.
+     *
+     * @param locator locator of the object
+     * @return unmodifiable list of the values in the order of their addition
+     */
+    public List<T> get(String locator) {
+        List<T> list = values.get(locator);
+        return list == null ? Collections.<T>emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Removes all the values.
+     */
+    public void clear() {
+        values.clear();
+    }
+
+    /**
+     * Retrieves the number of indexed locators.
+     *
+     * @return number of distinct locators
+     */
+    public int size() {
+        return values.size();
+    }
+}
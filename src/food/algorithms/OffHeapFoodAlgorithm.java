@@ -0,0 +1,678 @@
+package food.algorithms;
+
+import food.data.FoodBinaryFile;
+import food.data.FoodSnapshot;
+import food.enums.Diet;
+import food.enums.FoodCategory;
+import food.enums.SimilarityMode;
+import food.objects.FoodMetaObjectMap;
+import food.objects.FoodVectors;
+import food.operations.query.GetFoodByDietQueryOperation;
+import food.operations.query.KNNFoodDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import messif.algorithms.Algorithm;
+import messif.objects.LocalAbstractObject;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.GetAllObjectsQueryOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+import messif.operations.query.KNNQueryOperation;
+import messif.statistics.StatisticCounter;
+import messif.statistics.Statistics;
+
+/**
+ * An algorithm, that keeps the nutrient vectors of all the food items in one
+ * contiguous direct buffer outside of the Java heap. Only the ids, categories
+ * and locators of the foods are kept on the heap, in primitive arrays indexed
+ * by the position of the food in the store. Food objects are created only for
+ * the foods that get into the answer of an operation.
+ *
+ * The store is either serialized with the algorithm or opened from a
+ * FoodSnapshot, whose mapped vectors section it reads in place, see
+ * restoreFromSnapshot.
+ *
+ * The buffer is divided into blocks of BLOCK_SIZE foods, a block stores the
+ * values dimension-major, so that a whole block is compared with the query by
+ * the batch kernel of FoodVectors in a single call.
+ *
+ * The distances are evaluated over the stored vectors by the metric of the
+ * query object, the nutrient vectors named by its getDistanceVectorNames are
+ * compared by the Manhattan distance summed up in the same order as the food
+ * objects do, so that the answers are the same as the answers of a sequential
+ * scan over the food objects.
+ *
+ * @author tomco
+ */
+public class OffHeapFoodAlgorithm extends Algorithm {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * number of foods in a block of the buffer, the capacity of the store is
+     * always a multiple of it
+     */
+    private static final int BLOCK_SIZE = 256;
+
+    /**
+     * number of values of a stored food
+     */
+    private static final int DIMENSIONS = FoodVectors.DIMENSIONS;
+
+    /**
+     * food categories by their ordinals stored in the categories array
+     */
+    private static final FoodCategory[] CATEGORIES = FoodCategory.values();
+
+    /**
+     * the distance computation counters of the food objects, the distances
+     * computed over the stored vectors are counted in them as well
+     */
+    private static final StatisticCounter counterDistanceComputations = StatisticCounter.getStatistics("DistanceComputations");
+    private static final StatisticCounter counterAbandonedDistanceComputations = StatisticCounter.getStatistics("DistanceComputations.Abandoned");
+
+    /**
+     * class of the food objects created from the store, set by the first
+     * inserted object
+     */
+    private Class<? extends FoodMetaObjectMap> objectClass;
+    private transient Constructor<? extends FoodMetaObjectMap> objectConstructor;
+
+    /**
+     * number of stored foods
+     */
+    private transient int size;
+    private transient int[] ids;
+    private transient byte[] categories;
+    private transient String[] locators;
+    /**
+     * snapshot the store has been opened from, the locators missing in the
+     * locators array are decoded from it when they are touched
+     */
+    private transient FoodSnapshot snapshot;
+    /**
+     * positions of the stored foods by their locators, built by the first
+     * lookup after the store is created or read
+     */
+    private transient LocatorIndex<Integer> locatorIndex;
+    /**
+     * values of the foods in the layout of FoodVectors, in blocks of
+     * BLOCK_SIZE foods stored dimension-major
+     */
+    private transient FloatBuffer vectors;
+
+    /**
+     * Creates an empty off-heap food vector store.
+     */
+    @Algorithm.AlgorithmConstructor(description = "Off-heap food vector store", arguments = {})
+    public OffHeapFoodAlgorithm() {
+        super("Off-heap food vector store");
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a store over a memory-mapped snapshot. The vectors are not
+     * copied, the store reads the mapped vectors section directly, until a
+     * food is inserted. The names of the foods are decoded from the snapshot
+     * only when a food is materialized or looked up by its locator, so the
+     * time to open the store does not depend on the length of the names.
+     *
+     * @param snapshot snapshot of food objects, see FoodSnapshot.write
+     * @throws ClassNotFoundException if the class of the food objects is not
+     * available
+     */
+    public OffHeapFoodAlgorithm(FoodSnapshot snapshot) throws ClassNotFoundException {
+        super("Off-heap food vector store");
+        objectClass = snapshot.getObjectClass();
+        if (objectClass == null) {
+            allocate(DEFAULT_CAPACITY);
+            return;
+        }
+        objectConstructor = FoodBinaryFile.getObjectConstructor(objectClass);
+
+        int storedSize = snapshot.size();
+        //whole blocks, as many as the mapped vectors section holds
+        int capacity = (storedSize + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        ids = new int[capacity];
+        categories = new byte[capacity];
+        locators = new String[capacity];
+        for (int i = 0; i < storedSize; i++) {
+            ids[i] = snapshot.getId(i);
+            categories[i] = snapshot.getCategoryOrdinal(i);
+        }
+        if (snapshot.getBlockSize() == BLOCK_SIZE) {
+            vectors = snapshot.getVectors();
+        } else {
+            vectors = ByteBuffer.allocateDirect(capacity * DIMENSIONS * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            float[] values = new float[DIMENSIONS];
+            for (int i = 0; i < storedSize; i++) {
+                snapshot.getValues(i, values);
+                for (int j = 0; j < DIMENSIONS; j++) {
+                    vectors.put(getPosition(i, j), values[j]);
+                }
+            }
+        }
+        this.snapshot = snapshot;
+        size = storedSize;
+    }
+
+    /**
+     * Opens a snapshot file as a store.
+     *
+     * @param snapshotFile snapshot file
+     * @return store over the mapped snapshot
+     * @throws IOException if the file is not a snapshot of a supported version
+     * @throws ClassNotFoundException if the class of the food objects is not
+     * available
+     */
+    public static OffHeapFoodAlgorithm restoreFromSnapshot(Path snapshotFile) throws IOException, ClassNotFoundException {
+        return new OffHeapFoodAlgorithm(FoodSnapshot.open(snapshotFile));
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        categories = new byte[capacity];
+        locators = new String[capacity];
+        vectors = ByteBuffer.allocateDirect(capacity * DIMENSIONS * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Doubles the capacity of the store, copying the stored foods.
+     */
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+        locators = Arrays.copyOf(locators, capacity);
+        vectors = copyVectors(capacity);
+    }
+
+    /**
+     * Copies the stored vectors into a new direct buffer.
+     *
+     * @param capacity number of foods the new buffer can hold
+     * @return the new buffer
+     */
+    private FloatBuffer copyVectors(int capacity) {
+        FloatBuffer copy = ByteBuffer.allocateDirect(capacity * DIMENSIONS * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        //the blocks do not depend on the capacity, they are copied as they are
+        FloatBuffer stored = vectors.duplicate();
+        stored.rewind();
+        copy.put(stored).rewind();
+        return copy;
+    }
+
+    /**
+     * Retrieves the position of a value of a stored food in the buffer.
+     *
+     * @param index position of the food in the store
+     * @param dimension index of the value in the layout of FoodVectors
+     * @return position in the buffer
+     */
+    private static int getPosition(int index, int dimension) {
+        return (index - index % BLOCK_SIZE) * DIMENSIONS + dimension * BLOCK_SIZE + index % BLOCK_SIZE;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @return number of foods
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Stores a food object.
+     *
+     * @param object food object
+     * @throws IllegalArgumentException if the object is not a food object of
+     * the class of the already stored objects
+     */
+    private synchronized void add(LocalAbstractObject object) throws IllegalArgumentException {
+        if (!(object instanceof FoodMetaObjectMap)) {
+            throw new IllegalArgumentException("Only food objects can be stored, got " + object.getClass().getName() + ".");
+        }
+        FoodMetaObjectMap food = (FoodMetaObjectMap) object;
+        if (objectClass == null) {
+            objectClass = food.getClass();
+            objectConstructor = FoodBinaryFile.getObjectConstructor(objectClass);
+        } else if (!objectClass.equals(food.getClass())) {
+            throw new IllegalArgumentException("The store holds " + objectClass.getName() + " objects, got " + food.getClass().getName() + ".");
+        }
+
+        if (size == ids.length) {
+            grow();
+        } else if (vectors.isReadOnly()) {
+            //the mapped vectors of a snapshot are copied by the first insert
+            vectors = copyVectors(ids.length);
+        }
+        ids[size] = food.getId();
+        categories[size] = (byte) food.getCategory().ordinal();
+        locators[size] = food.getLocatorURI();
+        if (locatorIndex != null) {
+            locatorIndex.add(locators[size], size);
+        }
+        float[] values = FoodBinaryFile.getValues(food, new float[DIMENSIONS], 0);
+        for (int j = 0; j < DIMENSIONS; j++) {
+            vectors.put(getPosition(size, j), values[j]);
+        }
+        size++;
+    }
+
+    /**
+     * Creates the food object of a stored food.
+     *
+     * @param index position of the food in the store
+     * @return food object
+     */
+    private FoodMetaObjectMap getObject(int index) {
+        float[] values = new float[DIMENSIONS];
+        for (int j = 0; j < DIMENSIONS; j++) {
+            values[j] = vectors.get(getPosition(index, j));
+        }
+        return FoodBinaryFile.createObject(objectConstructor, getLocator(index), values, 0, ids[index], getCategory(index));
+    }
+
+    /**
+     * Retrieves the locator of a stored food, decoding it from the snapshot
+     * if it has not been touched yet.
+     *
+     * @param index position of the food in the store
+     * @return locator
+     */
+    private String getLocator(int index) {
+        String locator = locators[index];
+        if (locator == null) {
+            locator = snapshot.getName(index);
+            locators[index] = locator;
+        }
+        return locator;
+    }
+
+    /**
+     * Retrieves the index of the positions of the stored foods by their
+     * locators, building it if it has not been built yet. The locators not
+     * decoded from the snapshot yet are decoded by parallel tasks.
+     *
+     * @return locator index
+     */
+    private synchronized LocatorIndex<Integer> getLocatorIndex() {
+        if (locatorIndex == null) {
+            if (snapshot != null) {
+                String[] names = snapshot.getNames();
+                for (int i = 0; i < names.length; i++) {
+                    if (locators[i] == null) {
+                        locators[i] = names[i];
+                    }
+                }
+            }
+            locatorIndex = new LocatorIndex<>();
+            for (int i = 0; i < size; i++) {
+                locatorIndex.add(locators[i], i);
+            }
+        }
+        return locatorIndex;
+    }
+
+    private FoodCategory getCategory(int index) {
+        return CATEGORIES[categories[index]];
+    }
+
+    /**
+     * Inserts a food object into the store.
+     *
+     * @param operation insert operation
+     */
+    public void insert(InsertOperation operation) {
+        add(operation.getInsertedObject());
+        operation.endOperation();
+    }
+
+    /**
+     * Inserts food objects into the store.
+     *
+     * @param operation bulk insert operation
+     */
+    public void bulkInsert(BulkInsertOperation operation) {
+        for (LocalAbstractObject object : operation.getInsertedObjects()) {
+            add(object);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @param operation object count operation
+     */
+    public void objectCount(GetObjectCountOperation operation) {
+        operation.addToAnswer(size);
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search over the stored vectors. If the
+     * operation is a KNNFoodDietQueryOperation, only the foods edible by its
+     * diet get into the answer.
+     *
+     * The distances of a whole block are computed at once by the batch kernel
+     * of FoodVectors, the foods of the block are then offered to the answer
+     * one by one in the order of the store, as a sequential scan does. The
+     * rest of the nutrient vectors of a block is not compared, when no edible
+     * food of the block is within the answer threshold anymore.
+     *
+     * @param operation kNN operation, whose query object is a food object
+     */
+    public void knnSearch(KNNQueryOperation operation) {
+        FoodMetaObjectMap query = (FoodMetaObjectMap) operation.getQueryObject();
+        Diet diet = operation instanceof KNNFoodDietQueryOperation ? ((KNNFoodDietQueryOperation) operation).getDiet() : null;
+
+        //the nutrient vectors compared by the metric of the query, as column ranges
+        List<String> vectorNames = query.getDistanceVectorNames();
+        int[] offsets = new int[vectorNames.size()];
+        int[] lengths = new int[vectorNames.size()];
+        int compared = 0;
+        for (String name : vectorNames) {
+            int vector = FoodVectors.getVectorIndex(name);
+            //a vector missing in the query is skipped by the metric as well
+            if (vector >= 0 && query.getObject(name) != null) {
+                offsets[compared] = FoodVectors.getVectorOffset(vector);
+                lengths[compared] = FoodVectors.getVectorLength(vector);
+                compared++;
+            }
+        }
+        float[] queryValues = FoodBinaryFile.getValues(query, new float[DIMENSIONS], 0);
+
+        int count = size;
+        FloatBuffer stored = vectors.duplicate();
+        float[] block = new float[BLOCK_SIZE * DIMENSIONS];
+        float[] sums = new float[BLOCK_SIZE];
+        float[] distances = new float[BLOCK_SIZE];
+        boolean[] edible = new boolean[BLOCK_SIZE];
+        for (int first = 0; first < count; first += BLOCK_SIZE) {
+            int blockCount = Math.min(BLOCK_SIZE, count - first);
+            stored.position(first * DIMENSIONS);
+            stored.get(block);
+
+            int edibleCount = 0;
+            for (int c = 0; c < blockCount; c++) {
+                FoodCategory category = getCategory(first + c);
+                edible[c] = diet == null || diet.isEdible(category);
+                if (edible[c]) {
+                    edibleCount++;
+                }
+                distances[c] = 0;
+                distances[c] += query.getCategoryDistance(category);
+            }
+            if (Statistics.isEnabledGlobally()) {
+                counterDistanceComputations.add(edibleCount);
+            }
+
+            //the threshold can only decrease while the block is offered to the answer
+            float threshold = operation.getAnswerThreshold();
+            for (int v = 0; v < compared; v++) {
+                if (!isAnyWithin(distances, edible, blockCount, threshold)) {
+                    if (Statistics.isEnabledGlobally()) {
+                        counterAbandonedDistanceComputations.add(edibleCount);
+                    }
+                    break;
+                }
+                FoodVectors.addDistances(queryValues, block, BLOCK_SIZE, blockCount, offsets[v], lengths[v], sums, distances);
+            }
+
+            for (int c = 0; c < blockCount; c++) {
+                //don't answer if not edible for the user
+                if (edible[c] && distances[c] <= operation.getAnswerThreshold()) {
+                    operation.addToAnswer(getObject(first + c), distances[c], null);
+                }
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by all the similarity modes in a
+     * single pass over the stored vectors. The distances of the modes are
+     * summed up from the distances of the nutrient vectors, see
+     * scanVectorDistances, food objects are created only for the foods that
+     * get into the answer of any mode.
+     *
+     * @param operation multi-mode kNN operation
+     */
+    public void knnMultiModeSearch(KNNFoodMultiModeQueryOperation operation) {
+        float[] distances = new float[SimilarityMode.length()];
+        scanVectorDistances(operation.getQueryObject(), operation.getDiet(), (index, category, vectorDistances) -> {
+            if (operation.computeDistances(category, vectorDistances, distances)) {
+                operation.addToAnswers(getObject(index), distances);
+            }
+        });
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a search by the nutrient vectors weighted for the query in a
+     * single pass over the stored vectors, see scanVectorDistances. Food
+     * objects are created only for the foods that get into the answer.
+     *
+     * @param operation weighted kNN operation
+     */
+    public void weightedSearch(KNNFoodWeightedQueryOperation operation) {
+        scanVectorDistances(operation.getQueryFood(), operation.getDiet(), (index, category, vectorDistances) -> {
+            float distance = operation.computeDistance(vectorDistances);
+            if (distance <= operation.getAnswerThreshold()) {
+                operation.addToAnswer(getObject(index), distance, null);
+            }
+        });
+        operation.endOperation();
+    }
+
+    /**
+     * Computes the Manhattan distances of all the nutrient vectors of a query
+     * and of the stored foods edible by a diet. The distances of a whole block
+     * are computed once by the batch kernel, they are then handed over food by
+     * food in the order of the store.
+     *
+     * @param query query food
+     * @param diet diet of the search
+     * @param consumer receiver of the distances of every edible food
+     */
+    private void scanVectorDistances(FoodMetaObjectMap query, Diet diet, VectorDistancesConsumer consumer) {
+        //a vector missing in the query is skipped by the metrics, its distance is 0
+        int vectorCount = FoodVectors.VECTOR_NAMES.size();
+        boolean[] compared = new boolean[vectorCount];
+        for (int v = 0; v < vectorCount; v++) {
+            compared[v] = query.getObject(FoodVectors.VECTOR_NAMES.get(v)) != null;
+        }
+        float[] queryValues = FoodBinaryFile.getValues(query, new float[DIMENSIONS], 0);
+
+        int count = size;
+        FloatBuffer stored = vectors.duplicate();
+        float[] block = new float[BLOCK_SIZE * DIMENSIONS];
+        float[] sums = new float[BLOCK_SIZE];
+        float[][] blockDistances = new float[vectorCount][BLOCK_SIZE];
+        float[] vectorDistances = new float[vectorCount];
+        for (int first = 0; first < count; first += BLOCK_SIZE) {
+            int blockCount = Math.min(BLOCK_SIZE, count - first);
+            stored.position(first * DIMENSIONS);
+            stored.get(block);
+
+            for (int v = 0; v < vectorCount; v++) {
+                Arrays.fill(blockDistances[v], 0, blockCount, 0);
+                if (compared[v]) {
+                    FoodVectors.addDistances(queryValues, block, BLOCK_SIZE, blockCount, FoodVectors.getVectorOffset(v), FoodVectors.getVectorLength(v), sums, blockDistances[v]);
+                }
+            }
+
+            for (int c = 0; c < blockCount; c++) {
+                FoodCategory category = getCategory(first + c);
+                //don't answer if not edible for the user
+                if (!diet.isEdible(category)) {
+                    continue;
+                }
+                if (Statistics.isEnabledGlobally()) {
+                    counterDistanceComputations.add();
+                }
+                for (int v = 0; v < vectorCount; v++) {
+                    vectorDistances[v] = blockDistances[v][c];
+                }
+                consumer.accept(first + c, category, vectorDistances);
+            }
+        }
+    }
+
+    /**
+     * Finds out whether any edible food of a block is within a threshold.
+     *
+     * @param distances partial distances of the foods of the block
+     * @param edible flags of the edible foods of the block
+     * @param count number of foods in the block
+     * @param threshold answer threshold
+     * @return true if the partial distance of an edible food does not exceed
+     * the threshold
+     */
+    private static boolean isAnyWithin(float[] distances, boolean[] edible, int count, float threshold) {
+        for (int c = 0; c < count; c++) {
+            if (edible[c] && distances[c] <= threshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the first stored food with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public synchronized void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        Integer index = getLocatorIndex().getFirst(operation.getLocator());
+        if (index != null) {
+            operation.addToAnswer(getObject(index));
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods with any of the locators of the
+     * operation, only the found foods are created.
+     *
+     * @param operation get objects by locators operation
+     */
+    public synchronized void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        for (String locator : operation.getLocators()) {
+            for (int index : getLocatorIndex().get(locator)) {
+                operation.addToAnswer(getObject(index));
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods.
+     *
+     * @param operation get all objects operation
+     */
+    public void getAllObjects(GetAllObjectsQueryOperation operation) {
+        for (int i = 0; i < size; i++) {
+            operation.addToAnswer(getObject(i));
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods edible by the diet of the operation.
+     *
+     * @param operation get food by diet operation
+     */
+    public void getFoodByDiet(GetFoodByDietQueryOperation operation) {
+        for (int i = 0; i < size && !operation.isAnswerComplete(); i++) {
+            //the foods before the requested page are skipped without creating their objects
+            if (operation.getDiet().isEdible(getCategory(i)) && !operation.skipOffset()) {
+                operation.addToAnswer(getObject(i));
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Writes the stored foods, the direct buffer is not serializable.
+     *
+     * @param out output stream
+     * @throws IOException
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(ids[i]);
+            out.writeByte(categories[i]);
+            out.writeUTF(getLocator(i));
+            for (int j = 0; j < DIMENSIONS; j++) {
+                out.writeFloat(vectors.get(getPosition(i, j)));
+            }
+        }
+    }
+
+    /**
+     * Reads the stored foods into a new direct buffer.
+     *
+     * @param in input stream
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int storedSize = in.readInt();
+        //whole blocks
+        allocate(Math.max((storedSize + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE, DEFAULT_CAPACITY));
+        for (int i = 0; i < storedSize; i++) {
+            ids[i] = in.readInt();
+            categories[i] = in.readByte();
+            locators[i] = in.readUTF();
+            for (int j = 0; j < DIMENSIONS; j++) {
+                vectors.put(getPosition(i, j), in.readFloat());
+            }
+        }
+        size = storedSize;
+        if (objectClass != null) {
+            objectConstructor = FoodBinaryFile.getObjectConstructor(objectClass);
+        }
+    }
+
+    /**
+     * A receiver of the distances of the nutrient vectors of the stored foods.
+     */
+    private interface VectorDistancesConsumer {
+
+        /**
+         * Receives the distances of a stored food.
+         *
+         * @param index position of the food in the store
+         * @param category food category of the food
+         * @param vectorDistances distances of the nutrient vectors in the
+         * order of FoodVectors.VECTOR_NAMES, the array is reused for the next
+         * food
+         */
+        void accept(int index, FoodCategory category, float[] vectorDistances);
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " holding " + size + " foods in " + (vectors.capacity() * 4) + " bytes of direct memory";
+    }
+}
@@ -0,0 +1,490 @@
+package food.algorithms;
+
+import food.enums.Diet;
+import food.enums.SimilarityMode;
+import food.objects.FoodMetaObjectMap;
+import food.objects.FoodVectors;
+import food.operations.query.GetFoodByDietQueryOperation;
+import food.operations.query.KNNFoodDietQueryOperation;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import food.operations.query.KNNFoodWeightedQueryOperation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import messif.algorithms.Algorithm;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectList;
+import messif.operations.data.BulkInsertOperation;
+import messif.operations.data.InsertOperation;
+import messif.operations.query.GetAllObjectsQueryOperation;
+import messif.operations.query.GetObjectByLocatorOperation;
+import messif.operations.query.GetObjectCountOperation;
+import messif.operations.query.GetObjectsByLocatorsOperation;
+import messif.operations.query.KNNQueryOperation;
+import messif.statistics.StatisticCounter;
+import messif.statistics.Statistics;
+
+/**
+ * A sequential scan over the stored food objects, that evaluates the
+ * k-nearest-neighbors search by several threads of a fork-join pool.
+ *
+ * The stored foods are split into chunks of CHUNK_SIZE foods. Every chunk is
+ * scanned with its own heap of the k smallest distances, the k-th distance of
+ * a full heap is published as the shared threshold, so that the distances of
+ * all the chunks are abandoned by the tightest threshold known so far. The
+ * chunks are then merged by offering their candidates to the operation in the
+ * order of the stored foods, so that the answer is exactly the same as the
+ * answer of a sequential scan, ties included.
+ *
+ * @author tomco
+ */
+public class ParallelFoodScanAlgorithm extends Algorithm {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * number of foods scanned by a single task
+     */
+    private static final int CHUNK_SIZE = 256;
+
+    /**
+     * the distance computation counter of the food objects, the distances
+     * of the nutrient vectors computed for all the modes at once are counted
+     * in it as well
+     */
+    private static final StatisticCounter counterDistanceComputations = StatisticCounter.getStatistics("DistanceComputations");
+
+    /**
+     * number of threads of the pool
+     */
+    private final int parallelism;
+    private transient ForkJoinPool pool;
+    /**
+     * stored foods in the order of insertion
+     */
+    private final List<FoodMetaObjectMap> objects = Collections.synchronizedList(new ArrayList<>());
+    /**
+     * stored foods by their locators, guarded by the lock of the list of the
+     * stored foods
+     */
+    private final LocatorIndex<FoodMetaObjectMap> locatorIndex = new LocatorIndex<>();
+
+    /**
+     * Creates an empty scan with a thread for every available processor.
+     */
+    @Algorithm.AlgorithmConstructor(description = "Parallel sequential scan", arguments = {})
+    public ParallelFoodScanAlgorithm() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an empty scan.
+     *
+     * @param parallelism number of threads
+     * @throws IllegalArgumentException if the number of threads is less than 1
+     */
+    @Algorithm.AlgorithmConstructor(description = "Parallel sequential scan", arguments = {"number of threads"})
+    public ParallelFoodScanAlgorithm(int parallelism) throws IllegalArgumentException {
+        super("Parallel sequential scan");
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The scan needs at least 1 thread.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @return number of foods
+     */
+    public int size() {
+        return objects.size();
+    }
+
+    /**
+     * Retrieves the number of threads of the scan.
+     *
+     * @return number of threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Retrieves the pool of the threads, it is created on the first search.
+     *
+     * @return fork-join pool
+     */
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * Inserts a food object.
+     *
+     * @param operation insert operation
+     */
+    public void insert(InsertOperation operation) {
+        FoodMetaObjectMap food = toFood(operation.getInsertedObject());
+        synchronized (objects) {
+            objects.add(food);
+            locatorIndex.add(food.getLocatorURI(), food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Inserts food objects.
+     *
+     * @param operation bulk insert operation
+     */
+    public void bulkInsert(BulkInsertOperation operation) {
+        List<FoodMetaObjectMap> inserted = new ArrayList<>();
+        for (LocalAbstractObject object : operation.getInsertedObjects()) {
+            inserted.add(toFood(object));
+        }
+        synchronized (objects) {
+            objects.addAll(inserted);
+            for (FoodMetaObjectMap food : inserted) {
+                locatorIndex.add(food.getLocatorURI(), food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    private static FoodMetaObjectMap toFood(LocalAbstractObject object) throws IllegalArgumentException {
+        if (!(object instanceof FoodMetaObjectMap)) {
+            throw new IllegalArgumentException("Only food objects can be stored, got " + object.getClass().getName() + ".");
+        }
+        return (FoodMetaObjectMap) object;
+    }
+
+    /**
+     * Retrieves the number of stored foods.
+     *
+     * @param operation object count operation
+     */
+    public void objectCount(GetObjectCountOperation operation) {
+        operation.addToAnswer(size());
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search. If the operation is a
+     * KNNFoodDietQueryOperation, only the foods edible by its diet get into
+     * the answer.
+     *
+     * The chunks of the foods are scanned in parallel first. A distance is
+     * either computed completely, or it is known to exceed the threshold it
+     * has been abandoned by. The foods are then offered to the operation in
+     * their order, a food is skipped if its distance is known to exceed the
+     * answer threshold of the operation, and its distance is computed again
+     * only if it has been abandoned by a threshold tighter than the answer
+     * threshold, which the sequential scan would not have had yet.
+     *
+     * @param operation kNN operation, whose query object is a food object
+     */
+    public void knnSearch(KNNQueryOperation operation) {
+        Diet diet = operation instanceof KNNFoodDietQueryOperation ? ((KNNFoodDietQueryOperation) operation).getDiet() : null;
+        FoodMetaObjectMap[] foods = objects.toArray(new FoodMetaObjectMap[0]);
+        Scan scan = new Scan(operation.getQueryObject(), diet, operation.getK(), foods, operation.getAnswerThreshold());
+        ChunkScan task = new ChunkScan(scan, 0, foods.length);
+        if (foods.length <= CHUNK_SIZE) {
+            //a single chunk is not worth handing over to the pool
+            task.compute();
+        } else {
+            getPool().invoke(task);
+        }
+
+        for (int i = 0; i < foods.length; i++) {
+            float threshold = operation.getAnswerThreshold();
+            if (scan.exact[i]) {
+                if (scan.distances[i] <= threshold) {
+                    if (operation.isStoringMetaDistances()) {
+                        operation.addToAnswer(foods[i], threshold);
+                    } else {
+                        operation.addToAnswer(foods[i], scan.distances[i], null);
+                    }
+                }
+            } else if (scan.distances[i] < threshold) {
+                operation.addToAnswer(foods[i], threshold);
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a k-nearest-neighbors search by all the similarity modes in a
+     * single pass over the stored foods. The Manhattan distances of the
+     * nutrient vectors of the edible foods are computed by the chunks in
+     * parallel first, the foods are then offered to the answers of the modes
+     * in their order, so that every answer is the same as the answer of a
+     * sequential scan, ties included.
+     *
+     * @param operation multi-mode kNN operation
+     */
+    public void knnMultiModeSearch(KNNFoodMultiModeQueryOperation operation) {
+        FoodMetaObjectMap[] foods = objects.toArray(new FoodMetaObjectMap[0]);
+        float[][] vectorDistances = new float[foods.length][];
+        VectorDistancesScan task = new VectorDistancesScan(operation.getQueryObject(), operation.getDiet(), foods, vectorDistances, 0, foods.length);
+        if (foods.length <= CHUNK_SIZE) {
+            //a single chunk is not worth handing over to the pool
+            task.compute();
+        } else {
+            getPool().invoke(task);
+        }
+
+        float[] distances = new float[SimilarityMode.length()];
+        for (int i = 0; i < foods.length; i++) {
+            //the foods not edible for the user have no distances
+            if (vectorDistances[i] != null && operation.computeDistances(foods[i].getCategory(), vectorDistances[i], distances)) {
+                operation.addToAnswers(foods[i], distances);
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Evaluates a search by the nutrient vectors weighted for the query by a
+     * scan over the stored foods.
+     *
+     * @param operation weighted kNN operation
+     */
+    public void weightedSearch(KNNFoodWeightedQueryOperation operation) {
+        operation.evaluate(new AbstractObjectList<>(Arrays.asList(objects.toArray(new FoodMetaObjectMap[0]))).iterator());
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the first stored food with the locator of the operation.
+     *
+     * @param operation get object by locator operation
+     */
+    public void getObjectByLocator(GetObjectByLocatorOperation operation) {
+        FoodMetaObjectMap food;
+        synchronized (objects) {
+            food = locatorIndex.getFirst(operation.getLocator());
+        }
+        if (food != null) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods with any of the locators of the
+     * operation.
+     *
+     * @param operation get objects by locators operation
+     */
+    public void getObjectsByLocators(GetObjectsByLocatorsOperation operation) {
+        synchronized (objects) {
+            for (String locator : operation.getLocators()) {
+                for (FoodMetaObjectMap food : locatorIndex.get(locator)) {
+                    operation.addToAnswer(food);
+                }
+            }
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves all the stored foods in the order of insertion.
+     *
+     * @param operation get all objects operation
+     */
+    public void getAllObjects(GetAllObjectsQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects.toArray(new FoodMetaObjectMap[0])) {
+            operation.addToAnswer(food);
+        }
+        operation.endOperation();
+    }
+
+    /**
+     * Retrieves the stored foods edible by the diet of the operation.
+     *
+     * @param operation get food by diet operation
+     */
+    public void getFoodByDiet(GetFoodByDietQueryOperation operation) {
+        for (FoodMetaObjectMap food : objects.toArray(new FoodMetaObjectMap[0])) {
+            if (operation.isAnswerComplete()) {
+                break;
+            }
+            if (operation.getDiet().isEdible(food.getCategory())) {
+                operation.addToAnswer(food);
+            }
+        }
+        operation.endOperation();
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " holding " + size() + " foods with " + parallelism + " threads";
+    }
+
+    /**
+     * The state of a single parallel search shared by its chunks.
+     */
+    private static class Scan {
+
+        private final LocalAbstractObject query;
+        /**
+         * diet of the search or null if all the foods are edible
+         */
+        private final Diet diet;
+        private final int k;
+        private final FoodMetaObjectMap[] foods;
+        /**
+         * the distance of every food, if it is exact, or the threshold it is
+         * known to exceed otherwise
+         */
+        private final float[] distances;
+        private final boolean[] exact;
+        /**
+         * bits of the smallest k-th distance of all the chunks
+         */
+        private final AtomicInteger threshold;
+
+        private Scan(LocalAbstractObject query, Diet diet, int k, FoodMetaObjectMap[] foods, float threshold) {
+            this.query = query;
+            this.diet = diet;
+            this.k = k;
+            this.foods = foods;
+            this.distances = new float[foods.length];
+            this.exact = new boolean[foods.length];
+            this.threshold = new AtomicInteger(Float.floatToIntBits(threshold));
+        }
+
+        private float getThreshold() {
+            return Float.intBitsToFloat(threshold.get());
+        }
+
+        /**
+         * Publishes the k-th distance of a chunk, if it is smaller than the
+         * shared threshold.
+         *
+         * @param distance k-th distance of a chunk
+         */
+        private void publishThreshold(float distance) {
+            int current = threshold.get();
+            while (distance < Float.intBitsToFloat(current) && !threshold.compareAndSet(current, Float.floatToIntBits(distance))) {
+                current = threshold.get();
+            }
+        }
+    }
+
+    /**
+     * A task scanning a range of the foods, split into halves until it is not
+     * longer than a chunk.
+     */
+    private static class ChunkScan extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Scan scan;
+        private final int from;
+        private final int to;
+
+        private ChunkScan(Scan scan, int from, int to) {
+            this.scan = scan;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkScan(scan, from, middle), new ChunkScan(scan, middle, to));
+                return;
+            }
+
+            //the k smallest distances of the chunk, the largest of them on top
+            PriorityQueue<Float> nearest = new PriorityQueue<>(scan.k + 1, Collections.reverseOrder());
+            for (int i = from; i < to; i++) {
+                FoodMetaObjectMap food = scan.foods[i];
+                if (scan.diet != null && !scan.diet.isEdible(food.getCategory())) {
+                    scan.distances[i] = Float.POSITIVE_INFINITY;
+                    continue;
+                }
+
+                float threshold = scan.getThreshold();
+                if (nearest.size() == scan.k) {
+                    threshold = Math.min(threshold, nearest.peek());
+                }
+                float distance = scan.query.getDistance(food, threshold);
+                if (distance <= threshold) {
+                    scan.distances[i] = distance;
+                    scan.exact[i] = true;
+                    nearest.add(distance);
+                    if (nearest.size() > scan.k) {
+                        nearest.poll();
+                    }
+                    if (nearest.size() == scan.k) {
+                        scan.publishThreshold(nearest.peek());
+                    }
+                } else {
+                    scan.distances[i] = threshold;
+                }
+            }
+        }
+    }
+
+    /**
+     * A task computing the distances of the nutrient vectors of the query and
+     * a range of the foods, split into halves until it is not longer than a
+     * chunk.
+     */
+    private static class VectorDistancesScan extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FoodMetaObjectMap query;
+        private final Diet diet;
+        private final FoodMetaObjectMap[] foods;
+        /**
+         * distances of the nutrient vectors of every food, null for the foods
+         * not edible by the diet
+         */
+        private final float[][] vectorDistances;
+        private final int from;
+        private final int to;
+
+        private VectorDistancesScan(FoodMetaObjectMap query, Diet diet, FoodMetaObjectMap[] foods, float[][] vectorDistances, int from, int to) {
+            this.query = query;
+            this.diet = diet;
+            this.foods = foods;
+            this.vectorDistances = vectorDistances;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new VectorDistancesScan(query, diet, foods, vectorDistances, from, middle), new VectorDistancesScan(query, diet, foods, vectorDistances, middle, to));
+                return;
+            }
+
+            int edibleCount = 0;
+            for (int i = from; i < to; i++) {
+                if (diet.isEdible(foods[i].getCategory())) {
+                    vectorDistances[i] = query.getVectorDistances(foods[i], new float[FoodVectors.VECTOR_NAMES.size()]);
+                    edibleCount++;
+                }
+            }
+            if (Statistics.isEnabledGlobally()) {
+                counterDistanceComputations.add(edibleCount);
+            }
+        }
+    }
+}
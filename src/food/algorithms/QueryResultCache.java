@@ -0,0 +1,271 @@
+package food.algorithms;
+
+import food.enums.FoodCategory;
+import food.objects.FoodMetaObjectMap;
+import food.operations.query.KNNFoodMultiModeQueryOperation;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import messif.algorithms.Algorithm;
+import messif.algorithms.AlgorithmMethodException;
+import messif.objects.AbstractObject;
+import messif.operations.AbstractOperation;
+import messif.operations.QueryOperation;
+import messif.operations.RankingSingleQueryOperation;
+
+/**
+ * A bounded cache of the executed query operations of algorithms. A query
+ * operation is answered from the cache, if an operation with equal data, by
+ * dataEquals of the operations, and a query food with the same locator and
+ * category has been executed on an algorithm of the same name before, and its
+ * entry has neither expired nor been evicted.
+ *
+ * The least recently used entry is evicted when the cache is full, an entry
+ * expires after the time to live since its operation has been executed. All
+ * the entries of an algorithm are invalidated, when an operation, that is not
+ * a query, is executed on it through the cache, for example an insert, or when
+ * invalidate is called for the algorithm.
+ *
+ * @author tomco
+ */
+public class QueryResultCache {
+
+    /**
+     * maximal number of cached operations
+     */
+    private final int maxSize;
+    /**
+     * time in milliseconds an entry is valid for
+     */
+    private final long timeToLive;
+    /**
+     * entries in the order of access, the least recently used first
+     */
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxSize maximal number of cached operations
+     * @param timeToLive time in milliseconds an entry is valid for
+     * @throws IllegalArgumentException if the size or the time to live is not
+     * positive
+     */
+    public QueryResultCache(int maxSize, long timeToLive) throws IllegalArgumentException {
+        if (maxSize < 1 || timeToLive < 1) {
+            throw new IllegalArgumentException("The size and the time to live of a cache have to be positive.");
+        }
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, QueryResultCache.Entry> eldest) {
+                if (size() > QueryResultCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Executes an operation on an algorithm. A query operation with the same
+     * data as a cached one is not executed, the cached operation is returned
+     * instead. Any other operation invalidates the entries of the algorithm.
+     *
+     * @param <T> type of the operation
+     * @param algorithmName name identifying the algorithm in the cache
+     * @param algorithm algorithm to execute the operation on
+     * @param operation operation to execute
+     * @return the executed operation or the cached operation with the same data
+     * @throws AlgorithmMethodException
+     * @throws NoSuchMethodException
+     */
+    public <T extends AbstractOperation> T execute(String algorithmName, Algorithm algorithm, T operation) throws AlgorithmMethodException, NoSuchMethodException {
+        if (!(operation instanceof QueryOperation)) {
+            try {
+                return algorithm.executeOperation(operation);
+            } finally {
+                invalidate(algorithmName);
+            }
+        }
+
+        Key key = new Key(algorithmName, operation);
+        T cached = get(key, operation);
+        if (cached != null) {
+            return cached;
+        }
+
+        T executed = algorithm.executeOperation(operation);
+        put(key, executed);
+        return executed;
+    }
+
+    /**
+     * Retrieves the answer of a query operation executed on an algorithm or
+     * of the cached operation with the same data.
+     *
+     * @param <T> type of the answer items
+     * @param algorithmName name identifying the algorithm in the cache
+     * @param algorithm algorithm to execute the operation on
+     * @param operation query operation to execute
+     * @return iterator over the answer
+     * @throws AlgorithmMethodException
+     * @throws NoSuchMethodException
+     */
+    public <T> Iterator<? extends T> getQueryAnswer(String algorithmName, Algorithm algorithm, QueryOperation<? extends T> operation) throws AlgorithmMethodException, NoSuchMethodException {
+        return execute(algorithmName, algorithm, operation).getAnswer();
+    }
+
+    private synchronized <T extends AbstractOperation> T get(Key key, T operation) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.created > timeToLive) {
+            entries.remove(key);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null || !operation.getClass().isInstance(entry.operation)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        @SuppressWarnings("unchecked")
+        Class<T> operationClass = (Class<T>) operation.getClass();
+        return operationClass.cast(entry.operation);
+    }
+
+    private synchronized void put(Key key, AbstractOperation operation) {
+        entries.put(new Key(key.algorithmName, operation), new Entry(operation));
+    }
+
+    /**
+     * Removes all the entries of an algorithm, because its objects have
+     * changed.
+     *
+     * @param algorithmName name identifying the algorithm in the cache
+     */
+    public synchronized void invalidate(String algorithmName) {
+        entries.keySet().removeIf(key -> key.algorithmName.equals(algorithmName));
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Retrieves the number of cached operations.
+     *
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Retrieves the number of operations answered from the cache.
+     *
+     * @return number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Retrieves the number of query operations, that had to be executed.
+     *
+     * @return number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Retrieves the number of entries removed, because the cache was full or
+     * they have expired.
+     *
+     * @return number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Result cache holding " + entries.size() + " of " + maxSize + " results, hits: " + hits + ", misses: " + misses + ", evictions: " + evictions;
+    }
+
+    /**
+     * The key of an entry, the name of the algorithm, the data of the
+     * operation and the locator and the category of its query food. The data
+     * of a query operation covers only the nutrient vectors of the query food,
+     * but the answer also depends on its category, for example the category
+     * penalty of the macronutrients limited to the same food category.
+     */
+    private static class Key {
+
+        private final String algorithmName;
+        private final AbstractOperation operation;
+        private final String queryLocator;
+        private final FoodCategory queryCategory;
+
+        private Key(String algorithmName, AbstractOperation operation) {
+            this.algorithmName = algorithmName;
+            this.operation = operation;
+            AbstractObject queryObject = getQueryObject(operation);
+            this.queryLocator = queryObject == null ? null : queryObject.getLocatorURI();
+            this.queryCategory = queryObject instanceof FoodMetaObjectMap ? ((FoodMetaObjectMap) queryObject).getCategory() : null;
+        }
+
+        private static AbstractObject getQueryObject(AbstractOperation operation) {
+            if (operation instanceof RankingSingleQueryOperation) {
+                return ((RankingSingleQueryOperation) operation).getQueryObject();
+            }
+            if (operation instanceof KNNFoodMultiModeQueryOperation) {
+                return ((KNNFoodMultiModeQueryOperation) operation).getQueryObject();
+            }
+            return null;
+        }
+
+        @Override
+        public int hashCode() {
+            return (algorithmName.hashCode() * 31 + operation.dataHashCode()) * 31 + Objects.hash(queryLocator, queryCategory);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return algorithmName.equals(other.algorithmName)
+                    && Objects.equals(queryLocator, other.queryLocator)
+                    && queryCategory == other.queryCategory
+                    && operation.dataEquals(other.operation);
+        }
+    }
+
+    /**
+     * A cached operation with the time of its execution.
+     */
+    private static class Entry {
+
+        private final AbstractOperation operation;
+        private final long created;
+
+        private Entry(AbstractOperation operation) {
+            this.operation = operation;
+            this.created = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package food.data;
+
+import food.enums.FoodCategory;
+import food.objects.FoodMetaObjectMap;
+import food.objects.FoodMetaObjectMapAllNutrients;
+import food.objects.FoodVectors;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import messif.objects.LocalAbstractObject;
+import messif.objects.impl.ObjectFloatVector;
+import messif.objects.impl.ObjectFloatVectorL1;
+import messif.objects.util.StreamGenericAbstractObjectIterator;
+
+/**
+ * A binary columnar food data file, that holds the same food items as the text
+ * data file created by CSVParser, but can be memory-mapped and read without
+ * any text parsing.
+ *
+ * The file consists of a header and five sections:
+ * <ul>
+ * <li>ids: an int National Nutrient Database for Standard Reference id per
+ * food</li>
+ * <li>columns: a float32 column per nutrient in the order of the Nutrient
+ * enum (the layout of FoodVectors), each column holding the values of all the
+ * foods</li>
+ * <li>name offsets: count + 1 int offsets of the names in the string
+ * table</li>
+ * <li>categories: a byte per food, the ordinal of its FoodCategory</li>
+ * <li>string table: UTF-8 names (locators) of the foods</li>
+ * </ul>
+ * All the numbers are big-endian.
+ *
+ * @author tomco
+ */
+public class FoodBinaryFile {
+
+    public static final Path DEFAULT_BINARY_FILE_PATH = Paths.get("FoodDataFile.fdb");
+
+    /**
+     * "FDBF"
+     */
+    private static final int MAGIC = 0x46444246;
+    private static final int VERSION = 1;
+
+    //header: magic, version, count, dimensions, positions of the sections
+    private static final int IDS_POSITION = 16;
+    private static final int COLUMNS_POSITION = 24;
+    private static final int NAME_OFFSETS_POSITION = 32;
+    private static final int CATEGORIES_POSITION = 40;
+    private static final int NAMES_POSITION = 48;
+    private static final int HEADER_SIZE = 64;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int dimensions;
+    private final int ids;
+    private final int columns;
+    private final int nameOffsets;
+    private final int categories;
+    private final int names;
+
+    /**
+     * Memory-maps a binary food data file.
+     *
+     * @param binaryFile binary food data file
+     * @throws IOException if the file is not a binary food data file
+     */
+    private FoodBinaryFile(Path binaryFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(binaryFile.toFile(), "r")) {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(binaryFile + " is too large to be mapped.");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new StreamCorruptedException(binaryFile + " is not a binary food data file.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new StreamCorruptedException("Unsupported version of the binary food data file " + binaryFile + ".");
+        }
+        count = buffer.getInt(8);
+        dimensions = buffer.getInt(12);
+        if (dimensions != FoodVectors.DIMENSIONS) {
+            throw new StreamCorruptedException(binaryFile + " holds " + dimensions + " nutrients instead of " + FoodVectors.DIMENSIONS + ".");
+        }
+        ids = (int) buffer.getLong(IDS_POSITION);
+        columns = (int) buffer.getLong(COLUMNS_POSITION);
+        nameOffsets = (int) buffer.getLong(NAME_OFFSETS_POSITION);
+        categories = (int) buffer.getLong(CATEGORIES_POSITION);
+        names = (int) buffer.getLong(NAMES_POSITION);
+    }
+
+    /**
+     * Memory-maps a binary food data file.
+     *
+     * @param binaryFile binary food data file
+     * @return the mapped file
+     * @throws IOException if the file is not a binary food data file
+     */
+    public static FoodBinaryFile open(Path binaryFile) throws IOException {
+        return new FoodBinaryFile(binaryFile);
+    }
+
+    /**
+     * Finds out whether a file is a binary food data file by its magic number.
+     *
+     * @param file file to check
+     * @return true if the file starts as a binary food data file
+     * @throws IOException
+     */
+    public static boolean isBinaryFile(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < HEADER_SIZE) {
+            return false;
+        }
+        try (RandomAccessFile input = new RandomAccessFile(file.toFile(), "r")) {
+            return input.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Converts a text data file created by CSVParser into a binary food data
+     * file.
+     *
+     * @param dataFile text data file
+     * @param binaryFile binary food data file, that is rewritten
+     * @return number of converted food items
+     * @throws IOException
+     */
+    public static int convert(Path dataFile, Path binaryFile) throws IOException {
+        List<Integer> foodIds = new ArrayList<>();
+        List<float[]> foodVectors = new ArrayList<>();
+        List<byte[]> foodNames = new ArrayList<>();
+        List<FoodCategory> foodCategories = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(dataFile)) {
+            StreamGenericAbstractObjectIterator<FoodMetaObjectMapAllNutrients> iter
+                    = new StreamGenericAbstractObjectIterator<>(FoodMetaObjectMapAllNutrients.class, reader);
+            while (iter.hasNext()) {
+                FoodMetaObjectMap food = iter.next();
+                foodIds.add(food.getId());
+                foodVectors.add(getValues(food, new float[FoodVectors.DIMENSIONS], 0));
+                foodNames.add(food.getLocatorURI().getBytes(StandardCharsets.UTF_8));
+                foodCategories.add(food.getCategory());
+            }
+        }
+
+        int foodCount = foodIds.size();
+        long idsPosition = HEADER_SIZE;
+        long columnsPosition = idsPosition + 4L * foodCount;
+        long nameOffsetsPosition = columnsPosition + 4L * FoodVectors.DIMENSIONS * foodCount;
+        long categoriesPosition = nameOffsetsPosition + 4L * (foodCount + 1);
+        long namesPosition = categoriesPosition + foodCount;
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(binaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(foodCount);
+            output.writeInt(FoodVectors.DIMENSIONS);
+            output.writeLong(idsPosition);
+            output.writeLong(columnsPosition);
+            output.writeLong(nameOffsetsPosition);
+            output.writeLong(categoriesPosition);
+            output.writeLong(namesPosition);
+            output.write(new byte[HEADER_SIZE - output.size()]);
+
+            for (int id : foodIds) {
+                output.writeInt(id);
+            }
+            for (int column = 0; column < FoodVectors.DIMENSIONS; column++) {
+                for (float[] values : foodVectors) {
+                    output.writeFloat(values[column]);
+                }
+            }
+            int nameOffset = 0;
+            output.writeInt(nameOffset);
+            for (byte[] name : foodNames) {
+                nameOffset += name.length;
+                output.writeInt(nameOffset);
+            }
+            for (FoodCategory category : foodCategories) {
+                output.writeByte(category.ordinal());
+            }
+            for (byte[] name : foodNames) {
+                output.write(name);
+            }
+        }
+
+        return foodCount;
+    }
+
+    /**
+     * Copies the nutrient vectors of a food object into a row of values in the
+     * column order. Vectors missing in the object are left zero.
+     *
+     * @param food food object
+     * @param values array of values to fill
+     * @param offset index of the first value of the row
+     * @return the values
+     */
+    public static float[] getValues(FoodMetaObjectMap food, float[] values, int offset) {
+        float[] flatVector = food.getFlatVector();
+        if (flatVector != null) {
+            System.arraycopy(flatVector, 0, values, offset, FoodVectors.DIMENSIONS);
+            return values;
+        }
+        for (int vector = 0; vector < FoodVectors.VECTOR_NAMES.size(); vector++) {
+            ObjectFloatVector object = (ObjectFloatVector) food.getObject(FoodVectors.VECTOR_NAMES.get(vector));
+            if (object != null) {
+                System.arraycopy(object.getVectorData(), 0, values, offset + FoodVectors.getVectorOffset(vector), FoodVectors.getVectorLength(vector));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Creates a food object from a row of values in the column order.
+     *
+     * @param <T> type of the food object
+     * @param objectConstructor constructor taking the locator, vectors, id and
+     * category, see getObjectConstructor
+     * @param locatorURI name of the food
+     * @param values row of values
+     * @param offset index of the first value of the row
+     * @param id National Nutrient Database for Standard Reference id
+     * @param category food category
+     * @return food object
+     */
+    public static <T extends FoodMetaObjectMap> T createObject(Constructor<T> objectConstructor, String locatorURI, float[] values, int offset, int id, FoodCategory category) {
+        Map<String, LocalAbstractObject> objects = new TreeMap<>();
+        for (int vector = 0; vector < FoodVectors.VECTOR_NAMES.size(); vector++) {
+            float[] data = new float[FoodVectors.getVectorLength(vector)];
+            System.arraycopy(values, offset + FoodVectors.getVectorOffset(vector), data, 0, data.length);
+            objects.put(FoodVectors.VECTOR_NAMES.get(vector), new ObjectFloatVectorL1(data));
+        }
+        try {
+            return objectConstructor.newInstance(locatorURI, objects, id, category);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+            throw new IllegalArgumentException("Cannot create " + objectConstructor.getDeclaringClass().getName() + ".", ex);
+        }
+    }
+
+    /**
+     * Retrieves the number of food items in the file.
+     *
+     * @return number of food items
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Retrieves the number of nutrient columns.
+     *
+     * @return number of columns
+     */
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Retrieves the National Nutrient Database for Standard Reference id of a
+     * food.
+     *
+     * @param index index of the food in the file
+     * @return id
+     */
+    public int getId(int index) {
+        return buffer.getInt(ids + 4 * index);
+    }
+
+    /**
+     * Retrieves the food category of a food.
+     *
+     * @param index index of the food in the file
+     * @return category
+     */
+    public FoodCategory getCategory(int index) {
+        return FoodCategory.values()[buffer.get(categories + index)];
+    }
+
+    /**
+     * Retrieves the name (locator) of a food.
+     *
+     * @param index index of the food in the file
+     * @return name
+     */
+    public String getName(int index) {
+        int from = buffer.getInt(nameOffsets + 4 * index);
+        int to = buffer.getInt(nameOffsets + 4 * (index + 1));
+        byte[] name = new byte[to - from];
+        //a duplicate keeps the shared buffer position untouched for other readers
+        ByteBuffer nameBuffer = buffer.duplicate();
+        nameBuffer.position(names + from);
+        nameBuffer.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieves a single nutrient value of a food directly from its column.
+     *
+     * @param index index of the food in the file
+     * @param column column of the nutrient
+     * @return percentage of the rdi in 100 grams
+     */
+    public float getValue(int index, int column) {
+        return buffer.getFloat(columns + 4 * (column * count + index));
+    }
+
+    /**
+     * Copies all the nutrient values of a food in the column order.
+     *
+     * @param index index of the food in the file
+     * @param values array of at least getDimensions() values to fill
+     * @return the values
+     */
+    public float[] getValues(int index, float[] values) {
+        for (int column = 0; column < dimensions; column++) {
+            values[column] = getValue(index, column);
+        }
+        return values;
+    }
+
+    /**
+     * Creates a food object of the given class from a food in the file.
+     *
+     * @param <T> type of the food object
+     * @param index index of the food in the file
+     * @param objectConstructor constructor taking the locator, vectors, id and
+     * category
+     * @return food object
+     */
+    private <T extends FoodMetaObjectMap> T getObject(int index, Constructor<T> objectConstructor) {
+        return createObject(objectConstructor, getName(index), getValues(index, new float[dimensions]), 0, getId(index), getCategory(index));
+    }
+
+    /**
+     * Creates a food object of the given class from a food in the file.
+     *
+     * @param <T> type of the food object
+     * @param index index of the food in the file
+     * @param objectClass class of the food object
+     * @return food object
+     */
+    public <T extends FoodMetaObjectMap> T getObject(int index, Class<T> objectClass) {
+        return getObject(index, getObjectConstructor(objectClass));
+    }
+
+    /**
+     * Iterates over all the foods in the file as food objects of the given
+     * class.
+     *
+     * @param <T> type of the food objects
+     * @param objectClass class of the food objects
+     * @return iterator over the food objects
+     */
+    public <T extends FoodMetaObjectMap> Iterator<T> iterator(Class<T> objectClass) {
+        Constructor<T> objectConstructor = getObjectConstructor(objectClass);
+        return new Iterator<T>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getObject(index++, objectConstructor);
+            }
+        };
+    }
+
+    /**
+     * Retrieves the constructor of a food object class, that creates the
+     * object from already read nutrient vectors.
+     *
+     * @param <T> type of the food objects
+     * @param objectClass class of the food objects
+     * @return constructor taking the locator, vectors, id and category
+     */
+    public static <T extends FoodMetaObjectMap> Constructor<T> getObjectConstructor(Class<T> objectClass) {
+        try {
+            return objectClass.getConstructor(String.class, Map.class, int.class, FoodCategory.class);
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalArgumentException(objectClass.getName() + " cannot be created from a binary food data file.", ex);
+        }
+    }
+}
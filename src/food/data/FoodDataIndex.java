@@ -0,0 +1,558 @@
+package food.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * A compact index file kept next to the food data file, that maps the National
+ * Nutrient Database for Standard Reference id and the locator (#objectKey) of
+ * every food item to the byte offset of its record in the data file. The index
+ * file is memory-mapped and consists of two open addressing hash tables, so
+ * that a lookup by id does not need to read the data file at all. The locator
+ * table holds only hashes of the locators, a lookup by locator reads the first
+ * line of the records with the same hash to tell colliding locators apart.
+ *
+ * The index remembers how many bytes of the data file it covers. Food records
+ * appended to the data file without updating the index are indexed when the
+ * index is opened, an index of a truncated or rewritten data file is rebuilt.
+ * A rewritten data file is recognized by a fingerprint of the first and the
+ * last bytes of the indexed part, which appending records does not change.
+ *
+ * @author tomco
+ */
+public class FoodDataIndex implements Closeable {
+
+    /**
+     * "FDIX"
+     */
+    private static final int MAGIC = 0x46444958;
+    private static final int VERSION = 2;
+
+    //header: magic, version, capacity, count, indexed length of the data file,
+    //count of locators, fingerprint of the indexed part of the data file
+    private static final int CAPACITY_POSITION = 8;
+    private static final int COUNT_POSITION = 12;
+    private static final int INDEXED_LENGTH_POSITION = 16;
+    private static final int NAME_COUNT_POSITION = 24;
+    private static final int FINGERPRINT_POSITION = 32;
+    private static final int HEADER_SIZE = 40;
+
+    /**
+     * number of bytes at the start and at the end of the indexed part of the
+     * data file, that make up its fingerprint
+     */
+    private static final int FINGERPRINT_BYTES = 256;
+
+    //id slot: int id, long offset + 1 (0 marks an empty slot)
+    private static final int ID_SLOT_SIZE = 12;
+    //name slot: long name hash, long offset + 1 (0 marks an empty slot), a
+    //locator added again gets a new slot, the latest record is the valid one
+    private static final int NAME_SLOT_SIZE = 16;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * the prefix of the first line of every food record
+     */
+    private static final String OBJECT_KEY_PREFIX = "#objectKey messif.objects.keys.AbstractObjectKey ";
+
+    /**
+     * data file that is indexed
+     */
+    private final Path dataFile;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+
+    /**
+     * Opens the index of a data file, creating or updating it when needed.
+     *
+     * @param dataFile food data file
+     * @throws IOException
+     */
+    private FoodDataIndex(Path dataFile) throws IOException {
+        this.dataFile = dataFile;
+        this.file = new RandomAccessFile(getIndexPath(dataFile).toFile(), "rw");
+        this.channel = file.getChannel();
+
+        if (!isValid()) {
+            reset(DEFAULT_CAPACITY);
+        }
+
+        long dataLength = Files.exists(dataFile) ? Files.size(dataFile) : 0;
+        long indexedLength = getIndexedLength();
+        if (indexedLength > dataLength || buffer.getLong(FINGERPRINT_POSITION) != fingerprint(dataFile, indexedLength)) {
+            reset(capacity);
+            indexedLength = 0;
+        }
+        if (indexedLength < dataLength) {
+            indexDataFile(indexedLength);
+        }
+    }
+
+    /**
+     * Opens the index of a data file, creating or updating it when needed.
+     *
+     * @param dataFile food data file
+     * @return the index
+     * @throws IOException
+     */
+    public static FoodDataIndex open(Path dataFile) throws IOException {
+        return new FoodDataIndex(dataFile);
+    }
+
+    /**
+     * Retrieves the path of the index file of a data file.
+     *
+     * @param dataFile food data file
+     * @return path to the index file
+     */
+    public static Path getIndexPath(Path dataFile) {
+        return Paths.get(dataFile.toString() + ".idx");
+    }
+
+    /**
+     * Retrieves the number of indexed food items.
+     *
+     * @return number of food items
+     */
+    public synchronized int size() {
+        return buffer.getInt(COUNT_POSITION);
+    }
+
+    /**
+     * Retrieves the number of bytes of the data file covered by this index.
+     *
+     * @return length of the indexed part of the data file
+     */
+    public synchronized long getIndexedLength() {
+        return buffer.getLong(INDEXED_LENGTH_POSITION);
+    }
+
+    /**
+     * Stores the number of bytes of the data file covered by this index. It is
+     * to be called after the appended food records have been written.
+     *
+     * @param indexedLength length of the indexed part of the data file
+     * @throws IOException if the fingerprint of the data file could not be
+     * read
+     */
+    public synchronized void setIndexedLength(long indexedLength) throws IOException {
+        buffer.putLong(INDEXED_LENGTH_POSITION, indexedLength);
+        buffer.putLong(FINGERPRINT_POSITION, fingerprint(dataFile, indexedLength));
+    }
+
+    /**
+     * Finds out whether the data file contains a food with this id.
+     *
+     * @param id National Nutrient Database for Standard Reference id
+     * @return true if the food is in the data file
+     */
+    public synchronized boolean containsId(int id) {
+        return getOffset(id) >= 0;
+    }
+
+    /**
+     * Retrieves the byte offset of the record of a food with this id.
+     *
+     * @param id National Nutrient Database for Standard Reference id
+     * @return offset of the record or -1 if there is no such food
+     */
+    public synchronized long getOffset(int id) {
+        int slot = idSlot(id);
+        long offset = buffer.getLong(slot + 4);
+        while (offset != 0) {
+            if (buffer.getInt(slot) == id) {
+                return offset - 1;
+            }
+            slot = nextIdSlot(slot);
+            offset = buffer.getLong(slot + 4);
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the byte offset of the record of a food with this locator. The
+     * locators of the records with the same hash are read from the data file,
+     * the latest record with this locator is returned.
+     *
+     * @param name locator of the food
+     * @return offset of the record or -1 if there is no such food
+     * @throws IOException if the data file could not be read
+     */
+    public synchronized long getOffset(String name) throws IOException {
+        long hash = nameHash(name);
+        long result = -1;
+        int slot = nameSlot(hash);
+        long offset = buffer.getLong(slot + 8);
+        while (offset != 0) {
+            if (buffer.getLong(slot) == hash && offset - 1 > result && name.equals(readName(dataFile, offset - 1))) {
+                result = offset - 1;
+            }
+            slot = nextNameSlot(slot);
+            offset = buffer.getLong(slot + 8);
+        }
+        return result;
+    }
+
+    /**
+     * Adds a food record to the index, a food with the same id or locator
+     * is pointed to the new record. The record does not have to be written to
+     * the data file yet.
+     *
+     * @param id National Nutrient Database for Standard Reference id
+     * @param name locator of the food
+     * @param offset byte offset of the record in the data file
+     * @throws IOException if the index could not be enlarged
+     */
+    public synchronized void add(int id, String name, long offset) throws IOException {
+        if ((Math.max(size(), buffer.getInt(NAME_COUNT_POSITION)) + 1) * 2 > capacity) {
+            grow();
+        }
+        if (putId(id, offset)) {
+            buffer.putInt(COUNT_POSITION, size() + 1);
+        }
+        putName(nameHash(name), offset);
+        buffer.putInt(NAME_COUNT_POSITION, buffer.getInt(NAME_COUNT_POSITION) + 1);
+    }
+
+    /**
+     * Removes all food items from the index, used when the data file is
+     * truncated. The capacity of the tables is kept.
+     *
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        reset(capacity);
+    }
+
+    /**
+     * Reads the record of a food item from the data file, without reading
+     * the rest of the data file.
+     *
+     * @param dataFile food data file
+     * @param offset byte offset of the record
+     * @return the lines of the record, each terminated by a new line
+     * @throws IOException
+     */
+    public static String readRecord(Path dataFile, long offset) throws IOException {
+        try (RandomAccessFile data = new RandomAccessFile(dataFile.toFile(), "r")) {
+            data.seek(offset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(data.getChannel()), StandardCharsets.UTF_8));
+            StringBuilder record = new StringBuilder();
+            String line = reader.readLine();
+            while (line != null && (record.length() == 0 || !line.startsWith("#objectKey"))) {
+                record.append(line).append('\n');
+                line = reader.readLine();
+            }
+            return record.toString();
+        }
+    }
+
+    /**
+     * Reads the locator of a food item from the first line of its record.
+     *
+     * @param dataFile food data file
+     * @param offset byte offset of the record
+     * @return the locator or null if there is no record at the offset
+     * @throws IOException
+     */
+    private static String readName(Path dataFile, long offset) throws IOException {
+        try (RandomAccessFile data = new RandomAccessFile(dataFile.toFile(), "r")) {
+            data.seek(offset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(data.getChannel()), StandardCharsets.UTF_8));
+            String line = reader.readLine();
+            return line != null && line.startsWith(OBJECT_KEY_PREFIX) ? line.substring(OBJECT_KEY_PREFIX.length()) : null;
+        }
+    }
+
+    /**
+     * Reads the record of a food item with this id from the data file.
+     *
+     * @param id National Nutrient Database for Standard Reference id
+     * @return the record or null if there is no such food
+     * @throws IOException
+     */
+    public String readRecord(int id) throws IOException {
+        long offset = getOffset(id);
+        return offset < 0 ? null : readRecord(dataFile, offset);
+    }
+
+    /**
+     * Reads the record of a food item with this locator from the data file.
+     *
+     * @param name locator of the food
+     * @return the record or null if there is no such food
+     * @throws IOException
+     */
+    public String readRecord(String name) throws IOException {
+        long offset = getOffset(name);
+        return offset < 0 ? null : readRecord(dataFile, offset);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    /**
+     * Reads the header of the index file and maps the file, if the header is
+     * valid. An invalid file is not mapped, so that it can be truncated.
+     *
+     * @return true if the index file is valid
+     * @throws IOException
+     */
+    private boolean isValid() throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        file.seek(0);
+        int magic = file.readInt();
+        int version = file.readInt();
+        int fileCapacity = file.readInt();
+        if (magic != MAGIC || version != VERSION
+                || fileCapacity <= 0 || Integer.bitCount(fileCapacity) != 1
+                || file.length() != getFileSize(fileCapacity)) {
+            return false;
+        }
+        capacity = fileCapacity;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        return true;
+    }
+
+    /**
+     * Empties the index file and sets the capacity of its tables. A mapped
+     * index file is never truncated, as a file with a mapped region cannot be
+     * truncated on Windows, it is only extended and cleared through the new
+     * mapping.
+     *
+     * @param newCapacity number of slots of each table, a power of two, at
+     * least the current capacity if the file is mapped
+     * @throws IOException
+     */
+    private void reset(int newCapacity) throws IOException {
+        boolean mapped = buffer != null;
+        if (!mapped) {
+            file.setLength(0);
+        } else if (newCapacity < capacity) {
+            throw new IllegalArgumentException("A mapped index file cannot be shrunk.");
+        }
+        file.setLength(getFileSize(newCapacity));
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        if (mapped) {
+            for (int i = 0; i < buffer.limit(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        capacity = newCapacity;
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(CAPACITY_POSITION, capacity);
+        buffer.putInt(COUNT_POSITION, 0);
+        buffer.putLong(INDEXED_LENGTH_POSITION, 0);
+        buffer.putLong(FINGERPRINT_POSITION, fingerprint(dataFile, 0));
+        buffer.putInt(NAME_COUNT_POSITION, 0);
+    }
+
+    /**
+     * Doubles the capacity of the tables and adds all the entries again.
+     *
+     * @throws IOException
+     */
+    private void grow() throws IOException {
+        int[] ids = new int[size()];
+        long[] idOffsets = new long[ids.length];
+        long[] nameHashes = new long[buffer.getInt(NAME_COUNT_POSITION)];
+        long[] nameOffsets = new long[nameHashes.length];
+        int ic = 0;
+        int nc = 0;
+        for (int i = 0; i < capacity; i++) {
+            int slot = HEADER_SIZE + i * ID_SLOT_SIZE;
+            if (buffer.getLong(slot + 4) != 0 && ic < ids.length) {
+                ids[ic] = buffer.getInt(slot);
+                idOffsets[ic++] = buffer.getLong(slot + 4) - 1;
+            }
+            slot = HEADER_SIZE + capacity * ID_SLOT_SIZE + i * NAME_SLOT_SIZE;
+            if (buffer.getLong(slot + 8) != 0 && nc < nameHashes.length) {
+                nameHashes[nc] = buffer.getLong(slot);
+                nameOffsets[nc++] = buffer.getLong(slot + 8) - 1;
+            }
+        }
+        long indexedLength = getIndexedLength();
+        long fingerprint = buffer.getLong(FINGERPRINT_POSITION);
+
+        reset(capacity * 2);
+        for (int i = 0; i < ic; i++) {
+            putId(ids[i], idOffsets[i]);
+        }
+        for (int i = 0; i < nc; i++) {
+            putName(nameHashes[i], nameOffsets[i]);
+        }
+        buffer.putInt(COUNT_POSITION, ic);
+        buffer.putInt(NAME_COUNT_POSITION, nc);
+        buffer.putLong(INDEXED_LENGTH_POSITION, indexedLength);
+        buffer.putLong(FINGERPRINT_POSITION, fingerprint);
+    }
+
+    /**
+     * Stores an id entry.
+     *
+     * @return true if the id was not in the index yet
+     */
+    private boolean putId(int id, long offset) {
+        int slot = idSlot(id);
+        while (buffer.getLong(slot + 4) != 0) {
+            if (buffer.getInt(slot) == id) {
+                buffer.putLong(slot + 4, offset + 1);
+                return false;
+            }
+            slot = nextIdSlot(slot);
+        }
+        buffer.putInt(slot, id);
+        buffer.putLong(slot + 4, offset + 1);
+        return true;
+    }
+
+    /**
+     * Stores a locator entry in the first empty slot. Entries with the same
+     * hash are kept, as their locators may differ.
+     */
+    private void putName(long hash, long offset) {
+        int slot = nameSlot(hash);
+        while (buffer.getLong(slot + 8) != 0) {
+            slot = nextNameSlot(slot);
+        }
+        buffer.putLong(slot, hash);
+        buffer.putLong(slot + 8, offset + 1);
+    }
+
+    private int idSlot(int id) {
+        int hash = id * 0x9E3779B9;
+        return HEADER_SIZE + ((hash ^ (hash >>> 16)) & (capacity - 1)) * ID_SLOT_SIZE;
+    }
+
+    private int nextIdSlot(int slot) {
+        int index = ((slot - HEADER_SIZE) / ID_SLOT_SIZE + 1) & (capacity - 1);
+        return HEADER_SIZE + index * ID_SLOT_SIZE;
+    }
+
+    private int nameSlot(long hash) {
+        return HEADER_SIZE + capacity * ID_SLOT_SIZE + ((int) (hash ^ (hash >>> 32)) & (capacity - 1)) * NAME_SLOT_SIZE;
+    }
+
+    private int nextNameSlot(int slot) {
+        int tableStart = HEADER_SIZE + capacity * ID_SLOT_SIZE;
+        int index = ((slot - tableStart) / NAME_SLOT_SIZE + 1) & (capacity - 1);
+        return tableStart + index * NAME_SLOT_SIZE;
+    }
+
+    private static long getFileSize(int capacity) {
+        return HEADER_SIZE + (long) capacity * (ID_SLOT_SIZE + NAME_SLOT_SIZE);
+    }
+
+    /**
+     * Retrieves a 64-bit FNV-1a hash of a food locator.
+     *
+     * @param name locator of the food
+     * @return hash of the locator
+     */
+    private static long nameHash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Retrieves a 64-bit FNV-1a hash of the first and the last bytes of the
+     * indexed part of the data file.
+     *
+     * @param dataFile food data file
+     * @param length length of the indexed part of the data file
+     * @return fingerprint of the indexed part
+     * @throws IOException
+     */
+    private static long fingerprint(Path dataFile, long length) throws IOException {
+        long hash = 0xcbf29ce484222325L;
+        if (length == 0) {
+            return hash;
+        }
+        try (RandomAccessFile data = new RandomAccessFile(dataFile.toFile(), "r")) {
+            byte[] bytes = new byte[(int) Math.min(FINGERPRINT_BYTES, length)];
+            for (long from : new long[]{0, length - bytes.length}) {
+                data.seek(from);
+                data.readFully(bytes);
+                for (byte b : bytes) {
+                    hash ^= b & 0xff;
+                    hash *= 0x100000001b3L;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Adds all the food records of the data file starting at an offset to the
+     * index.
+     *
+     * @param from byte offset of the first record to index
+     * @throws IOException
+     */
+    private void indexDataFile(long from) throws IOException {
+        try (RandomAccessFile data = new RandomAccessFile(dataFile.toFile(), "r")) {
+            data.seek(from);
+            InputStream input = new BufferedInputStream(Channels.newInputStream(data.getChannel()));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long position = from;
+            long recordOffset = -1;
+            String recordName = null;
+
+            int b = input.read();
+            while (b != -1) {
+                long lineOffset = position;
+                boolean comment = b == '#';
+                line.reset();
+                while (b != -1 && b != '\n') {
+                    line.write(b);
+                    position++;
+                    b = input.read();
+                }
+                if (b == '\n') {
+                    position++;
+                    b = input.read();
+                }
+
+                String text = comment ? line.toString("UTF-8") : "";
+                if (text.startsWith(OBJECT_KEY_PREFIX)) {
+                    recordOffset = lineOffset;
+                    recordName = text.substring(OBJECT_KEY_PREFIX.length());
+                } else if (text.startsWith("#id") && recordOffset >= 0) {
+                    try {
+                        add(Integer.parseInt(text.substring("#id".length()).trim()), recordName, recordOffset);
+                    } catch (NumberFormatException ex) {
+                        //a record without a numeric id is not indexed
+                    }
+                    recordOffset = -1;
+                }
+            }
+            setIndexedLength(position);
+        }
+    }
+}
@@ -0,0 +1,481 @@
+package food.data;
+
+import food.enums.FoodCategory;
+import food.objects.FoodMetaObjectMap;
+import food.objects.FoodVectors;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+import messif.algorithms.Algorithm;
+import messif.algorithms.AlgorithmMethodException;
+import messif.operations.AnswerType;
+import messif.operations.query.GetAllObjectsQueryOperation;
+
+/**
+ * A versioned snapshot of the food objects of an algorithm, that replaces the
+ * Java serialization of the whole algorithm with a file, which is
+ * memory-mapped and read without deserializing anything up front. Opening a
+ * snapshot reads only its header, a food is decoded when it is touched.
+ *
+ * The file consists of a header and three sections:
+ * <ul>
+ * <li>object table: a fixed-size entry per food with its National Nutrient
+ * Database for Standard Reference id, the offset and length of its name in the
+ * string table and the ordinal of its FoodCategory</li>
+ * <li>string table: the name of the class of the food objects followed by the
+ * UTF-8 names (locators) of the foods</li>
+ * <li>vectors: the nutrient values in the layout of FoodVectors, in blocks of
+ * getBlockSize() foods stored dimension-major, the last block padded by
+ * zeros</li>
+ * </ul>
+ * All the numbers are little-endian.
+ *
+ * The foods are decoded in segments of SEGMENT_SIZE foods, the segments are
+ * independent of each other, so that all the names or all the food objects
+ * are decoded by parallel tasks.
+ *
+ * @author tomco
+ */
+public class FoodSnapshot {
+
+    /**
+     * suffix of the snapshot files
+     */
+    public static final String SUFFIX = ".snap";
+
+    /**
+     * default number of foods in a block of the vectors section
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    /**
+     * number of foods decoded by a single task
+     */
+    public static final int SEGMENT_SIZE = 1024;
+
+    /**
+     * "FSNP"
+     */
+    private static final int MAGIC = 0x504E5346;
+    private static final int VERSION = 1;
+
+    //header: magic, version, count, dimensions, block size, class name length,
+    //positions of the sections
+    private static final int OBJECT_TABLE_POSITION = 24;
+    private static final int NAMES_POSITION = 32;
+    private static final int VECTORS_POSITION = 40;
+    private static final int HEADER_SIZE = 64;
+
+    //object table entry: id, name offset, name length, category, padding
+    private static final int ENTRY_SIZE = 12;
+
+    /**
+     * alignment of the vectors section in the file
+     */
+    private static final int VECTORS_ALIGNMENT = 64;
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int blockSize;
+    private final int objectTable;
+    private final int names;
+    private final int vectors;
+    private final String objectClassName;
+
+    /**
+     * Memory-maps a snapshot file and reads its header.
+     *
+     * @param snapshotFile snapshot file
+     * @throws IOException if the file is not a snapshot of a supported version
+     */
+    private FoodSnapshot(Path snapshotFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile.toFile(), "r")) {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(snapshotFile + " is too large to be mapped.");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new StreamCorruptedException(snapshotFile + " is not a food snapshot.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new StreamCorruptedException("Unsupported version " + buffer.getInt(4) + " of the food snapshot " + snapshotFile + ".");
+        }
+        if (buffer.getInt(12) != FoodVectors.DIMENSIONS) {
+            throw new StreamCorruptedException(snapshotFile + " holds " + buffer.getInt(12) + " nutrients instead of " + FoodVectors.DIMENSIONS + ".");
+        }
+        path = snapshotFile;
+        count = buffer.getInt(8);
+        blockSize = buffer.getInt(16);
+        objectTable = (int) buffer.getLong(OBJECT_TABLE_POSITION);
+        names = (int) buffer.getLong(NAMES_POSITION);
+        vectors = (int) buffer.getLong(VECTORS_POSITION);
+        objectClassName = decode(names, buffer.getInt(20));
+    }
+
+    /**
+     * Memory-maps a snapshot file.
+     *
+     * @param snapshotFile snapshot file
+     * @return the mapped snapshot
+     * @throws IOException if the file is not a snapshot of a supported version
+     */
+    public static FoodSnapshot open(Path snapshotFile) throws IOException {
+        return new FoodSnapshot(snapshotFile);
+    }
+
+    /**
+     * Finds out whether a file is a snapshot by its magic number.
+     *
+     * @param file file to check
+     * @return true if the file starts as a snapshot
+     * @throws IOException
+     */
+    public static boolean isSnapshot(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < HEADER_SIZE) {
+            return false;
+        }
+        try (RandomAccessFile input = new RandomAccessFile(file.toFile(), "r")) {
+            return Integer.reverseBytes(input.readInt()) == MAGIC;
+        }
+    }
+
+    /**
+     * Writes a snapshot of food objects.
+     *
+     * @param snapshotFile snapshot file, that is rewritten
+     * @param foods food objects of the same class
+     * @param blockSize number of foods in a block of the vectors section
+     * @return number of written foods
+     * @throws IOException
+     * @throws IllegalArgumentException if the foods are not of the same class
+     */
+    public static int write(Path snapshotFile, Iterator<? extends FoodMetaObjectMap> foods, int blockSize) throws IOException, IllegalArgumentException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size has to be positive.");
+        }
+        List<FoodMetaObjectMap> written = new ArrayList<>();
+        List<byte[]> foodNames = new ArrayList<>();
+        Class<?> objectClass = null;
+        int namesLength = 0;
+        while (foods.hasNext()) {
+            FoodMetaObjectMap food = foods.next();
+            if (objectClass == null) {
+                objectClass = food.getClass();
+                //fails early for a class, that cannot be restored
+                FoodBinaryFile.getObjectConstructor(food.getClass());
+            } else if (!objectClass.equals(food.getClass())) {
+                throw new IllegalArgumentException("A snapshot holds foods of a single class, got " + objectClass.getName() + " and " + food.getClass().getName() + ".");
+            }
+            byte[] name = food.getLocatorURI().getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xFFFF) {
+                throw new IllegalArgumentException("The name of " + food.getLocatorURI().substring(0, 32) + "... is too long.");
+            }
+            written.add(food);
+            foodNames.add(name);
+            namesLength += name.length;
+        }
+
+        byte[] className = (objectClass == null ? "" : objectClass.getName()).getBytes(StandardCharsets.UTF_8);
+        int foodCount = written.size();
+        int blocks = (foodCount + blockSize - 1) / blockSize;
+        long objectTablePosition = HEADER_SIZE;
+        long namesPosition = objectTablePosition + (long) ENTRY_SIZE * foodCount;
+        long vectorsPosition = (namesPosition + className.length + namesLength + VECTORS_ALIGNMENT - 1) / VECTORS_ALIGNMENT * VECTORS_ALIGNMENT;
+        long size = vectorsPosition + 4L * blocks * blockSize * FoodVectors.DIMENSIONS;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The snapshot of " + foodCount + " foods would be too large to be mapped.");
+        }
+
+        ByteBuffer output = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        output.putInt(MAGIC);
+        output.putInt(VERSION);
+        output.putInt(foodCount);
+        output.putInt(FoodVectors.DIMENSIONS);
+        output.putInt(blockSize);
+        output.putInt(className.length);
+        output.putLong(objectTablePosition);
+        output.putLong(namesPosition);
+        output.putLong(vectorsPosition);
+
+        output.position((int) namesPosition);
+        output.put(className);
+        int nameOffset = className.length;
+        float[] values = new float[FoodVectors.DIMENSIONS];
+        for (int i = 0; i < foodCount; i++) {
+            FoodMetaObjectMap food = written.get(i);
+            byte[] name = foodNames.get(i);
+            int entry = (int) objectTablePosition + ENTRY_SIZE * i;
+            output.putInt(entry, food.getId());
+            output.putInt(entry + 4, nameOffset);
+            output.putShort(entry + 8, (short) name.length);
+            output.put(entry + 10, (byte) food.getCategory().ordinal());
+            output.put(name);
+            nameOffset += name.length;
+
+            FoodBinaryFile.getValues(food, values, 0);
+            for (int j = 0; j < values.length; j++) {
+                output.putFloat((int) vectorsPosition + 4 * getPosition(i, j, blockSize), values[j]);
+            }
+        }
+
+        output.rewind();
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        }
+        return foodCount;
+    }
+
+    /**
+     * Writes a snapshot of all the food objects of an algorithm.
+     *
+     * @param snapshotFile snapshot file, that is rewritten
+     * @param algorithm algorithm storing food objects of the same class
+     * @return number of written foods
+     * @throws IOException
+     * @throws AlgorithmMethodException
+     * @throws NoSuchMethodException if the algorithm cannot list its objects
+     * @throws IllegalArgumentException if the algorithm stores other objects
+     * than food objects of the same class
+     */
+    public static int write(Path snapshotFile, Algorithm algorithm) throws IOException, AlgorithmMethodException, NoSuchMethodException, IllegalArgumentException {
+        GetAllObjectsQueryOperation operation = algorithm.executeOperation(new GetAllObjectsQueryOperation(AnswerType.ORIGINAL_OBJECTS));
+        List<FoodMetaObjectMap> foods = new ArrayList<>(operation.getAnswerCount());
+        Iterator<?> answer = operation.getAnswer();
+        while (answer.hasNext()) {
+            Object object = answer.next();
+            if (!(object instanceof FoodMetaObjectMap)) {
+                throw new IllegalArgumentException("Only food objects can be stored in a snapshot, got " + object.getClass().getName() + ".");
+            }
+            foods.add((FoodMetaObjectMap) object);
+        }
+        return write(snapshotFile, foods.iterator(), DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Converts an algorithm serialized by Algorithm.storeToFile into a
+     * snapshot of its food objects.
+     *
+     * @param algorithmFile serialized algorithm file
+     * @param snapshotFile snapshot file, that is rewritten
+     * @return number of converted foods
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws AlgorithmMethodException
+     * @throws NoSuchMethodException if the algorithm cannot list its objects
+     */
+    public static int convert(Path algorithmFile, Path snapshotFile) throws IOException, ClassNotFoundException, AlgorithmMethodException, NoSuchMethodException {
+        return write(snapshotFile, Algorithm.restoreFromFile(algorithmFile.toString()));
+    }
+
+    /**
+     * Retrieves the position of a value of a food in the vectors section,
+     * counted in floats.
+     *
+     * @param index index of the food in the snapshot
+     * @param dimension index of the value in the layout of FoodVectors
+     * @param blockSize number of foods in a block
+     * @return position in the vectors section
+     */
+    private static int getPosition(int index, int dimension, int blockSize) {
+        return (index - index % blockSize) * FoodVectors.DIMENSIONS + dimension * blockSize + index % blockSize;
+    }
+
+    private String decode(int position, int length) {
+        byte[] bytes = new byte[length];
+        //a duplicate keeps the shared buffer position untouched for other readers
+        ByteBuffer bytesBuffer = buffer.duplicate();
+        bytesBuffer.position(position);
+        bytesBuffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieves the snapshot file.
+     *
+     * @return path of the mapped file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Retrieves the number of foods in the snapshot.
+     *
+     * @return number of foods
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Retrieves the number of foods in a block of the vectors section.
+     *
+     * @return block size
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Retrieves the number of segments, the units of the parallel decoding.
+     *
+     * @return number of segments
+     */
+    public int getSegmentCount() {
+        return (count + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+    }
+
+    /**
+     * Retrieves the class of the food objects of the snapshot.
+     *
+     * @return class of the food objects, null if the snapshot is empty
+     * @throws ClassNotFoundException if the class is not available
+     */
+    public Class<? extends FoodMetaObjectMap> getObjectClass() throws ClassNotFoundException {
+        if (objectClassName.isEmpty()) {
+            return null;
+        }
+        return Class.forName(objectClassName).asSubclass(FoodMetaObjectMap.class);
+    }
+
+    /**
+     * Retrieves the National Nutrient Database for Standard Reference id of a
+     * food.
+     *
+     * @param index index of the food in the snapshot
+     * @return id
+     */
+    public int getId(int index) {
+        return buffer.getInt(objectTable + ENTRY_SIZE * index);
+    }
+
+    /**
+     * Retrieves the food category of a food.
+     *
+     * @param index index of the food in the snapshot
+     * @return category
+     */
+    public FoodCategory getCategory(int index) {
+        return FoodCategory.values()[getCategoryOrdinal(index)];
+    }
+
+    /**
+     * Retrieves the ordinal of the food category of a food.
+     *
+     * @param index index of the food in the snapshot
+     * @return ordinal of the category
+     */
+    public byte getCategoryOrdinal(int index) {
+        return buffer.get(objectTable + ENTRY_SIZE * index + 10);
+    }
+
+    /**
+     * Retrieves the name (locator) of a food.
+     *
+     * @param index index of the food in the snapshot
+     * @return name
+     */
+    public String getName(int index) {
+        int entry = objectTable + ENTRY_SIZE * index;
+        return decode(names + buffer.getInt(entry + 4), buffer.getShort(entry + 8) & 0xFFFF);
+    }
+
+    /**
+     * Decodes the names of all the foods, the segments are decoded in
+     * parallel.
+     *
+     * @return names in the order of the foods
+     */
+    public String[] getNames() {
+        String[] foodNames = new String[count];
+        IntStream.range(0, getSegmentCount()).parallel().forEach(segment -> {
+            for (int i = segment * SEGMENT_SIZE; i < Math.min(count, (segment + 1) * SEGMENT_SIZE); i++) {
+                foodNames[i] = getName(i);
+            }
+        });
+        return foodNames;
+    }
+
+    /**
+     * Copies all the nutrient values of a food in the layout of FoodVectors.
+     *
+     * @param index index of the food in the snapshot
+     * @param values array of at least FoodVectors.DIMENSIONS values to fill
+     * @return the values
+     */
+    public float[] getValues(int index, float[] values) {
+        for (int j = 0; j < FoodVectors.DIMENSIONS; j++) {
+            values[j] = buffer.getFloat(vectors + 4 * getPosition(index, j, blockSize));
+        }
+        return values;
+    }
+
+    /**
+     * Retrieves a read-only view of the vectors section, blocks of
+     * getBlockSize() foods stored dimension-major. Nothing is copied, the
+     * pages of the file are read when the view is accessed.
+     *
+     * @return vectors of all the foods
+     */
+    public FloatBuffer getVectors() {
+        ByteBuffer view = buffer.duplicate();
+        view.position(vectors);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Creates the food object of a food.
+     *
+     * @param <T> type of the food object
+     * @param index index of the food in the snapshot
+     * @param objectConstructor constructor taking the locator, vectors, id and
+     * category, see FoodBinaryFile.getObjectConstructor
+     * @return food object
+     */
+    public <T extends FoodMetaObjectMap> T getObject(int index, Constructor<T> objectConstructor) {
+        return FoodBinaryFile.createObject(objectConstructor, getName(index), getValues(index, new float[FoodVectors.DIMENSIONS]), 0, getId(index), getCategory(index));
+    }
+
+    /**
+     * Creates the food objects of all the foods as objects of the given class,
+     * the segments are decoded in parallel.
+     *
+     * @param <T> type of the food objects
+     * @param objectClass class of the food objects, see getObjectClass for the
+     * class of the stored objects
+     * @return food objects in the order of the snapshot
+     */
+    public <T extends FoodMetaObjectMap> List<T> getObjects(Class<T> objectClass) {
+        Constructor<T> objectConstructor = FoodBinaryFile.getObjectConstructor(objectClass);
+        Object[] objects = new Object[count];
+        IntStream.range(0, getSegmentCount()).parallel().forEach(segment -> {
+            for (int i = segment * SEGMENT_SIZE; i < Math.min(count, (segment + 1) * SEGMENT_SIZE); i++) {
+                objects[i] = getObject(i, objectConstructor);
+            }
+        });
+        List<T> result = new ArrayList<>(count);
+        for (Object object : objects) {
+            result.add(objectClass.cast(object));
+        }
+        return result;
+    }
+}
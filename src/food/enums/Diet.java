@@ -181,6 +181,20 @@ public enum Diet {
         return Collections.unmodifiableSet(consumables);
     }
 
+    /**
+     * Retrieves the mask of all food categories that this diet can eat, the
+     * bits of the categories are given by FoodCategory.getMask.
+     * 
+     * @return mask of edible food categories
+     */
+    public int getConsumablesMask() {
+        int mask = 0;
+        for (FoodCategory category : consumables) {
+            mask |= category.getMask();
+        }
+        return mask;
+    }
+
     /**
      * Retrieves the ordinal number of a category.
      * 
@@ -53,6 +53,17 @@ public enum FoodCategory {
         return this.ordinal;
     }
 
+    /**
+     * Retrieves the bit of this category in a mask of food categories, used
+     * by the indexes to find out quickly whether a part of the index holds a
+     * food of a category.
+     * 
+     * @return mask with the single bit of this category
+     */
+    public int getMask() {
+        return 1 << ordinal();
+    }
+
     /**
      * Retrieves a food category represented by a category ordinal.
      * 
@@ -0,0 +1,156 @@
+package food.enums;
+
+import food.objects.FoodMetaObjectMap;
+import food.objects.FoodMetaObjectMapAllNutrients;
+import food.objects.FoodMetaObjectMapMacronutrients;
+import food.objects.FoodMetaObjectMapMacronutrientsWithCategory;
+import food.objects.FoodMetaObjectMapMicronutrients;
+import food.objects.FoodMetaObjectMapMinerals;
+import food.objects.FoodMetaObjectMapVitamins;
+
+/**
+ * Enumerates the metric functions, by which the foods are compared. Every
+ * food object carries all its nutrient vectors, so the foods stored once can
+ * be searched by any of the modes, the metric function is the one of the
+ * class of the query object.
+ *
+ * @author tomco
+ */
+public enum SimilarityMode {
+
+    /**
+     * the metric function of FoodMetaObjectMapAllNutrients
+     */
+    ALL_NUTRIENTS(1, FoodMetaObjectMapAllNutrients.class),
+    /**
+     * the metric function of FoodMetaObjectMapMicronutrients
+     */
+    MICRONUTRIENTS(2, FoodMetaObjectMapMicronutrients.class),
+    /**
+     * the metric function of FoodMetaObjectMapMacronutrients
+     */
+    MACRONUTRIENTS(3, FoodMetaObjectMapMacronutrients.class),
+    /**
+     * the metric function of FoodMetaObjectMapMinerals
+     */
+    MINERALS(4, FoodMetaObjectMapMinerals.class),
+    /**
+     * the metric function of FoodMetaObjectMapVitamins
+     */
+    VITAMINS(5, FoodMetaObjectMapVitamins.class),
+    /**
+     * the metric function of FoodMetaObjectMapMacronutrientsWithCategory
+     */
+    MACRONUTRIENTS_WITH_CATEGORY(6, FoodMetaObjectMapMacronutrientsWithCategory.class);
+
+    private final int ordinal;
+
+    private final Class<? extends FoodMetaObjectMap> objectClass;
+
+    private SimilarityMode(int ordinal, Class<? extends FoodMetaObjectMap> objectClass) {
+        this.ordinal = ordinal;
+        this.objectClass = objectClass;
+    }
+
+    /**
+     * Retrieves the class of the food objects, whose metric function this
+     * mode is.
+     *
+     * @return class of the food objects
+     */
+    public Class<? extends FoodMetaObjectMap> getObjectClass() {
+        return objectClass;
+    }
+
+    /**
+     * Retrieves the mode of the metric function of a food object.
+     *
+     * @param food food object
+     * @return similarity mode
+     * @throws IllegalArgumentException if the class of the object is not a
+     * class of any mode
+     */
+    public static SimilarityMode getMode(FoodMetaObjectMap food) throws IllegalArgumentException {
+        for (SimilarityMode mode : values()) {
+            if (mode.objectClass.equals(food.getClass())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("There is no similarity mode of " + food.getClass().getName() + ".");
+    }
+
+    /**
+     * Creates a query object, that compares the food by the metric function of
+     * this mode. The nutrient vectors of the food are shared, not copied.
+     *
+     * @param food food object of any class
+     * @return the food itself, if it is of the class of this mode, a food
+     * object of the class of this mode with the same data otherwise
+     */
+    public FoodMetaObjectMap createQuery(FoodMetaObjectMap food) {
+        if (objectClass.equals(food.getClass())) {
+            return food;
+        }
+        switch (this) {
+            case ALL_NUTRIENTS:
+                return new FoodMetaObjectMapAllNutrients(food.getLocatorURI(), food.getObjectMap(), food.getId(), food.getCategory());
+            case MICRONUTRIENTS:
+                return new FoodMetaObjectMapMicronutrients(food.getLocatorURI(), food.getObjectMap(), food.getId(), food.getCategory());
+            case MACRONUTRIENTS:
+                return new FoodMetaObjectMapMacronutrients(food.getLocatorURI(), food.getObjectMap(), food.getId(), food.getCategory());
+            case MINERALS:
+                return new FoodMetaObjectMapMinerals(food.getLocatorURI(), food.getObjectMap(), food.getId(), food.getCategory());
+            case VITAMINS:
+                return new FoodMetaObjectMapVitamins(food.getLocatorURI(), food.getObjectMap(), food.getId(), food.getCategory());
+            case MACRONUTRIENTS_WITH_CATEGORY:
+                return new FoodMetaObjectMapMacronutrientsWithCategory(food.getLocatorURI(), food.getObjectMap(), food.getId(), food.getCategory());
+            default:
+                throw new IllegalStateException("Similarity mode not yet supported.");
+        }
+    }
+
+    /**
+     * Retrieves the ordinal number of a mode.
+     *
+     * @return ordinal
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Retrieves a mode that is represented by this ordinal number.
+     *
+     * @param modeOrdinal a number that represents a mode
+     * @return mode
+     * @throws IllegalArgumentException if there is no such mode with this
+     * ordinal
+     */
+    public static SimilarityMode getByOrdinal(int modeOrdinal) throws IllegalArgumentException {
+        for (SimilarityMode mode : values()) {
+            if (mode.ordinal == modeOrdinal) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Invalid ordinal number.");
+    }
+
+    /**
+     * Retrieves the number of modes currently implemented.
+     *
+     * @return number of modes
+     */
+    public static int length() {
+        return SimilarityMode.values().length;
+    }
+
+    /**
+     * Retrieves a string containing the ordinal number and the name of this
+     * mode.
+     *
+     * @return "(ordinal number). (SimilarityMode name)"
+     */
+    public String toStringWithOrdinal() {
+        return ordinal + ". " + name();
+    }
+}
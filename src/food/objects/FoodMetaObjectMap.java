@@ -7,7 +7,13 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.StreamCorruptedException;
+import java.util.List;
+import java.util.Map;
+import messif.objects.LocalAbstractObject;
 import messif.objects.impl.MetaObjectMap;
+import messif.objects.impl.ObjectFloatVectorL1;
+import messif.statistics.StatisticCounter;
+import messif.statistics.Statistics;
 
 /**
  * An object that represents a food item and its nutrient vectors.
@@ -17,8 +23,24 @@ import messif.objects.impl.MetaObjectMap;
 public abstract class FoodMetaObjectMap extends MetaObjectMap {
 
     private final static long serialVersionUID = 1L;
+
+    /**
+     * number of distance computations abandoned, because the partial distance
+     * exceeded the threshold
+     */
+    protected static final StatisticCounter counterAbandonedDistanceComputations = StatisticCounter.getStatistics("DistanceComputations.Abandoned");
+
     private final int id;
     private final FoodCategory category;
+    /**
+     * nutrient vectors flattened in the layout of FoodVectors, created on the
+     * first distance computation
+     */
+    private transient volatile float[] flatVector;
+    /**
+     * bits of the indexes of the nutrient vectors present in the flat vector
+     */
+    private transient int flatVectorMask;
 
     /**
      * Creates an object from a stream created by CSVParser beforehand, with
@@ -44,6 +66,21 @@ public abstract class FoodMetaObjectMap extends MetaObjectMap {
         }
     }
 
+    /**
+     * Creates an object from nutrient vectors that have already been read, for
+     * example from a binary food data file.
+     *
+     * @param locatorURI name of the food item
+     * @param objects nutrient vectors by their names
+     * @param id National Nutrient Database for Standard Reference id
+     * @param category food category
+     */
+    public FoodMetaObjectMap(String locatorURI, Map<String, LocalAbstractObject> objects, int id, FoodCategory category) {
+        super(locatorURI, objects);
+        this.id = id;
+        this.category = category;
+    }
+
     /**
      * Retrieves the id used by National Nutrient Database for Standard Reference 
      * for this food item.
@@ -63,6 +100,179 @@ public abstract class FoodMetaObjectMap extends MetaObjectMap {
         return category;
     }
 
+    /**
+     * Retrieves the nutrient vectors of this object flattened into a single
+     * array in the layout of FoodVectors. Vectors missing in this object are
+     * left zero. The array is created once and shared, it must not be
+     * modified.
+     *
+     * @return flattened values or null, if a nutrient vector is not an
+     * ObjectFloatVectorL1 of the expected dimension
+     */
+    public float[] getFlatVector() {
+        float[] values = flatVector;
+        if (values == null && flatVectorMask == 0) {
+            values = new float[FoodVectors.DIMENSIONS];
+            int mask = 0;
+            for (int vector = 0; vector < FoodVectors.VECTOR_NAMES.size(); vector++) {
+                LocalAbstractObject object = getObject(FoodVectors.VECTOR_NAMES.get(vector));
+                if (object == null) {
+                    continue;
+                }
+                if (object.getClass() != ObjectFloatVectorL1.class
+                        || ((ObjectFloatVectorL1) object).getDimensionality() != FoodVectors.getVectorLength(vector)) {
+                    //such objects are compared by their own metric
+                    flatVectorMask = -1;
+                    return null;
+                }
+                System.arraycopy(((ObjectFloatVectorL1) object).getVectorData(), 0, values, FoodVectors.getVectorOffset(vector), FoodVectors.getVectorLength(vector));
+                mask |= 1 << vector;
+            }
+            //the mask is written before the volatile array, that publishes it
+            flatVectorMask = mask;
+            flatVector = values;
+        }
+        return values;
+    }
+
+    /**
+     * Adds the Manhattan distances of the chosen nutrient vectors of this and
+     * the other object to a partial distance, skipping the vectors missing in
+     * either object. The flat vectors are compared by the kernel of
+     * FoodVectors, which gives the same sums as the nutrient vector objects.
+     *
+     * The computation is abandoned as soon as the partial distance exceeds the
+     * threshold, both between the nutrient vectors and within a vector. The
+     * partial distance returned then is greater than the threshold as well, so
+     * the object is refused the same way as with the whole distance, and the
+     * metaDistances of the vectors not compared are left unset.
+     *
+     * @param object the other object
+     * @param vectors indexes of the nutrient vectors in FoodVectors, -1 for
+     * the vectors that are not known
+     * @param dist partial distance to add to
+     * @param metaDistances array for the distances of the vectors or null
+     * @param distThreshold max distance to calculate to
+     * @return the distance or a partial distance greater than distThreshold
+     */
+    protected final float getVectorsDistance(FoodMetaObjectMap object, int[] vectors, float dist, float[] metaDistances, float distThreshold) {
+        if (dist > distThreshold) {
+            return abandonDistance(dist);
+        }
+        float[] local = getFlatVector();
+        float[] other = object.getFlatVector();
+        if (local == null || other == null) {
+            for (int i = 0; i < vectors.length; i++) {
+                if (vectors[i] >= 0) {
+                    LocalAbstractObject oLocal = getObject(FoodVectors.VECTOR_NAMES.get(vectors[i]));
+                    LocalAbstractObject oOther = object.getObject(FoodVectors.VECTOR_NAMES.get(vectors[i]));
+                    if (oLocal != null && oOther != null) {
+                        float d = oLocal.getDistance(oOther);
+                        dist += d;
+                        if (metaDistances != null) {
+                            metaDistances[i] = d;
+                        }
+                        if (dist > distThreshold) {
+                            return abandonDistance(dist);
+                        }
+                    }
+                }
+            }
+            return dist;
+        }
+
+        int presentVectors = flatVectorMask & object.flatVectorMask;
+        for (int i = 0; i < vectors.length; i++) {
+            int vector = vectors[i];
+            if (vector >= 0 && (presentVectors & (1 << vector)) != 0) {
+                float d = FoodVectors.distance(local, other, FoodVectors.getVectorOffset(vector), FoodVectors.getVectorLength(vector), dist, distThreshold);
+                dist += d;
+                if (metaDistances != null) {
+                    metaDistances[i] = d;
+                }
+                if (dist > distThreshold) {
+                    return abandonDistance(dist);
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Computes the Manhattan distances of all the nutrient vectors of this and
+     * the other object at once, so that the distances of all the metric
+     * functions can be derived from them. The distance of a vector missing in
+     * either object is 0, adding it to a partial distance leaves the partial
+     * distance as it is, the same as skipping the vector does.
+     *
+     * @param object the other object
+     * @param distances array of at least FoodVectors.VECTOR_NAMES.size()
+     * floats for the distances in the order of FoodVectors.VECTOR_NAMES
+     * @return the distances array
+     */
+    public final float[] getVectorDistances(FoodMetaObjectMap object, float[] distances) {
+        float[] local = getFlatVector();
+        float[] other = object.getFlatVector();
+        for (int vector = 0; vector < FoodVectors.VECTOR_NAMES.size(); vector++) {
+            distances[vector] = 0;
+            if (local == null || other == null) {
+                LocalAbstractObject oLocal = getObject(FoodVectors.VECTOR_NAMES.get(vector));
+                LocalAbstractObject oOther = object.getObject(FoodVectors.VECTOR_NAMES.get(vector));
+                if (oLocal != null && oOther != null) {
+                    distances[vector] = oLocal.getDistance(oOther);
+                }
+            } else if ((flatVectorMask & object.flatVectorMask & (1 << vector)) != 0) {
+                distances[vector] = FoodVectors.distance(local, other, FoodVectors.getVectorOffset(vector), FoodVectors.getVectorLength(vector));
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Counts an abandoned distance computation.
+     *
+     * @param dist the partial distance
+     * @return the partial distance
+     */
+    private static float abandonDistance(float dist) {
+        if (Statistics.isEnabledGlobally()) {
+            counterAbandonedDistanceComputations.add();
+        }
+        return dist;
+    }
+
+    /**
+     * Retrieves the number of distance computations abandoned so far, because
+     * the partial distance exceeded the threshold. The counter is the
+     * DistanceComputations.Abandoned statistic of MESSIF, it is reset together
+     * with the other statistics.
+     *
+     * @return number of abandoned distance computations
+     */
+    public static long getAbandonedDistanceComputations() {
+        return counterAbandonedDistanceComputations.get();
+    }
+
+    /**
+     * Retrieves the names of the nutrient vectors, whose Manhattan distances
+     * are summed up by the metric function of this object, in the order in
+     * which they are summed up.
+     *
+     * @return names of the nutrient vectors
+     */
+    public abstract List<String> getDistanceVectorNames();
+
+    /**
+     * Retrieves the part of the distance given by the food categories, that
+     * the metric function adds before the distances of the nutrient vectors.
+     *
+     * @param otherCategory category of the other food
+     * @return 0, the categories are not compared by default
+     */
+    public float getCategoryDistance(FoodCategory otherCategory) {
+        return 0;
+    }
+
     @Override
     protected void writeData(OutputStream stream) throws IOException {
         super.writeData(stream);
@@ -1,8 +1,12 @@
 package food.objects;
 
+import food.enums.FoodCategory;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import messif.objects.LocalAbstractObject;
 
 /**
@@ -13,6 +17,17 @@ import messif.objects.LocalAbstractObject;
  */
 public class FoodMetaObjectMapAllNutrients extends FoodMetaObjectMap {
 
+    private final static long serialVersionUID = -2371417248473282333L;
+
+    /**
+     * names of the nutrient vectors compared by the metric function
+     */
+    private static final List<String> DISTANCE_VECTOR_NAMES = Collections.unmodifiableList(Arrays.asList("Macronutrients", "Mineral", "Vitamins"));
+    /**
+     * indexes of the compared nutrient vectors in the flattened vectors
+     */
+    private static final int[] DISTANCE_VECTORS = FoodVectors.getVectorIndexes(DISTANCE_VECTOR_NAMES);
+
     /**
      * Creates an object from a stream created by CSVParser beforehand, with
      * vectors initialized by FoodMetaObjectMap.
@@ -24,6 +39,24 @@ public class FoodMetaObjectMapAllNutrients extends FoodMetaObjectMap {
         super(stream);
     }
 
+    /**
+     * Creates an object from nutrient vectors that have already been read, for
+     * example from a binary food data file.
+     *
+     * @param locatorURI name of the food item
+     * @param objects nutrient vectors by their names
+     * @param id National Nutrient Database for Standard Reference id
+     * @param category food category
+     */
+    public FoodMetaObjectMapAllNutrients(String locatorURI, Map<String, LocalAbstractObject> objects, int id, FoodCategory category) {
+        super(locatorURI, objects, id, category);
+    }
+
+    @Override
+    public List<String> getDistanceVectorNames() {
+        return DISTANCE_VECTOR_NAMES;
+    }
+
     /**
      * Retrieves the distance from the object represented by the sum of Manhattan
      * distance between the macro and micronutrient vectors.
@@ -37,19 +70,6 @@ public class FoodMetaObjectMapAllNutrients extends FoodMetaObjectMap {
     protected float getDistanceImpl(LocalAbstractObject obj, float[] metaDistances, float distThreshold) {
         FoodMetaObjectMap object = (FoodMetaObjectMap) obj;
         float dist = 0;
-        int i = 0;
-        for (String name : Arrays.asList("Macronutrients", "Mineral", "Vitamins")) {
-            LocalAbstractObject oLocal = getObject(name);
-            LocalAbstractObject oOther = object.getObject(name);
-            if (oLocal != null && oOther != null) {
-                float d = oLocal.getDistance(oOther);
-                dist += d;
-                if (metaDistances != null) {
-                    metaDistances[i] = d;
-                }
-            }
-            i++;
-        }
-        return dist;
+        return getVectorsDistance(object, DISTANCE_VECTORS, dist, metaDistances, distThreshold);
     }
 }
@@ -5,9 +5,13 @@
  */
 package food.objects;
 
+import food.enums.FoodCategory;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import messif.objects.LocalAbstractObject;
 
 /**
@@ -19,6 +23,17 @@ import messif.objects.LocalAbstractObject;
  */
 public class FoodMetaObjectMapMacronutrientsWithCategory extends FoodMetaObjectMap {
 
+    private final static long serialVersionUID = -6141972821093016486L;
+
+    /**
+     * names of the nutrient vectors compared by the metric function
+     */
+    private static final List<String> DISTANCE_VECTOR_NAMES = Collections.unmodifiableList(Arrays.asList("Macronutrients"));
+    /**
+     * indexes of the compared nutrient vectors in the flattened vectors
+     */
+    private static final int[] DISTANCE_VECTORS = FoodVectors.getVectorIndexes(DISTANCE_VECTOR_NAMES);
+
     /**
      * Creates an object from a stream created by CSVParser beforehand, with
      * vectors initialized by FoodMetaObjectMap.
@@ -30,6 +45,39 @@ public class FoodMetaObjectMapMacronutrientsWithCategory extends FoodMetaObjectM
         super(stream);
     }
 
+    /**
+     * Creates an object from nutrient vectors that have already been read, for
+     * example from a binary food data file.
+     *
+     * @param locatorURI name of the food item
+     * @param objects nutrient vectors by their names
+     * @param id National Nutrient Database for Standard Reference id
+     * @param category food category
+     */
+    public FoodMetaObjectMapMacronutrientsWithCategory(String locatorURI, Map<String, LocalAbstractObject> objects, int id, FoodCategory category) {
+        super(locatorURI, objects, id, category);
+    }
+
+    /**
+     * Retrieves the penalty for a food of a different category, that keeps
+     * the foods of the same category closer than any food of another one.
+     *
+     * @param otherCategory category of the other food
+     * @return 500 if the categories differ, 0 otherwise
+     */
+    @Override
+    public float getCategoryDistance(FoodCategory otherCategory) {
+        if (!otherCategory.equals(getCategory())) {
+            return 500;
+        }
+        return 0;
+    }
+
+    @Override
+    public List<String> getDistanceVectorNames() {
+        return DISTANCE_VECTOR_NAMES;
+    }
+
     /**
      * Retrieves the distance from the object represented by the Manhattan
      * distance between macronutrients limited to the same category as this
@@ -44,22 +92,7 @@ public class FoodMetaObjectMapMacronutrientsWithCategory extends FoodMetaObjectM
     protected float getDistanceImpl(LocalAbstractObject obj, float[] metaDistances, float distThreshold) {
         FoodMetaObjectMap object = (FoodMetaObjectMap) obj;
         float dist = 0;
-        int i = 0;
-        if (!object.getCategory().equals(getCategory())) {
-            dist += 500;
-        }
-        for (String name : Arrays.asList("Macronutrients")) {
-            LocalAbstractObject oLocal = getObject(name);
-            LocalAbstractObject oOther = object.getObject(name);
-            if (oLocal != null && oOther != null) {
-                float d = oLocal.getDistance(oOther);
-                dist += d;
-                if (metaDistances != null) {
-                    metaDistances[i] = d;
-                }
-            }
-            i++;
-        }
-        return dist;
+        dist += getCategoryDistance(object.getCategory());
+        return getVectorsDistance(object, DISTANCE_VECTORS, dist, metaDistances, distThreshold);
     }
 }
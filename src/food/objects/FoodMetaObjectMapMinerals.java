@@ -5,9 +5,13 @@
  */
 package food.objects;
 
+import food.enums.FoodCategory;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import messif.objects.LocalAbstractObject;
 
 /**
@@ -18,6 +22,17 @@ import messif.objects.LocalAbstractObject;
  */
 public class FoodMetaObjectMapMinerals extends FoodMetaObjectMap{
 
+    private final static long serialVersionUID = 407403622350464206L;
+
+    /**
+     * names of the nutrient vectors compared by the metric function
+     */
+    private static final List<String> DISTANCE_VECTOR_NAMES = Collections.unmodifiableList(Arrays.asList("Minerals"));
+    /**
+     * indexes of the compared nutrient vectors in the flattened vectors
+     */
+    private static final int[] DISTANCE_VECTORS = FoodVectors.getVectorIndexes(DISTANCE_VECTOR_NAMES);
+
     /**
      * Creates an object from a stream created by CSVParser beforehand, with
      * vectors initialized by FoodMetaObjectMap.
@@ -29,6 +44,24 @@ public class FoodMetaObjectMapMinerals extends FoodMetaObjectMap{
         super(stream);
     }
 
+    /**
+     * Creates an object from nutrient vectors that have already been read, for
+     * example from a binary food data file.
+     *
+     * @param locatorURI name of the food item
+     * @param objects nutrient vectors by their names
+     * @param id National Nutrient Database for Standard Reference id
+     * @param category food category
+     */
+    public FoodMetaObjectMapMinerals(String locatorURI, Map<String, LocalAbstractObject> objects, int id, FoodCategory category) {
+        super(locatorURI, objects, id, category);
+    }
+
+    @Override
+    public List<String> getDistanceVectorNames() {
+        return DISTANCE_VECTOR_NAMES;
+    }
+
     /**
      * Retrieves the distance from the object represented by the Manhattan
      * distance between mineral vectors .
@@ -42,19 +75,6 @@ public class FoodMetaObjectMapMinerals extends FoodMetaObjectMap{
     protected float getDistanceImpl(LocalAbstractObject obj, float[] metaDistances, float distThreshold) {
         FoodMetaObjectMap object = (FoodMetaObjectMap) obj;
         float dist = 0;
-        int i = 0;
-        for (String name : Arrays.asList("Minerals")) {
-            LocalAbstractObject oLocal = getObject(name);
-            LocalAbstractObject oOther = object.getObject(name);
-            if (oLocal != null && oOther != null) {
-                float d = oLocal.getDistance(oOther);
-                dist += d;
-                if (metaDistances != null) {
-                    metaDistances[i] = d;
-                }
-            }
-            i++;
-        }
-        return dist;
+        return getVectorsDistance(object, DISTANCE_VECTORS, dist, metaDistances, distThreshold);
     }
 }
@@ -0,0 +1,216 @@
+package food.objects;
+
+import food.enums.Nutrient;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The layout of the flattened nutrient vectors of a food and the Manhattan
+ * distance kernel shared by all the food objects. The values of a food are
+ * flattened into a single array of floats in the order of the leaves of the
+ * Nutrient hierarchy, the nutrient vectors occupy consecutive ranges of the
+ * array.
+ *
+ * The kernel sums up the absolute differences in the same order and in the
+ * same float precision as ObjectFloatVectorL1, so that the distances are the
+ * same as the distances of the nutrient vector objects. The batch kernel
+ * compares a query with a whole block of vectors at once, which is what the
+ * scans over many stored vectors use.
+ *
+ * @author tomco
+ */
+public final class FoodVectors {
+
+    /**
+     * names of the nutrient vectors of a food in the order of the children of
+     * the NUTRIENT enum, as written by CSVParser
+     */
+    public static final List<String> VECTOR_NAMES = Collections.unmodifiableList(Arrays.asList("Macronutrients", "Minerals", "Vitamins"));
+
+    /**
+     * nutrients of the flattened values, the leaves of the Nutrient hierarchy
+     */
+    private static final List<Nutrient> nutrients = new ArrayList<>();
+    /**
+     * first value and number of values of each nutrient vector
+     */
+    private static final int[] vectorOffsets = new int[VECTOR_NAMES.size()];
+    private static final int[] vectorLengths = new int[VECTOR_NAMES.size()];
+
+    static {
+        int vector = 0;
+        for (Nutrient nutrientType : Nutrient.NUTRIENT.getChildren()) {
+            vectorOffsets[vector] = nutrients.size();
+            if (nutrientType.hasChildren()) {
+                nutrients.addAll(nutrientType.getChildren());
+            } else {
+                nutrients.add(nutrientType);
+            }
+            vectorLengths[vector] = nutrients.size() - vectorOffsets[vector];
+            vector++;
+        }
+    }
+
+    /**
+     * number of the flattened values of a food
+     */
+    public static final int DIMENSIONS = nutrients.size();
+
+    private FoodVectors() {
+    }
+
+    /**
+     * Retrieves the index of a nutrient vector name.
+     *
+     * @param name name of a nutrient vector
+     * @return index in VECTOR_NAMES or -1 if the name is not known
+     */
+    public static int getVectorIndex(String name) {
+        return VECTOR_NAMES.indexOf(name);
+    }
+
+    /**
+     * Retrieves the indexes of nutrient vector names.
+     *
+     * @param names names of nutrient vectors
+     * @return indexes in VECTOR_NAMES, -1 for the names that are not known
+     */
+    public static int[] getVectorIndexes(List<String> names) {
+        return names.stream().mapToInt(FoodVectors::getVectorIndex).toArray();
+    }
+
+    /**
+     * Retrieves the first flattened value of a nutrient vector.
+     *
+     * @param vector index of the vector name in VECTOR_NAMES
+     * @return index of the first value
+     */
+    public static int getVectorOffset(int vector) {
+        return vectorOffsets[vector];
+    }
+
+    /**
+     * Retrieves the number of values of a nutrient vector.
+     *
+     * @param vector index of the vector name in VECTOR_NAMES
+     * @return number of nutrients in the vector
+     */
+    public static int getVectorLength(int vector) {
+        return vectorLengths[vector];
+    }
+
+    /**
+     * Retrieves the flattened position of a nutrient.
+     *
+     * @param nutrient a nutrient without children
+     * @return index of the value
+     */
+    public static int getIndex(Nutrient nutrient) {
+        int index = nutrients.indexOf(nutrient);
+        if (index < 0) {
+            throw new IllegalArgumentException(nutrient + " is not a measured nutrient.");
+        }
+        return index;
+    }
+
+    /**
+     * Computes the Manhattan distance of a range of two flattened vectors.
+     *
+     * @param first flattened values
+     * @param second flattened values
+     * @param offset first value of the range
+     * @param length number of values in the range
+     * @return sum of the absolute differences
+     */
+    public static float distance(float[] first, float[] second, int offset, int length) {
+        float distance = 0;
+        for (int i = offset; i < offset + length; i++) {
+            distance += Math.abs(first[i] - second[i]);
+        }
+        return distance;
+    }
+
+    /**
+     * Computes the Manhattan distance of a range of two flattened vectors, that
+     * is added to a partial distance. The summing is stopped as soon as the
+     * partial distance with the sum exceeds the threshold, the rest of the
+     * range can only make it greater.
+     *
+     * @param first flattened values
+     * @param second flattened values
+     * @param offset first value of the range
+     * @param length number of values in the range
+     * @param partialDistance partial distance the sum is added to
+     * @param threshold max distance to calculate to
+     * @return sum of the absolute differences or a part of it, that makes the
+     * partial distance greater than the threshold
+     */
+    public static float distance(float[] first, float[] second, int offset, int length, float partialDistance, float threshold) {
+        float distance = 0;
+        for (int i = offset; i < offset + length; i++) {
+            distance += Math.abs(first[i] - second[i]);
+            if (partialDistance + distance > threshold) {
+                break;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Computes the Manhattan distance of a range of a flattened vector and a
+     * flattened vector stored in a buffer.
+     *
+     * @param first flattened values
+     * @param second buffer of flattened vectors
+     * @param secondStart position of the flattened vector in the buffer
+     * @param offset first value of the range
+     * @param length number of values in the range
+     * @return sum of the absolute differences
+     */
+    public static float distance(float[] first, FloatBuffer second, int secondStart, int offset, int length) {
+        float distance = 0;
+        for (int i = offset; i < offset + length; i++) {
+            distance += Math.abs(first[i] - second.get(secondStart + i));
+        }
+        return distance;
+    }
+
+    /**
+     * Adds the Manhattan distances of a range of a flattened query vector to a
+     * block of flattened vectors to their partial distances in a single call.
+     * The block is stored dimension-major, the value of dimension j of the
+     * candidate c is at j * blockSize + c.
+     *
+     * The inner loop runs over the candidates, so that it can be compiled to
+     * SIMD instructions, while the values of every single candidate are still
+     * summed up in the order of the dimensions, the sums are the same as the
+     * sums of the single vector kernels.
+     *
+     * @param query flattened values of the query
+     * @param block flattened vectors of the candidates, dimension-major
+     * @param blockSize number of candidates the block has room for
+     * @param count number of candidates in the block
+     * @param offset first value of the range
+     * @param length number of values in the range
+     * @param sums array of at least count floats for the sums of the range
+     * @param distances partial distances of the candidates to add to
+     */
+    public static void addDistances(float[] query, float[] block, int blockSize, int count, int offset, int length, float[] sums, float[] distances) {
+        for (int c = 0; c < count; c++) {
+            sums[c] = 0;
+        }
+        for (int j = offset; j < offset + length; j++) {
+            float value = query[j];
+            int start = j * blockSize;
+            for (int c = 0; c < count; c++) {
+                sums[c] += Math.abs(value - block[start + c]);
+            }
+        }
+        for (int c = 0; c < count; c++) {
+            distances[c] += sums[c];
+        }
+    }
+}
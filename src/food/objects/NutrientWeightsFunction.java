@@ -0,0 +1,108 @@
+package food.objects;
+
+import java.util.Arrays;
+import messif.objects.util.AggregationFunction;
+
+/**
+ * An aggregation function, that sums up the Manhattan distances of the
+ * nutrient vectors of two foods multiplied by the weights chosen for every
+ * vector, for example to compare the minerals three times as strictly as the
+ * other nutrients. The function is monotone in every distance, so the
+ * weighted distance of the foods not seen yet is bounded by the threshold
+ * algorithm.
+ *
+ * @author tomco
+ */
+public class NutrientWeightsFunction extends AggregationFunction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * weights of the nutrient vectors in the order of FoodVectors.VECTOR_NAMES
+     */
+    private final float[] weights;
+
+    /**
+     * Creates a function with the weights of the nutrient vectors.
+     *
+     * @param macronutrients weight of the macronutrients
+     * @param minerals weight of the minerals
+     * @param vitamins weight of the vitamins
+     * @throws IllegalArgumentException if a weight is negative or not a
+     * number
+     */
+    public NutrientWeightsFunction(float macronutrients, float minerals, float vitamins) throws IllegalArgumentException {
+        this.weights = new float[]{macronutrients, minerals, vitamins};
+        for (float weight : weights) {
+            if (!(weight >= 0) || Float.isInfinite(weight)) {
+                throw new IllegalArgumentException("A weight has to be a non-negative number.");
+            }
+        }
+    }
+
+    /**
+     * Retrieves the weight of a nutrient vector.
+     *
+     * @param vector index of the vector name in FoodVectors.VECTOR_NAMES
+     * @return weight
+     */
+    public float getWeight(int vector) {
+        return weights[vector];
+    }
+
+    @Override
+    public int getParameterCount() {
+        return weights.length;
+    }
+
+    @Override
+    public String getParameterName(int index) throws IndexOutOfBoundsException {
+        return FoodVectors.VECTOR_NAMES.get(index);
+    }
+
+    /**
+     * Sums up the weighted distances of the nutrient vectors, the vectors
+     * weighted by 0 are skipped.
+     *
+     * @param distances distances of the nutrient vectors in the order of
+     * FoodVectors.VECTOR_NAMES
+     * @return weighted distance
+     */
+    @Override
+    public float compute(float... distances) {
+        float distance = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] != 0) {
+                distance += weights[i] * distances[i];
+            }
+        }
+        return distance;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof NutrientWeightsFunction)) {
+            return false;
+        }
+        return Arrays.equals(weights, ((NutrientWeightsFunction) obj).weights);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(weights);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder build = new StringBuilder();
+        for (int i = 0; i < weights.length; i++) {
+            if (i > 0) {
+                build.append(" + ");
+            }
+            build.append(weights[i]);
+            build.append("*");
+            build.append(FoodVectors.VECTOR_NAMES.get(i));
+        }
+        return build.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package food.operations.query;
+
+import food.enums.Diet;
+import messif.objects.LocalAbstractObject;
+import messif.operations.AbstractOperation;
+import messif.operations.AnswerType;
+import messif.operations.Approximate;
+
+/**
+ * An approximate k-nearest-neighbors operation filtered by a diet. The
+ * algorithms, that support the approximate search, may return foods, that are
+ * not the nearest ones, in exchange for a faster search, the local search
+ * parameter tells them how much effort to spend, see Approximate. The other
+ * algorithms answer it as a KNNFoodDietQueryOperation.
+ *
+ * @author tomco
+ */
+public class ApproxKNNFoodDietQueryOperation extends KNNFoodDietQueryOperation implements Approximate {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Type of the local search parameter. */
+    private LocalSearchType localSearchType;
+    /** Effort of the search, its meaning depends on the type. */
+    private int localSearchParam;
+    /** Radius, within which the answer is known to be exact. */
+    private float radiusGuaranteed;
+
+    @AbstractOperation.OperationConstructor({"Query object", "Number of nearest objects", "Diet"})
+    public ApproxKNNFoodDietQueryOperation(LocalAbstractObject queryObject, int k, Diet diet) {
+        this(queryObject, k, diet, 0, LocalSearchType.USE_STRUCTURE_DEFAULT);
+    }
+
+    @AbstractOperation.OperationConstructor({"Query object", "Number of nearest objects", "Diet", "Local search param", "Type of local search param"})
+    public ApproxKNNFoodDietQueryOperation(LocalAbstractObject queryObject, int k, Diet diet, int localSearchParam, LocalSearchType localSearchType) {
+        this(queryObject, k, diet, localSearchParam, localSearchType, AnswerType.NODATA_OBJECTS);
+    }
+
+    @AbstractOperation.OperationConstructor({"Query object", "Number of nearest objects", "Diet", "Local search param", "Type of local search param", "Answer type"})
+    public ApproxKNNFoodDietQueryOperation(LocalAbstractObject queryObject, int k, Diet diet, int localSearchParam, LocalSearchType localSearchType, AnswerType answerType) {
+        super(queryObject, k, diet, answerType);
+        this.localSearchParam = localSearchParam;
+        this.localSearchType = localSearchType;
+        this.radiusGuaranteed = LocalAbstractObject.UNKNOWN_DISTANCE;
+    }
+
+    @Override
+    public LocalSearchType getLocalSearchType() {
+        return localSearchType;
+    }
+
+    @Override
+    public void setLocalSearchType(LocalSearchType localSearchType) {
+        this.localSearchType = localSearchType;
+    }
+
+    @Override
+    public int getLocalSearchParam() {
+        return localSearchParam;
+    }
+
+    @Override
+    public void setLocalSearchParam(int localSearchParam) {
+        this.localSearchParam = localSearchParam;
+    }
+
+    @Override
+    public float getRadiusGuaranteed() {
+        return radiusGuaranteed;
+    }
+
+    @Override
+    public void setRadiusGuaranteed(float radiusGuaranteed) {
+        this.radiusGuaranteed = radiusGuaranteed;
+    }
+
+    @Override
+    public int dataHashCode() {
+        return (super.dataHashCode() << 4) + localSearchParam;
+    }
+
+    @Override
+    protected boolean dataEqualsImpl(AbstractOperation obj) {
+        if (!super.dataEqualsImpl(obj)) {
+            return false;
+        }
+
+        ApproxKNNFoodDietQueryOperation castObj = (ApproxKNNFoodDietQueryOperation) obj;
+
+        return localSearchParam == castObj.localSearchParam && localSearchType.equals(castObj.localSearchType);
+    }
+
+    @Override
+    public int getArgumentCount() {
+        return 5;
+    }
+
+    @Override
+    public Object getArgument(int index) throws IndexOutOfBoundsException {
+        switch (index) {
+            case 3:
+                return localSearchParam;
+            case 4:
+                return localSearchType;
+            default:
+                if (index < 3) {
+                    return super.getArgument(index);
+                }
+                throw new IndexOutOfBoundsException("ApproxKNNFoodDietQueryOperation has only five arguments");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "; local search param: " + localSearchParam + " of type: " + localSearchType;
+    }
+}
@@ -2,19 +2,23 @@ package food.operations.query;
 
 import food.enums.Diet;
 import food.objects.FoodMetaObjectMap;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
+import messif.objects.AbstractObject;
 import messif.objects.LocalAbstractObject;
 import messif.objects.util.AbstractObjectIterator;
 import messif.operations.AbstractOperation;
 import messif.operations.AnswerType;
 import messif.operations.ListingQueryOperation;
-import messif.operations.query.GetAllObjectsQueryOperation;
 
 /**
  * A query operation that retrieves all the food items from an indexing algorithm,
  * that are consumable by a certain diet.
  * 
+ * The answer can be restricted to a page of the consumable food items, the
+ * first offset of them are skipped and at most limit of them are added to the
+ * answer, in the order the algorithm offers them. The skipping and the limit
+ * are applied by addToAnswer, an algorithm can stop offering the food items
+ * as soon as the answer is complete.
+ * 
  * @author tomco
  */
 public class GetFoodByDietQueryOperation extends ListingQueryOperation {
@@ -23,6 +27,18 @@ public class GetFoodByDietQueryOperation extends ListingQueryOperation {
      * A diet to be filtered by.
      */
     private final Diet diet;
+    /**
+     * Number of consumable food items to skip.
+     */
+    private final int offset;
+    /**
+     * Maximal number of food items in the answer.
+     */
+    private final int limit;
+    /**
+     * Number of consumable food items skipped so far.
+     */
+    private int skipped;
 
     /**
      * Creates a query operation with a given diet filter.
@@ -30,7 +46,7 @@ public class GetFoodByDietQueryOperation extends ListingQueryOperation {
      * @param diet filter diet
      */
     public GetFoodByDietQueryOperation(Diet diet) {
-        this.diet = diet;
+        this(diet, 0, Integer.MAX_VALUE);
     }
 
     /**
@@ -40,8 +56,40 @@ public class GetFoodByDietQueryOperation extends ListingQueryOperation {
      * @param answerType type of objects to be retrieved from an indexing algorithm
      */
     public GetFoodByDietQueryOperation(Diet diet, AnswerType answerType) {
+        this(diet, 0, Integer.MAX_VALUE, answerType);
+    }
+
+    /**
+     * Creates a query operation with a given diet filter, that retrieves a
+     * page of the consumable food items.
+     * 
+     * @param diet filter diet
+     * @param offset number of consumable food items to skip
+     * @param limit maximal number of food items to retrieve
+     * @throws IllegalArgumentException if the offset or the limit is negative
+     */
+    public GetFoodByDietQueryOperation(Diet diet, int offset, int limit) throws IllegalArgumentException {
+        this(diet, offset, limit, AnswerType.CLEARED_OBJECTS);
+    }
+
+    /**
+     * Creates a query operation with a given diet filter and an answerType,
+     * that retrieves a page of the consumable food items.
+     * 
+     * @param diet filter diet
+     * @param offset number of consumable food items to skip
+     * @param limit maximal number of food items to retrieve
+     * @param answerType type of objects to be retrieved from an indexing algorithm
+     * @throws IllegalArgumentException if the offset or the limit is negative
+     */
+    public GetFoodByDietQueryOperation(Diet diet, int offset, int limit, AnswerType answerType) throws IllegalArgumentException {
         super(answerType);
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("The offset and the limit can't be negative.");
+        }
         this.diet = diet;
+        this.offset = offset;
+        this.limit = limit;
     }
 
     /**
@@ -53,40 +101,98 @@ public class GetFoodByDietQueryOperation extends ListingQueryOperation {
         return diet;
     }
 
+    /**
+     * Retrieves the number of consumable food items to skip.
+     * 
+     * @return offset of the page
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Retrieves the maximal number of food items in the answer.
+     * 
+     * @return limit of the page, Integer.MAX_VALUE if not limited
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Finds out whether the answer holds as many food items as the limit
+     * allows, so that there is no need to offer any more.
+     * 
+     * @return true if the answer is complete
+     */
+    public boolean isAnswerComplete() {
+        return getAnswerCount() >= limit;
+    }
+
+    /**
+     * Counts a consumable food item off the offset, if the offset has not
+     * been skipped yet. An algorithm can call it to skip a food item without
+     * creating its object, a food item that is not skipped is to be passed to
+     * addToAnswer then.
+     * 
+     * @return true if the food item is to be skipped
+     */
+    public boolean skipOffset() {
+        if (skipped < offset) {
+            skipped++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds a consumable food item to the answer, unless it is skipped by the
+     * offset or the answer is complete.
+     * 
+     * @param object consumable food item
+     * @return true if the food item has been added to the answer
+     * @throws IllegalArgumentException 
+     */
+    @Override
+    public boolean addToAnswer(AbstractObject object) throws IllegalArgumentException {
+        if (isAnswerComplete() || skipOffset()) {
+            return false;
+        }
+        return super.addToAnswer(object);
+    }
+
     @Override
     public Object getArgument(int index) throws IndexOutOfBoundsException {
         switch (index) {
             case 0:
                 return diet;
+            case 1:
+                return offset;
+            case 2:
+                return limit;
             default:
-                throw new IndexOutOfBoundsException("GetFoodByDietQueryOperation has only one argument");
+                throw new IndexOutOfBoundsException("GetFoodByDietQueryOperation has only three arguments");
         }
     }
 
     @Override
     public int getArgumentCount() {
-        return 1;
+        return 3;
     }
 
     @Override
     public int evaluate(AbstractObjectIterator<? extends LocalAbstractObject> objects) {
-        GetAllObjectsQueryOperation all = new GetAllObjectsQueryOperation(AnswerType.ORIGINAL_OBJECTS);
-
-        all.evaluate(objects);
-        Iterator iter = all.getAnswer();
-        // Iterate through all supplied objects
-        try {
-            while (iter.hasNext()) {
-                FoodMetaObjectMap obj = (FoodMetaObjectMap) iter.next();
-                if (diet.isEdible(obj.getCategory())) {
-                    addToAnswer(obj);
-                }
+        int beforeCount = getAnswerCount();
+
+        // A single pass through the supplied objects, until the page is full
+        while (!isAnswerComplete() && objects.hasNext()) {
+            FoodMetaObjectMap obj = (FoodMetaObjectMap) objects.next();
+            if (diet.isEdible(obj.getCategory())) {
+                addToAnswer(obj);
             }
-            return 1;
-        } catch (NoSuchElementException e) {
-            // If there was no object with the specified locator
-            return 0;
         }
+
+        return getAnswerCount() - beforeCount;
     }
 
     @Override
@@ -96,12 +202,12 @@ public class GetFoodByDietQueryOperation extends ListingQueryOperation {
         }
         GetFoodByDietQueryOperation newOp = (GetFoodByDietQueryOperation) operation;
 
-        return diet.equals(newOp.getDiet());
+        return diet.equals(newOp.getDiet()) && offset == newOp.getOffset() && limit == newOp.getLimit();
     }
 
     @Override
     public int dataHashCode() {
-        return diet.hashCode();
+        return (diet.hashCode() * 31 + offset) * 31 + limit;
     }
 
 }
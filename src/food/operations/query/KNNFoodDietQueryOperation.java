@@ -8,6 +8,8 @@ import messif.objects.util.RankedSortedCollection;
 import messif.operations.AbstractOperation;
 import messif.operations.AnswerType;
 import messif.operations.query.KNNQueryOperation;
+import messif.statistics.StatisticCounter;
+import messif.statistics.Statistics;
 
 /**
  * A k-nearest-neighbors operation that takes in account the diet that the user 
@@ -16,6 +18,9 @@ import messif.operations.query.KNNQueryOperation;
  * @author tomco
  */
 public class KNNFoodDietQueryOperation extends KNNQueryOperation {
+    /** Number of distance computations skipped thanks to the precomputed distances. */
+    private static final StatisticCounter counterPrunedDistanceComputations = StatisticCounter.getStatistics("DistanceComputations.Pruned");
+
     /** Diet with which the operation filters it's search. */
     private final Diet diet;
 
@@ -59,13 +64,14 @@ public class KNNFoodDietQueryOperation extends KNNQueryOperation {
 
     @Override
     protected boolean dataEqualsImpl(AbstractOperation obj) {
-        if (!(obj instanceof KNNFoodDietQueryOperation)) {
+        //the subclasses compare the foods differently
+        if (!getClass().equals(obj.getClass())) {
             return false;
         }
 
         KNNQueryOperation castObj = (KNNQueryOperation) obj;
 
-        if (!super.dataEquals(castObj)) {
+        if (!super.dataEqualsImpl(castObj)) {
             return false;
         }
 
@@ -85,6 +91,9 @@ public class KNNFoodDietQueryOperation extends KNNQueryOperation {
             }
 
             if (getQueryObject().excludeUsingPrecompDist(object, getAnswerThreshold())) {
+                if (Statistics.isEnabledGlobally()) {
+                    counterPrunedDistanceComputations.add();
+                }
                 continue;
             }
 
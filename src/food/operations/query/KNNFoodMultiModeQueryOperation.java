@@ -0,0 +1,330 @@
+package food.operations.query;
+
+import food.enums.Diet;
+import food.enums.FoodCategory;
+import food.enums.SimilarityMode;
+import food.objects.FoodMetaObjectMap;
+import food.objects.FoodVectors;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import messif.objects.AbstractObject;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectIterator;
+import messif.objects.util.RankedAbstractObject;
+import messif.operations.AbstractOperation;
+import messif.operations.AnswerType;
+import messif.operations.QueryOperation;
+import messif.statistics.StatisticCounter;
+import messif.statistics.Statistics;
+
+/**
+ * A k-nearest-neighbors operation filtered by a diet, that searches for the
+ * nearest foods by all the similarity modes in a single pass over the stored
+ * foods. The Manhattan distances of the nutrient vectors of a candidate are
+ * computed once, the distance of every mode is then summed up from them in
+ * the same order as the metric function of the mode does, the category
+ * penalty included, so that every answer is the same as the answer of a
+ * KNNFoodSimilarityQueryOperation of the mode.
+ *
+ * The answer of every mode is a sub-answer of this operation, the answer of
+ * the operation is the concatenation of the sub-answers in the order of the
+ * modes.
+ *
+ * @author tomco
+ */
+public class KNNFoodMultiModeQueryOperation extends QueryOperation<RankedAbstractObject> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of candidates compared with the query, once for all the modes. */
+    private static final StatisticCounter counterDistanceComputations = StatisticCounter.getStatistics("DistanceComputations");
+
+    private static final SimilarityMode[] MODES = SimilarityMode.values();
+
+    private final FoodMetaObjectMap queryObject;
+    private final int k;
+    /** Diet with which the operation filters it's search. */
+    private final Diet diet;
+    /** Operations of the modes, that hold their answers, in the order of the modes. */
+    private KNNFoodSimilarityQueryOperation[] modeOperations;
+    /**
+     * indexes of the nutrient vectors in FoodVectors summed up by the metric
+     * function of each mode, -1 for the vectors that are not known
+     */
+    private final int[][] modeVectors;
+
+    @AbstractOperation.OperationConstructor({"Query object", "Number of nearest objects", "Diet"})
+    public KNNFoodMultiModeQueryOperation(FoodMetaObjectMap queryObject, int k, Diet diet) {
+        this(queryObject, k, diet, AnswerType.NODATA_OBJECTS);
+    }
+
+    @AbstractOperation.OperationConstructor({"Query object", "Number of nearest objects", "Diet", "Answer type"})
+    public KNNFoodMultiModeQueryOperation(FoodMetaObjectMap queryObject, int k, Diet diet, AnswerType answerType) {
+        super(answerType);
+        this.queryObject = queryObject;
+        this.k = k;
+        this.diet = diet;
+        this.modeOperations = new KNNFoodSimilarityQueryOperation[MODES.length];
+        this.modeVectors = new int[MODES.length][];
+        for (int i = 0; i < MODES.length; i++) {
+            modeOperations[i] = new KNNFoodSimilarityQueryOperation(queryObject, k, diet, MODES[i], answerType);
+            modeVectors[i] = FoodVectors.getVectorIndexes(((FoodMetaObjectMap) modeOperations[i].getQueryObject()).getDistanceVectorNames());
+        }
+    }
+
+    /**
+     * Retrieves the query object of this operation.
+     *
+     * @return query food
+     */
+    public FoodMetaObjectMap getQueryObject() {
+        return queryObject;
+    }
+
+    /**
+     * Retrieves the number of the nearest objects searched for by every mode.
+     *
+     * @return k
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Retrieves the diet filter of this operation.
+     *
+     * @return diet
+     */
+    public Diet getDiet() {
+        return diet;
+    }
+
+    /**
+     * Retrieves the operation, that holds the answer of a mode.
+     *
+     * @param mode similarity mode
+     * @return k-nearest-neighbors operation of the mode
+     */
+    public KNNFoodSimilarityQueryOperation getModeOperation(SimilarityMode mode) {
+        return modeOperations[mode.ordinal()];
+    }
+
+    /**
+     * Retrieves the answer of a mode.
+     *
+     * @param mode similarity mode
+     * @return iterator over the answer of the mode
+     */
+    public Iterator<RankedAbstractObject> getAnswer(SimilarityMode mode) {
+        return getModeOperation(mode).getAnswer();
+    }
+
+    /**
+     * Computes the distances of a candidate by all the modes from the
+     * distances of its nutrient vectors.
+     *
+     * @param category food category of the candidate
+     * @param vectorDistances distances of the nutrient vectors of the query and
+     * the candidate in the order of FoodVectors.VECTOR_NAMES, see
+     * FoodMetaObjectMap.getVectorDistances
+     * @param distances array of at least SimilarityMode.length() floats for
+     * the distances in the order of the modes
+     * @return true if the candidate gets into the answer of any mode
+     */
+    public boolean computeDistances(FoodCategory category, float[] vectorDistances, float[] distances) {
+        boolean candidate = false;
+        for (int i = 0; i < modeOperations.length; i++) {
+            float dist = 0;
+            dist += ((FoodMetaObjectMap) modeOperations[i].getQueryObject()).getCategoryDistance(category);
+            for (int vector : modeVectors[i]) {
+                if (vector >= 0) {
+                    dist += vectorDistances[vector];
+                }
+            }
+            distances[i] = dist;
+            if (dist <= modeOperations[i].getAnswerThreshold()) {
+                candidate = true;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Adds a candidate to the answers of the modes, whose thresholds its
+     * distances do not exceed.
+     *
+     * @param object the candidate
+     * @param distances distances of the candidate by all the modes, see
+     * computeDistances
+     */
+    public void addToAnswers(LocalAbstractObject object, float[] distances) {
+        for (int i = 0; i < modeOperations.length; i++) {
+            if (distances[i] <= modeOperations[i].getAnswerThreshold()) {
+                modeOperations[i].addToAnswer(object, distances[i], null);
+            }
+        }
+    }
+
+    @Override
+    public int evaluate(AbstractObjectIterator<? extends LocalAbstractObject> objects) {
+        int beforeCount = getAnswerCount();
+        float[] vectorDistances = new float[FoodVectors.VECTOR_NAMES.size()];
+        float[] distances = new float[modeOperations.length];
+
+        while (objects.hasNext()) {
+            FoodMetaObjectMap object = (FoodMetaObjectMap) objects.next();
+
+            //don't compute if not edible for the user
+            if (!diet.isEdible(object.getCategory())) {
+                continue;
+            }
+
+            if (Statistics.isEnabledGlobally()) {
+                counterDistanceComputations.add();
+            }
+            if (computeDistances(object.getCategory(), queryObject.getVectorDistances(object, vectorDistances), distances)) {
+                addToAnswers(object, distances);
+            }
+        }
+
+        return getAnswerCount() - beforeCount;
+    }
+
+    @Override
+    public Class<? extends RankedAbstractObject> getAnswerClass() {
+        return RankedAbstractObject.class;
+    }
+
+    @Override
+    public int getAnswerCount() {
+        int count = 0;
+        for (KNNFoodSimilarityQueryOperation operation : modeOperations) {
+            count += operation.getAnswerCount();
+        }
+        return count;
+    }
+
+    @Override
+    public Iterator<RankedAbstractObject> getAnswer() {
+        return getAnswer(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Iterator<RankedAbstractObject> getAnswer(int skip, int count) {
+        List<RankedAbstractObject> answer = new ArrayList<>();
+        for (KNNFoodSimilarityQueryOperation operation : modeOperations) {
+            Iterator<RankedAbstractObject> iter = operation.getAnswer();
+            while (iter.hasNext() && answer.size() < count) {
+                RankedAbstractObject object = iter.next();
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    answer.add(object);
+                }
+            }
+        }
+        return answer.iterator();
+    }
+
+    @Override
+    public Iterator<AbstractObject> getAnswerObjects() {
+        final Iterator<RankedAbstractObject> iter = getAnswer();
+        return new Iterator<AbstractObject>() {
+            @Override
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            @Override
+            public AbstractObject next() throws NoSuchElementException {
+                return iter.next().getObject();
+            }
+        };
+    }
+
+    @Override
+    public void resetAnswer() {
+        for (KNNFoodSimilarityQueryOperation operation : modeOperations) {
+            operation.resetAnswer();
+        }
+    }
+
+    @Override
+    public int getSubAnswerCount() {
+        return modeOperations.length;
+    }
+
+    /**
+     * Retrieves the answer of a mode.
+     *
+     * @param index index of the mode in SimilarityMode.values()
+     * @return iterator over the answer of the mode
+     * @throws IndexOutOfBoundsException if there is no mode with the index
+     */
+    @Override
+    public Iterator<RankedAbstractObject> getSubAnswer(int index) throws IndexOutOfBoundsException {
+        return modeOperations[index].getAnswer();
+    }
+
+    /**
+     * Retrieves the answer of a mode.
+     *
+     * @param key similarity mode
+     * @return iterator over the answer of the mode or null if the key is not
+     * a mode
+     */
+    @Override
+    public Iterator<RankedAbstractObject> getSubAnswer(Object key) {
+        if (!(key instanceof SimilarityMode)) {
+            return null;
+        }
+        return getAnswer((SimilarityMode) key);
+    }
+
+    @Override
+    public KNNFoodMultiModeQueryOperation clone(boolean preserveAnswer) throws CloneNotSupportedException {
+        KNNFoodMultiModeQueryOperation operation = (KNNFoodMultiModeQueryOperation) super.clone(preserveAnswer);
+        operation.modeOperations = new KNNFoodSimilarityQueryOperation[modeOperations.length];
+        for (int i = 0; i < modeOperations.length; i++) {
+            operation.modeOperations[i] = (KNNFoodSimilarityQueryOperation) modeOperations[i].clone(preserveAnswer);
+        }
+        return operation;
+    }
+
+    @Override
+    public int dataHashCode() {
+        return ((queryObject.dataHashCode() << 8) + (k << 4)) + diet.hashCode();
+    }
+
+    @Override
+    protected boolean dataEqualsImpl(AbstractOperation obj) {
+        if (!(obj instanceof KNNFoodMultiModeQueryOperation)) {
+            return false;
+        }
+
+        KNNFoodMultiModeQueryOperation castObj = (KNNFoodMultiModeQueryOperation) obj;
+
+        return queryObject.dataEquals(castObj.queryObject) && k == castObj.k && diet.equals(castObj.diet);
+    }
+
+    @Override
+    public int getArgumentCount() {
+        return 3;
+    }
+
+    @Override
+    public Object getArgument(int index) throws IndexOutOfBoundsException {
+        switch (index) {
+            case 0:
+                return queryObject;
+            case 1:
+                return k;
+            case 2:
+                return diet;
+            default:
+                throw new IndexOutOfBoundsException("KNNFoodMultiModeQueryOperation has only three arguments");
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package food.operations.query;
+
+import food.enums.Diet;
+import food.enums.SimilarityMode;
+import food.objects.FoodMetaObjectMap;
+import messif.operations.AbstractOperation;
+import messif.operations.AnswerType;
+
+/**
+ * A k-nearest-neighbors operation filtered by a diet, that compares the foods
+ * by the metric function of a similarity mode chosen for the query, no matter
+ * of which class the stored food objects are. A single algorithm storing the
+ * foods once thus serves the searches of all the modes.
+ *
+ * @author tomco
+ */
+public class KNNFoodSimilarityQueryOperation extends KNNFoodDietQueryOperation {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Mode, whose metric function compares the foods. */
+    private final SimilarityMode mode;
+
+    @AbstractOperation.OperationConstructor({"Query object", "Number of nearest objects", "Diet", "Similarity mode"})
+    public KNNFoodSimilarityQueryOperation(FoodMetaObjectMap queryObject, int k, Diet diet, SimilarityMode mode) {
+        super(mode.createQuery(queryObject), k, diet);
+        this.mode = mode;
+    }
+
+    @AbstractOperation.OperationConstructor({"Query object", "Number of nearest objects", "Diet", "Similarity mode", "Answer type"})
+    public KNNFoodSimilarityQueryOperation(FoodMetaObjectMap queryObject, int k, Diet diet, SimilarityMode mode, AnswerType answerType) {
+        super(mode.createQuery(queryObject), k, diet, answerType);
+        this.mode = mode;
+    }
+
+    /**
+     * Retrieves the similarity mode of this operation.
+     *
+     * @return similarity mode
+     */
+    public SimilarityMode getMode() {
+        return mode;
+    }
+
+    @Override
+    public int dataHashCode() {
+        return (super.dataHashCode() << 4) + mode.hashCode();
+    }
+
+    @Override
+    protected boolean dataEqualsImpl(AbstractOperation obj) {
+        if (!(obj instanceof KNNFoodSimilarityQueryOperation)) {
+            return false;
+        }
+
+        if (!super.dataEqualsImpl(obj)) {
+            return false;
+        }
+
+        return mode.equals(((KNNFoodSimilarityQueryOperation) obj).getMode());
+    }
+
+    @Override
+    public int getArgumentCount() {
+        return 4;
+    }
+
+    @Override
+    public Object getArgument(int index) throws IndexOutOfBoundsException {
+        if (index == 3) {
+            return mode;
+        }
+        if (index < 3) {
+            return super.getArgument(index);
+        }
+        throw new IndexOutOfBoundsException("KNNFoodSimilarityQueryOperation has only four arguments");
+    }
+}
@@ -0,0 +1,184 @@
+package food.operations.query;
+
+import food.enums.Diet;
+import food.objects.FoodMetaObjectMap;
+import food.objects.FoodVectors;
+import food.objects.NutrientWeightsFunction;
+import messif.objects.LocalAbstractObject;
+import messif.objects.util.AbstractObjectIterator;
+import messif.operations.AbstractOperation;
+import messif.operations.AnswerType;
+import messif.operations.query.AggregationFunctionQueryOperation;
+
+/**
+ * A k-nearest-neighbors operation filtered by a diet, that compares the foods
+ * by the sum of the Manhattan distances of their nutrient vectors multiplied
+ * by weights chosen for the query, see NutrientWeightsFunction. The foods do
+ * not have to be stored for the weighting, any algorithm answers it.
+ *
+ * The operation counts the candidates, whose weighted distance has been
+ * computed, so that the threshold algorithm, which stops before touching all
+ * the foods, can be compared with a full scan.
+ *
+ * @author tomco
+ */
+public class KNNFoodWeightedQueryOperation extends AggregationFunctionQueryOperation {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Diet with which the operation filters it's search. */
+    private final Diet diet;
+    /** Number of candidates, whose weighted distance has been computed. */
+    private int touchedCandidates;
+    /** Number of sorted accesses of the threshold algorithm. */
+    private int sortedAccesses;
+
+    @AbstractOperation.OperationConstructor({"Query object", "Number of nearest objects", "Diet", "Nutrient weights"})
+    public KNNFoodWeightedQueryOperation(FoodMetaObjectMap queryObject, int k, Diet diet, NutrientWeightsFunction weights) {
+        this(queryObject, k, diet, weights, AnswerType.NODATA_OBJECTS);
+    }
+
+    @AbstractOperation.OperationConstructor({"Query object", "Number of nearest objects", "Diet", "Nutrient weights", "Answer type"})
+    public KNNFoodWeightedQueryOperation(FoodMetaObjectMap queryObject, int k, Diet diet, NutrientWeightsFunction weights, AnswerType answerType) {
+        super(queryObject, k, weights, answerType, false);
+        this.diet = diet;
+    }
+
+    /**
+     * Retrieves the query food of this operation.
+     *
+     * @return query food
+     */
+    public FoodMetaObjectMap getQueryFood() {
+        return (FoodMetaObjectMap) getQueryObject();
+    }
+
+    /**
+     * Retrieves the diet filter of this operation.
+     *
+     * @return diet
+     */
+    public Diet getDiet() {
+        return diet;
+    }
+
+    /**
+     * Retrieves the weights of the nutrient vectors of this operation.
+     *
+     * @return weighting function
+     */
+    public NutrientWeightsFunction getWeights() {
+        return (NutrientWeightsFunction) getThresholdFunction();
+    }
+
+    /**
+     * Computes the weighted distance of a candidate from the query and adds it
+     * to the answer, if it does not exceed the answer threshold.
+     *
+     * @param object the candidate
+     * @param vectorDistances array for the distances of the nutrient vectors
+     * @return true if the candidate has been added to the answer
+     */
+    public boolean addToAnswer(FoodMetaObjectMap object, float[] vectorDistances) {
+        float distance = computeDistance(getQueryFood().getVectorDistances(object, vectorDistances));
+        if (distance > getAnswerThreshold()) {
+            return false;
+        }
+        return addToAnswer(object, distance, null) != null;
+    }
+
+    /**
+     * Computes the weighted distance of a candidate from the distances of its
+     * nutrient vectors and counts the candidate as touched.
+     *
+     * @param vectorDistances distances of the nutrient vectors of the query
+     * and the candidate in the order of FoodVectors.VECTOR_NAMES, see
+     * FoodMetaObjectMap.getVectorDistances
+     * @return weighted distance
+     */
+    public float computeDistance(float[] vectorDistances) {
+        touchedCandidates++;
+        return getWeights().compute(vectorDistances);
+    }
+
+    /**
+     * Counts a sorted access of the threshold algorithm.
+     */
+    public void addSortedAccess() {
+        sortedAccesses++;
+    }
+
+    /**
+     * Retrieves the number of candidates, whose weighted distance has been
+     * computed. A full scan computes the distances of all the foods edible by
+     * the diet.
+     *
+     * @return number of touched candidates
+     */
+    public int getTouchedCandidates() {
+        return touchedCandidates;
+    }
+
+    /**
+     * Retrieves the number of sorted accesses of the threshold algorithm.
+     *
+     * @return number of sorted accesses, 0 for a full scan
+     */
+    public int getSortedAccesses() {
+        return sortedAccesses;
+    }
+
+    @Override
+    public int evaluate(AbstractObjectIterator<? extends LocalAbstractObject> objects) {
+        int beforeCount = getAnswerCount();
+        float[] vectorDistances = new float[FoodVectors.VECTOR_NAMES.size()];
+
+        while (objects.hasNext()) {
+            FoodMetaObjectMap object = (FoodMetaObjectMap) objects.next();
+
+            //don't compute if not edible for the user
+            if (!diet.isEdible(object.getCategory())) {
+                continue;
+            }
+
+            addToAnswer(object, vectorDistances);
+        }
+
+        return getAnswerCount() - beforeCount;
+    }
+
+    @Override
+    public int dataHashCode() {
+        return (super.dataHashCode() << 8) + diet.hashCode();
+    }
+
+    @Override
+    protected boolean dataEqualsImpl(AbstractOperation obj) {
+        if (!(obj instanceof KNNFoodWeightedQueryOperation) || !super.dataEqualsImpl(obj)) {
+            return false;
+        }
+
+        return diet.equals(((KNNFoodWeightedQueryOperation) obj).getDiet());
+    }
+
+    @Override
+    public int getArgumentCount() {
+        return 4;
+    }
+
+    @Override
+    public Object getArgument(int index) throws IndexOutOfBoundsException {
+        switch (index) {
+            case 0:
+                return getQueryObject();
+            case 1:
+                return getK();
+            case 2:
+                return diet;
+            case 3:
+                return getThresholdFunction();
+            default:
+                throw new IndexOutOfBoundsException("KNNFoodWeightedQueryOperation has only four arguments");
+        }
+    }
+}